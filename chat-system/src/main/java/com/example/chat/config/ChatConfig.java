@@ -1,9 +1,15 @@
 package com.example.chat.config;
 
+import com.example.chat.core.codec.SerializerType;
+import com.example.chat.dao.RedisMessageLayout;
+import com.example.chat.core.handler.OverflowPolicy;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "chat")
@@ -11,6 +17,14 @@ public class ChatConfig {
     private Server server = new Server();
     private Redis redis = new Redis();
     private ThreadPool threadPool = new ThreadPool();
+    private Batching batching = new Batching();
+    private Backpressure backpressure = new Backpressure();
+    private Affinity affinity = new Affinity();
+    private Tcp tcp = new Tcp();
+    private Compression compression = new Compression();
+    private SendBatch sendBatch = new SendBatch();
+    private Upload upload = new Upload();
+    private Announcement announcement = new Announcement();
 
     @Data
     public static class Server {
@@ -24,6 +38,11 @@ public class ChatConfig {
         private int port = 6379;
         private String password;
         private int database = 0;
+        // 消息的存储结构，见 RedisMessageLayout
+        private RedisMessageLayout messageLayout = RedisMessageLayout.ZSET;
+        // STREAM 结构下每个 Stream 保留的最大消息数，超出时删除最早的消息及其位置记录；
+        // 默认 0 不限制，与 ZSET 结构一样保留全部历史，切换结构不会丢失数据
+        private int streamMaxLength = 0;
     }
 
     @Data
@@ -33,4 +52,95 @@ public class ChatConfig {
         private int queueCapacity = 1000;
         private int keepAliveSeconds = 60;
     }
-}
\ No newline at end of file
+
+    /**
+     * 高频房间的批量投递配置，只对 rooms 中列出的房间生效
+     */
+    @Data
+    public static class Batching {
+        private Set<String> rooms = new HashSet<>();
+        private long windowMillis = 30;
+        private int maxMessages = 50;
+    }
+
+    /**
+     * 每个连接的写缓冲水位和积压队列配置
+     */
+    @Data
+    public static class Backpressure {
+        private int lowWaterMark = 32 * 1024;
+        private int highWaterMark = 64 * 1024;
+        private int maxPendingMessages = 256;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    }
+
+    /**
+     * Netty 服务器的 EventLoop 亲和性配置
+     */
+    @Data
+    public static class Affinity {
+        // 认证后把会话迁移到其最热房间所归属的 EventLoop
+        private boolean migrateSessions = true;
+    }
+
+    /**
+     * 二进制协议的原生 TCP 服务器配置，v1/v2 客户端共用同一端口
+     */
+    @Data
+    public static class Tcp {
+        private boolean enabled = false;
+        private int port = 19099;
+        private int maxFrameLength = 1024 * 1024;
+        private int readerIdleSeconds = 90;
+        private SerializerType v1Serializer = SerializerType.JSON;
+        private SerializerType v2Serializer = SerializerType.BINARY;
+    }
+
+    /**
+     * WebSocket permessage-deflate 压缩配置，WebSocket 服务器和 Socket.IO 服务器共用
+     */
+    @Data
+    public static class Compression {
+        private boolean enabled = true;
+        // zlib 压缩级别 0-9
+        private int level = 6;
+        // 负载小于该字节数的帧不压缩，直接原样发送
+        private int minPayloadSize = 256;
+        // 接受客户端提出的 server_no_context_takeover，服务端每条消息重置压缩字典
+        private boolean allowServerNoContextTakeover = true;
+        // 要求客户端 client_no_context_takeover，降低服务端每连接的解压内存
+        private boolean requestClientNoContextTakeover = false;
+    }
+
+    /**
+     * 客户端批量发送消息的配置，Socket.IO 的 sendMessages 事件和 WebSocket 的 messages 帧共用
+     */
+    @Data
+    public static class SendBatch {
+        // 单个批次允许的最大消息数，超出的整批拒绝
+        private int maxSize = 100;
+    }
+
+    /**
+     * 图片等二进制内容的分片上传配置，内容保存在本地目录，消息中只携带引用地址
+     */
+    @Data
+    public static class Upload {
+        private String directory = "data/uploads";
+        // 建议客户端使用的分片大小
+        private int chunkSize = 256 * 1024;
+        private long maxSize = 10 * 1024 * 1024;
+        // 未完成的上传保留时长，过期后清理，不能再续传
+        private long expireSeconds = 24 * 3600;
+        // 内容地址前缀，为空时消息中使用相对地址
+        private String publicBaseUrl = "";
+    }
+
+    /**
+     * 系统公告配置，只有 operators 中列出的用户可以发起、查询和取消公告
+     */
+    @Data
+    public static class Announcement {
+        private Set<String> operators = new HashSet<>();
+    }
+}
@@ -1,7 +1,16 @@
 package com.example.chat.config;
 
 import com.corundumstudio.socketio.Configuration;
+import com.corundumstudio.socketio.SocketIOChannelInitializer;
 import com.corundumstudio.socketio.SocketIOServer;
+import com.example.chat.core.handler.BackpressureHandler;
+import com.example.chat.core.handler.NonCriticalEventMarker;
+import com.example.chat.core.handler.WebSocketCompression;
+import com.example.chat.core.server.SocketIOAdapter;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.WriteBufferWaterMark;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import com.corundumstudio.socketio.Transport;
@@ -13,6 +22,10 @@ import com.example.chat.service.UserService;
 @org.springframework.context.annotation.Configuration
 public class SocketIOConfig {
 
+    // 连接积压时可以丢弃的事件，客户端可以通过 getPresence 增量同步补齐
+    private static final NonCriticalEventMarker NON_CRITICAL_EVENTS =
+            new NonCriticalEventMarker(SocketIOAdapter.USER_STATUS_EVENT);
+
     @Value("${socketio.host:0.0.0.0}")
     private String host;
     
@@ -40,6 +53,9 @@ public class SocketIOConfig {
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private ChatConfig chatConfig;
+    
     @Bean
     public SocketIOServer socketIOServer() {
         Configuration config = new Configuration();
@@ -66,7 +82,7 @@ public class SocketIOConfig {
         // 允许所有传输方式
         config.setTransports(Transport.WEBSOCKET, Transport.POLLING);
         
-        // 禁用WebSocket压缩
+        // 不使用框架默认的WebSocket压缩，改为在管道中安装带阈值和统计的压缩处理器
         config.setWebsocketCompression(false);
         
         // 添加认证监听器
@@ -108,7 +124,30 @@ public class SocketIOConfig {
         config.setAllowHeaders("Authorization,Content-Type,Accept,Origin,X-Requested-With");
         
         log.info("Configuring Socket.IO server on {}:{}", host, port);
-        SocketIOServer server = new SocketIOServer(config);
+        ChatConfig.Backpressure backpressure = chatConfig.getBackpressure();
+        SocketIOServer server = new SocketIOServer(config) {
+            @Override
+            protected void applyConnectionOptions(ServerBootstrap bootstrap) {
+                super.applyConnectionOptions(bootstrap);
+                // 写缓冲超过高水位后 Channel 变为不可写，由 BackpressureHandler 接管积压
+                bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                        backpressure.getLowWaterMark(), backpressure.getHighWaterMark()));
+            }
+        };
+        server.setPipelineFactory(new SocketIOChannelInitializer() {
+            @Override
+            protected void addSocketioHandlers(ChannelPipeline pipeline) {
+                super.addSocketioHandlers(pipeline);
+                // 放在 WebSocket 传输之前，与框架默认压缩处理器的位置一致
+                WebSocketCompression.addBefore(pipeline, SocketIOChannelInitializer.WEB_SOCKET_TRANSPORT,
+                        chatConfig.getCompression(), "socketio");
+                // EncoderHandler 通过 channel.write 写出 WebSocket 帧，放在末尾可以拦截到所有帧
+                pipeline.addLast(BackpressureHandler.NAME, new BackpressureHandler("socketio",
+                        backpressure.getMaxPendingMessages(), backpressure.getOverflowPolicy()));
+                // 出站时先于 BackpressureHandler 执行，把在线状态推送标记为非关键帧
+                pipeline.addLast(NonCriticalEventMarker.NAME, NON_CRITICAL_EVENTS);
+            }
+        });
         
         // 添加连接事件监听器
         server.addConnectListener(client -> {
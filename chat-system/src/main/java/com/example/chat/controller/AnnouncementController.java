@@ -0,0 +1,140 @@
+package com.example.chat.controller;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.core.server.SocketIOAdapter;
+import com.example.chat.core.server.WebSocketChatServer;
+import com.example.chat.service.JwtService;
+import com.example.chat.util.PacedBroadcast;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 系统公告：限速广播到所有连接，可查询进度和取消
+ * 所有接口只对 chat.announcement.operators 中的运维用户开放
+ */
+@RestController
+@RequestMapping("/api/announcements")
+public class AnnouncementController {
+
+    private static final Logger log = LoggerFactory.getLogger(AnnouncementController.class);
+    private static final int DEFAULT_RATE_PER_SECOND = 20000;
+
+    private final SocketIOAdapter socketIOAdapter;
+    private final WebSocketChatServer webSocketChatServer;
+    private final JwtService jwtService;
+    private final Set<String> operators;
+    private final Map<String, List<PacedBroadcast<?>>> broadcasts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AnnouncementController(SocketIOAdapter socketIOAdapter, WebSocketChatServer webSocketChatServer,
+                                  JwtService jwtService, ChatConfig chatConfig) {
+        this.socketIOAdapter = socketIOAdapter;
+        this.webSocketChatServer = webSocketChatServer;
+        this.jwtService = jwtService;
+        this.operators = chatConfig.getAnnouncement().getOperators();
+    }
+
+    @PostMapping("")
+    public ResponseEntity<Map<String, Object>> announce(@RequestBody Map<String, Object> data,
+                                                        @RequestHeader("Authorization") String authHeader) {
+        try {
+            int status = authorize(authHeader);
+            if (status != 200) {
+                return ResponseEntity.status(status).build();
+            }
+
+            String content = (String) data.get("content");
+            if (content == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            Object rate = data.get("ratePerSecond");
+            int perSecond = rate instanceof Number ? ((Number) rate).intValue() : DEFAULT_RATE_PER_SECOND;
+
+            // 清理已结束的公告
+            broadcasts.values().removeIf(running -> running.stream().allMatch(PacedBroadcast::isDone));
+
+            String id = UUID.randomUUID().toString();
+            broadcasts.put(id, List.of(
+                    socketIOAdapter.broadcastAnnouncement(content, perSecond),
+                    webSocketChatServer.broadcastAnnouncement(content, perSecond)));
+            return ResponseEntity.status(201).body(progress(id));
+        } catch (Exception e) {
+            log.error("Error starting announcement", e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getProgress(@PathVariable String id,
+                                                           @RequestHeader("Authorization") String authHeader) {
+        int status = authorize(authHeader);
+        if (status != 200) {
+            return ResponseEntity.status(status).build();
+        }
+        if (!broadcasts.containsKey(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(progress(id));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String id,
+                                                      @RequestHeader("Authorization") String authHeader) {
+        int status = authorize(authHeader);
+        if (status != 200) {
+            return ResponseEntity.status(status).build();
+        }
+        List<PacedBroadcast<?>> running = broadcasts.get(id);
+        if (running == null) {
+            return ResponseEntity.notFound().build();
+        }
+        running.forEach(PacedBroadcast::cancel);
+        return ResponseEntity.ok(progress(id));
+    }
+
+    /**
+     * 校验调用者是运维用户，返回 200 表示通过，否则为应返回的状态码
+     */
+    private int authorize(String authHeader) {
+        String userId = jwtService.validateToken(authHeader.replace("Bearer ", ""));
+        if (userId == null) {
+            return 401;
+        }
+        if (!operators.contains(userId)) {
+            log.warn("User {} is not allowed to manage announcements", userId);
+            return 403;
+        }
+        return 200;
+    }
+
+    private Map<String, Object> progress(String id) {
+        int delivered = 0;
+        int total = 0;
+        boolean done = true;
+        boolean cancelled = false;
+        for (PacedBroadcast<?> broadcast : broadcasts.get(id)) {
+            delivered += broadcast.getDelivered();
+            total += broadcast.getTotal();
+            done &= broadcast.isDone();
+            cancelled |= broadcast.isCancelled();
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("id", id);
+        result.put("delivered", delivered);
+        result.put("total", total);
+        result.put("done", done);
+        result.put("cancelled", cancelled);
+        return result;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.chat.controller;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.model.UploadSession;
+import com.example.chat.service.ContentStore;
+import com.example.chat.service.JwtService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片的分片上传和下载
+ * 1. POST /api/uploads 声明文件类型和大小，得到 uploadId
+ * 2. PATCH /api/uploads/{uploadId}，Upload-Offset 头为分片起始位置，请求体为原始字节；
+ *    offset 不一致时返回 409 和服务端的 offset，断线后先 GET /api/uploads/{uploadId} 查询 offset 再续传
+ * 3. 最后一个分片写完后响应中带 contentId 和 url，发送消息时用 imageId 引用 contentId
+ */
+@RestController
+@RequestMapping("/api")
+@CrossOrigin(origins = "http://localhost:5173", allowCredentials = "true", exposedHeaders = "Upload-Offset")
+public class ContentController {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentController.class);
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    private final ContentStore contentStore;
+    private final JwtService jwtService;
+    private final int chunkSize;
+
+    @Autowired
+    public ContentController(ContentStore contentStore, JwtService jwtService, ChatConfig chatConfig) {
+        this.contentStore = contentStore;
+        this.jwtService = jwtService;
+        this.chunkSize = chatConfig.getUpload().getChunkSize();
+    }
+
+    @PostMapping("/uploads")
+    public ResponseEntity<Map<String, Object>> createUpload(@RequestBody Map<String, Object> data,
+                                                            @RequestHeader("Authorization") String authHeader) {
+        try {
+            String userId = jwtService.validateToken(authHeader.replace("Bearer ", ""));
+            if (userId == null) {
+                return ResponseEntity.status(401).build();
+            }
+
+            Object size = data.get("size");
+            if (!(size instanceof Number)) {
+                return ResponseEntity.badRequest().build();
+            }
+            UploadSession session = contentStore.createUpload(userId, (String) data.get("fileName"),
+                    (String) data.get("contentType"), ((Number) size).longValue());
+            return ResponseEntity.status(201).body(toResponse(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error creating upload", e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getUpload(@PathVariable String uploadId,
+                                                         @RequestHeader("Authorization") String authHeader) {
+        String userId = jwtService.validateToken(authHeader.replace("Bearer ", ""));
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        UploadSession session = contentStore.getUpload(uploadId);
+        if (session == null || !session.getUserId().equals(userId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                .body(toResponse(session));
+    }
+
+    @PatchMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> appendChunk(@PathVariable String uploadId,
+                                                           @RequestHeader(UPLOAD_OFFSET) long offset,
+                                                           @RequestHeader("Authorization") String authHeader,
+                                                           HttpServletRequest request) {
+        String userId = jwtService.validateToken(authHeader.replace("Bearer ", ""));
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            // 请求体直接流式写入存储
+            UploadSession session = contentStore.appendChunk(uploadId, userId, offset, request.getInputStream());
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                    .body(toResponse(session));
+        } catch (IllegalStateException e) {
+            UploadSession session = contentStore.getUpload(uploadId);
+            if (session == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.status(409)
+                    .header(UPLOAD_OFFSET, String.valueOf(session.getOffset()))
+                    .body(toResponse(session));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error appending upload chunk: {}", uploadId, e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    /**
+     * 内容地址出现在消息中，由浏览器直接加载，不要求 Authorization 头；内容ID是随机的128位标识
+     * 内容由用户上传，禁止浏览器嗅探类型，并以沙箱方式响应，直接打开地址时也不会执行其中的脚本；
+     * 不在图片白名单内的历史内容按附件下载
+     */
+    @GetMapping("/content/{contentId}")
+    public ResponseEntity<Resource> getContent(@PathVariable String contentId) {
+        UploadSession content = contentStore.getContent(contentId);
+        if (content == null) {
+            return ResponseEntity.notFound().build();
+        }
+        boolean image = ContentStore.IMAGE_TYPES.contains(content.getContentType());
+        // 内容写入后不再变化，可以长期缓存
+        return ResponseEntity.ok()
+                .contentType(image ? MediaType.parseMediaType(content.getContentType())
+                        : MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        (image ? ContentDisposition.inline() : ContentDisposition.attachment()).build().toString())
+                .header("X-Content-Type-Options", "nosniff")
+                .header("Content-Security-Policy", "default-src 'none'; sandbox")
+                .contentLength(content.getSize())
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .body(new FileSystemResource(contentStore.getContentPath(contentId)));
+    }
+
+    private Map<String, Object> toResponse(UploadSession session) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("uploadId", session.getUploadId());
+        response.put("offset", session.getOffset());
+        response.put("size", session.getSize());
+        response.put("chunkSize", chunkSize);
+        if (session.getContentId() != null) {
+            response.put("contentId", session.getContentId());
+            response.put("url", contentStore.getContentUrl(session.getContentId()));
+        }
+        return response;
+    }
+}
@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.corundumstudio.socketio.SocketIOServer;
+import com.example.chat.util.ChatMetrics;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -23,4 +24,12 @@ public class HealthController {
         status.put("port", socketIOServer.getConfiguration().getPort());
         return status;
     }
+
+    @GetMapping("/metrics")
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = ChatMetrics.snapshot();
+        metrics.put("socketio.fanout.encodesPerFanout", ChatMetrics.encodesPerFanout("socketio"));
+        metrics.put("websocket.fanout.encodesPerFanout", ChatMetrics.encodesPerFanout("websocket"));
+        return metrics;
+    }
 }
@@ -1,11 +1,14 @@
 package com.example.chat.controller;
 
+import com.example.chat.core.codec.ClientMessageEncoder;
 import com.example.chat.model.ChatMessage;
 import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
 import com.example.chat.service.MessageService;
 import com.example.chat.service.UserService;
 import com.example.chat.service.JwtService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
@@ -18,23 +21,34 @@ import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/messages")
-@CrossOrigin(origins = "http://localhost:5173", allowCredentials = "true")
+@CrossOrigin(origins = "http://localhost:5173", allowCredentials = "true", exposedHeaders = MessageController.NEXT_CURSOR)
 public class MessageController {
     
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+    
     private final MessageService messageService;
     private final UserService userService;
     private final JwtService jwtService;
+    private final ClientMessageEncoder clientMessageEncoder;
     private static final Logger log = LoggerFactory.getLogger(MessageController.class);
     
     @Autowired
-    public MessageController(MessageService messageService, UserService userService, JwtService jwtService) {
+    public MessageController(MessageService messageService, UserService userService, JwtService jwtService,
+                             ClientMessageEncoder clientMessageEncoder) {
         this.messageService = messageService;
         this.userService = userService;
         this.jwtService = jwtService;
+        this.clientMessageEncoder = clientMessageEncoder;
     }
     
+    /**
+     * 在线用户列表，不带 cursor 时返回全部在线用户；带 cursor 时只返回一页，
+     * 下一页的游标放在 X-Next-Cursor 头中，"0" 表示已到末尾
+     */
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getUsers(@RequestHeader("Authorization") String authHeader) {
+    public ResponseEntity<List<User>> getUsers(@RequestHeader("Authorization") String authHeader,
+                                               @RequestParam(required = false) String cursor,
+                                               @RequestParam(defaultValue = "100") int limit) {
         try {
             // 从token中提取用户ID
             String token = authHeader.replace("Bearer ", "");
@@ -44,19 +58,26 @@ public class MessageController {
                 return ResponseEntity.status(401).build();
             }
             
+            if (cursor != null) {
+                UserPage page = userService.getOnlineUsers(cursor, Math.max(1, limit));
+                return ResponseEntity.ok()
+                        .header(NEXT_CURSOR, page.getCursor())
+                        .body(excludeUser(page.getUsers(), currentUserId));
+            }
+            
             // 获取所有在线用户，并过滤掉当前用户
-            List<User> users = userService.getOnlineUsers().stream()
-                    .filter(user -> !user.getId().equals(currentUserId))
-                    .collect(Collectors.toList());
-            return ResponseEntity.ok(users);
+            return ResponseEntity.ok(excludeUser(userService.getOnlineUsers(), currentUserId));
         } catch (Exception e) {
             log.error("Error getting users", e);
             return ResponseEntity.status(500).build();
         }
     }
     
+    /**
+     * 历史消息，使用与实时推送相同的客户端格式，由每条消息缓存的编码结果直接拼接
+     */
     @GetMapping("/{userId}")
-    public ResponseEntity<List<ChatMessage>> getMessages(
+    public ResponseEntity<byte[]> getMessages(
             @PathVariable String userId,
             @RequestHeader("Authorization") String authHeader) {
         try {
@@ -68,7 +89,9 @@ public class MessageController {
             }
         
         List<ChatMessage> messages = messageService.getMessagesBetweenUsers(currentUserId, userId);
-        return ResponseEntity.ok(messages);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(clientMessageEncoder.encodePage(messages));
         } catch (Exception e) {
             log.error("Error getting messages", e);
             return ResponseEntity.status(500).build();
@@ -109,7 +132,10 @@ public class MessageController {
             return ResponseEntity.status(500).build();
         }
     }
+    
+    private List<User> excludeUser(List<User> users, String userId) {
+        return users.stream()
+                .filter(user -> !user.getId().equals(userId))
+                .collect(Collectors.toList());
+    }
 }
-
-
-
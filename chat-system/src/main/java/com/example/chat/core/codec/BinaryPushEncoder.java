@@ -0,0 +1,88 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.core.server.ChatPush;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.response.PushMessage;
+import com.example.chat.protocol.response.StatusCode;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/**
+ * 把 {@link ChatPush} 编码为二进制协议帧
+ * 按连接协商出的协议版本编码，每种版本和序列化方式只编码一次并缓存在推送对象上，同一格式的成员共享同一份字节。
+ * 批量推送是各条推送帧的拼接，客户端按普通推送逐帧解码。需放在背压处理器和业务处理器之间。
+ * 推送以 {@link PushMessage} 写出，携带完整的消息字段；推送不对应任何请求，v2 帧的请求ID为空字符串，
+ * 不会与客户端的数值请求ID混淆，v1 帧的请求ID固定36字节，由编解码器随机生成。
+ */
+@ChannelHandler.Sharable
+public class BinaryPushEncoder extends MessageToMessageEncoder<ChatPush> {
+
+    // 非数值的请求ID在 v2 帧中按字符串编码，空字符串只占两个字节
+    private static final String PUSH_REQUEST_ID = "";
+
+    private final SerializerType v1Serializer;
+    private final SerializerType v2Serializer;
+    private final MessageCodec v1Codec;
+    private final MessageCodecV2 v2Codec;
+
+    public BinaryPushEncoder(SerializerType v1Serializer, SerializerType v2Serializer) {
+        this.v1Serializer = v1Serializer;
+        this.v2Serializer = v2Serializer;
+        this.v1Codec = new MessageCodec(v1Serializer);
+        this.v2Codec = new MessageCodecV2(v2Serializer);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ChatPush push, List<Object> out) {
+        int version = ProtocolNegotiator.versionOf(ctx.channel());
+        out.add(Unpooled.wrappedBuffer(encode(push, version)));
+    }
+
+    /**
+     * 按协议版本编码推送，批量推送返回各条推送帧的拼接
+     */
+    public byte[] encode(ChatPush push, int version) {
+        SerializerType serializer = version == 1 ? v1Serializer : v2Serializer;
+        return push.encode("binary/v" + version + "/" + serializer, p -> {
+            if (!p.isBatch()) {
+                return encodeFrame(p.getMessage(), version);
+            }
+            ByteArrayOutputStream frames = new ByteArrayOutputStream();
+            for (ChatPush child : p.getBatch()) {
+                frames.writeBytes(encode(child, version));
+            }
+            return frames.toByteArray();
+        });
+    }
+
+    private byte[] encodeFrame(ChatMessage message, int version) {
+        PushMessage push = PushMessage.builder()
+                .type(MessageType.MESSAGE_PUSH)
+                .statusCode((short) StatusCode.SUCCESS.getCode())
+                .requestId(version == 1 ? null : PUSH_REQUEST_ID)
+                .message(message)
+                .build();
+        ByteBuf frame = null;
+        try {
+            frame = version == 1 ? v1Codec.encode(ByteBufAllocator.DEFAULT, push)
+                    : v2Codec.encode(ByteBufAllocator.DEFAULT, push);
+            return ByteBufUtil.getBytes(frame);
+        } catch (Exception e) {
+            throw new EncoderException("Failed to encode push of message " + message.getId(), e);
+        } finally {
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.model.ChatMessage;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.*;
+import com.example.chat.protocol.response.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static com.example.chat.util.VarIntUtil.*;
+
+/**
+ * 紧凑二进制正文序列化器
+ * 每种消息类型按固定字段顺序写出，不含字段名：
+ * 字符串为 varint长度+UTF-8（长度0表示null），int/long 为 zigzag varint，boolean 为单字节，
+ * 列表/集合为 varint个数（0表示null）后跟元素。
+ * 协议演进时只能在字段序列末尾追加新字段，旧版本读取时会忽略正文尾部多出的字节。
+ */
+public class BinarySerializer implements Serializer {
+
+    private static final Map<MessageType, Schema<?>> SCHEMAS = new EnumMap<>(MessageType.class);
+    private static final ChatMessage.MessageType[] CHAT_MESSAGE_TYPES = ChatMessage.MessageType.values();
+
+    static {
+        register(MessageType.CHAT_REQUEST, ChatRequest::new, (m, out) -> {
+            writeString(out, m.getSender());
+            writeString(out, m.getContent());
+            writeString(out, m.getRoomId());
+        }, (m, in) -> {
+            m.setSender(readString(in));
+            m.setContent(readString(in));
+            m.setRoomId(readString(in));
+        });
+        register(MessageType.CHAT_RESPONSE, ChatResponse::new, (m, out) -> {
+            out.writeBoolean(m.isSuccess());
+            writeString(out, m.getMessage());
+        }, (m, in) -> {
+            m.setSuccess(in.readBoolean());
+            m.setMessage(readString(in));
+        });
+        register(MessageType.LOGIN_REQUEST, LoginRequest::new, (m, out) -> {
+            writeString(out, m.getUsername());
+            writeString(out, m.getPassword());
+            writeString(out, m.getDeviceId());
+        }, (m, in) -> {
+            m.setUsername(readString(in));
+            m.setPassword(readString(in));
+            m.setDeviceId(readString(in));
+        });
+        register(MessageType.LOGIN_RESPONSE, LoginResponse::new, (m, out) -> {
+            writeString(out, m.getToken());
+            writeString(out, m.getUserId());
+            writeString(out, m.getUsername());
+        }, (m, in) -> {
+            m.setToken(readString(in));
+            m.setUserId(readString(in));
+            m.setUsername(readString(in));
+        });
+        register(MessageType.LOGOUT_REQUEST, LogoutRequest::new, (m, out) -> { }, (m, in) -> { });
+        register(MessageType.LOGOUT_RESPONSE, LogoutResponse::new, (m, out) -> {
+            out.writeBoolean(m.isSuccess());
+            writeString(out, m.getMessage());
+        }, (m, in) -> {
+            m.setSuccess(in.readBoolean());
+            m.setMessage(readString(in));
+        });
+        for (MessageType type : new MessageType[] {MessageType.ROOM_REQUEST, MessageType.ROOM_CREATE,
+                MessageType.ROOM_JOIN, MessageType.ROOM_LEAVE, MessageType.ROOM_LIST}) {
+            register(type, RoomRequest::new, (m, out) -> {
+                writeString(out, m.getRoomId());
+                writeString(out, m.getRoomName());
+                writeString(out, m.getDescription());
+                out.writeBoolean(m.isPrivate());
+            }, (m, in) -> {
+                m.setRoomId(readString(in));
+                m.setRoomName(readString(in));
+                m.setDescription(readString(in));
+                m.setPrivate(in.readBoolean());
+            });
+        }
+        register(MessageType.ROOM_RESPONSE, RoomResponse::new, (m, out) -> {
+            writeString(out, m.getRoomId());
+            writeString(out, m.getRoomName());
+            writeString(out, m.getDescription());
+            out.writeBoolean(m.isPrivate());
+            out.writeBoolean(m.isSuccess());
+            writeString(out, m.getMessage());
+        }, (m, in) -> {
+            m.setRoomId(readString(in));
+            m.setRoomName(readString(in));
+            m.setDescription(readString(in));
+            m.setPrivate(in.readBoolean());
+            m.setSuccess(in.readBoolean());
+            m.setMessage(readString(in));
+        });
+        register(MessageType.HEARTBEAT_REQUEST, HeartbeatRequest::new, (m, out) -> { }, (m, in) -> { });
+        register(MessageType.HEARTBEAT_RESPONSE, HeartbeatResponse::new,
+                (m, out) -> writeSignedVarLong(out, m.getServerTime()),
+                (m, in) -> m.setServerTime(readSignedVarLong(in)));
+        register(MessageType.MESSAGE_HISTORY_REQUEST, MessageHistoryRequest::new, (m, out) -> {
+            writeString(out, m.getRoomId());
+            writeSignedVarLong(out, m.getStartTime());
+            writeSignedVarLong(out, m.getEndTime());
+            writeSignedVarInt(out, m.getLimit());
+            writeString(out, m.getLastMessageId());
+        }, (m, in) -> {
+            m.setRoomId(readString(in));
+            m.setStartTime(readSignedVarLong(in));
+            m.setEndTime(readSignedVarLong(in));
+            m.setLimit(readSignedVarInt(in));
+            m.setLastMessageId(readString(in));
+        });
+        register(MessageType.MESSAGE_HISTORY_RESPONSE, MessageHistoryResponse::new, (m, out) -> {
+            writeString(out, m.getRoomId());
+            writeChatMessages(out, m.getMessages());
+            out.writeBoolean(m.isHasMore());
+        }, (m, in) -> {
+            m.setRoomId(readString(in));
+            m.setMessages(readChatMessages(in));
+            m.setHasMore(in.readBoolean());
+        });
+        register(MessageType.ERROR, ErrorMessage::new, (m, out) -> {
+            writeString(out, m.getErrorCode());
+            writeString(out, m.getMessage());
+        }, (m, in) -> {
+            m.setErrorCode(readString(in));
+            m.setMessage(readString(in));
+        });
+        register(MessageType.SYSTEM, SystemMessage::new, (m, out) -> {
+            writeString(out, m.getTitle());
+            writeString(out, m.getMessage());
+            writeString(out, m.getLevel());
+            writeSignedVarLong(out, m.getTimestamp());
+        }, (m, in) -> {
+            m.setTitle(readString(in));
+            m.setMessage(readString(in));
+            m.setLevel(readString(in));
+            m.setTimestamp(readSignedVarLong(in));
+        });
+        register(MessageType.NOTIFICATION, NotificationMessage::new, (m, out) -> {
+            writeString(out, m.getTitle());
+            writeString(out, m.getMessage());
+            writeString(out, m.getLevel());
+            writeSignedVarLong(out, m.getTimestamp());
+        }, (m, in) -> {
+            m.setTitle(readString(in));
+            m.setMessage(readString(in));
+            m.setLevel(readString(in));
+            m.setTimestamp(readSignedVarLong(in));
+        });
+        register(MessageType.MESSAGE_PUSH, PushMessage::new,
+                (m, out) -> writeChatMessage(out, m.getMessage()),
+                (m, in) -> m.setMessage(readChatMessage(in)));
+    }
+
+    @Override
+    public SerializerType getType() {
+        return SerializerType.BINARY;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(ProtocolMessage msg, ByteBuf out) {
+        Schema<ProtocolMessage> schema = (Schema<ProtocolMessage>) SCHEMAS.get(msg.getType());
+        if (schema == null) {
+            throw new IllegalArgumentException("Unsupported message type: " + msg.getType());
+        }
+        schema.writer.accept(msg, out);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ProtocolMessage deserialize(MessageType type, ByteBuf in) {
+        Schema<ProtocolMessage> schema = (Schema<ProtocolMessage>) SCHEMAS.get(type);
+        if (schema == null) {
+            throw new DecoderException("Unsupported message type: " + type);
+        }
+        ProtocolMessage msg = schema.factory.get();
+        try {
+            schema.reader.accept(msg, in);
+        } catch (IndexOutOfBoundsException e) {
+            throw new CorruptedFrameException("Truncated " + type + " body", e);
+        }
+        return msg;
+    }
+
+    private static void writeChatMessages(ByteBuf out, List<ChatMessage> messages) {
+        if (messages == null) {
+            out.writeByte(0);
+            return;
+        }
+        writeVarInt(out, messages.size() + 1);
+        for (ChatMessage message : messages) {
+            writeChatMessage(out, message);
+        }
+    }
+
+    private static void writeChatMessage(ByteBuf out, ChatMessage message) {
+        writeString(out, message.getId());
+        writeString(out, message.getSenderId());
+        writeString(out, message.getReceiverId());
+        writeString(out, message.getRoomId());
+        writeString(out, message.getContent());
+        writeString(out, message.getImage());
+        writeSignedVarLong(out, message.getTimestamp());
+        writeVarInt(out, message.getType() != null ? message.getType().ordinal() + 1 : 0);
+        writeStrings(out, message.getReadBy());
+    }
+
+    private static List<ChatMessage> readChatMessages(ByteBuf in) {
+        int size = readCount(in);
+        if (size < 0) {
+            return null;
+        }
+        List<ChatMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            messages.add(readChatMessage(in));
+        }
+        return messages;
+    }
+
+    private static ChatMessage readChatMessage(ByteBuf in) {
+        ChatMessage message = new ChatMessage();
+        message.setId(readString(in));
+        message.setSenderId(readString(in));
+        message.setReceiverId(readString(in));
+        message.setRoomId(readString(in));
+        message.setContent(readString(in));
+        message.setImage(readString(in));
+        message.setTimestamp(readSignedVarLong(in));
+        int type = readVarInt(in) - 1;
+        if (type >= CHAT_MESSAGE_TYPES.length) {
+            throw new CorruptedFrameException("Unknown chat message type: " + type);
+        }
+        message.setType(type >= 0 ? CHAT_MESSAGE_TYPES[type] : null);
+        message.setReadBy(readStrings(in));
+        return message;
+    }
+
+    private static void writeStrings(ByteBuf out, Set<String> values) {
+        if (values == null) {
+            out.writeByte(0);
+            return;
+        }
+        writeVarInt(out, values.size() + 1);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static Set<String> readStrings(ByteBuf in) {
+        int size = readCount(in);
+        if (size < 0) {
+            return null;
+        }
+        Set<String> values = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    /**
+     * 读取元素个数，每个元素至少占一个字节，超过剩余字节数说明数据已损坏
+     */
+    private static int readCount(ByteBuf in) {
+        int size = readVarInt(in) - 1;
+        if (size > in.readableBytes()) {
+            throw new CorruptedFrameException("Element count " + size + " exceeds remaining " + in.readableBytes());
+        }
+        return size;
+    }
+
+    private static <T extends ProtocolMessage> void register(MessageType type, Supplier<T> factory,
+                                                             BiConsumer<T, ByteBuf> writer,
+                                                             BiConsumer<T, ByteBuf> reader) {
+        SCHEMAS.put(type, new Schema<>(factory, writer, reader));
+    }
+
+    private record Schema<T extends ProtocolMessage>(Supplier<T> factory,
+                                                     BiConsumer<T, ByteBuf> writer,
+                                                     BiConsumer<T, ByteBuf> reader) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.User;
+import com.example.chat.service.UserService;
+import com.example.chat.util.ChatMetrics;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天消息的客户端格式编码
+ * 编码结果缓存在消息对象上（见 {@link ChatMessage#clientJson}），Socket.IO 推送和 REST 历史查询复用同一份字节，
+ * 热点历史页直接由预编码的消息拼接而成。发送者资料在首次编码时固定。
+ */
+@Component
+@RequiredArgsConstructor
+public class ClientMessageEncoder {
+
+    private final UserService userService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 单条消息的客户端格式 JSON，已缓存时直接返回
+     */
+    public SerializableString encode(ChatMessage message) {
+        return message.clientJson(this::toJson);
+    }
+
+    /**
+     * 将一页消息拼接为 JSON 数组
+     */
+    public byte[] encodePage(List<ChatMessage> messages) {
+        SerializableString[] encoded = new SerializableString[messages.size()];
+        int size = 2 + Math.max(0, messages.size() - 1);
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encode(messages.get(i));
+            size += encoded[i].asUnquotedUTF8().length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        out.write('[');
+        for (int i = 0; i < encoded.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.writeBytes(encoded[i].asUnquotedUTF8());
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private String toJson(ChatMessage message) {
+        try {
+            ChatMetrics.counter("message.clientjson.encodes").inc();
+            return objectMapper.writeValueAsString(convertToClientFormat(message));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to encode message " + message.getId(), e);
+        }
+    }
+
+    // 将消息转换为客户端期望的格式
+    private Map<String, Object> convertToClientFormat(ChatMessage message) {
+        Map<String, Object> result = new HashMap<>();
+
+        // 基本字段
+        result.put("_id", message.getId());
+        result.put("messageId", message.getId());
+        result.put("senderId", message.getSenderId());
+        result.put("receiverId", message.getReceiverId());
+        result.put("timestamp", message.getTimestamp());
+        result.put("createdAt", message.getTimestamp());
+        result.put("type", message.getType().toString().toLowerCase());
+
+        // 消息内容 - 同时支持图片和文字
+        result.put("content", message.getContent());
+        result.put("text", message.getContent());
+        if (message.getType() == ChatMessage.MessageType.IMAGE) {
+            result.put("image", message.getImage());
+        }
+
+        // 可选字段
+        if (message.getRoomId() != null) {
+            result.put("roomId", message.getRoomId());
+        }
+
+        // 添加发送者信息
+        User sender = userService.getUserById(message.getSenderId());
+        if (sender != null) {
+            Map<String, Object> senderInfo = new HashMap<>();
+            senderInfo.put("id", sender.getId());
+            senderInfo.put("username", sender.getUsername());
+            senderInfo.put("fullName", sender.getFullName());
+            senderInfo.put("profilePic", sender.getProfilePicture());
+            result.put("sender", senderInfo);
+        }
+
+        return result;
+    }
+}
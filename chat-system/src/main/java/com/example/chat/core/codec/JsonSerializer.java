@@ -0,0 +1,100 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.*;
+import com.example.chat.protocol.response.*;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.DecoderException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * JSON正文序列化器，正文为完整的消息对象（包含字段名）
+ * 直接写入/读取 ByteBuf，不生成中间的 String 或 byte[]；
+ * 每种消息类型的 ObjectReader/ObjectWriter 预先构建，运行时不再按类型查找序列化器。
+ */
+public class JsonSerializer implements Serializer {
+
+    private static final Map<MessageType, Class<? extends ProtocolMessage>> MESSAGE_CLASSES = new EnumMap<>(MessageType.class);
+    private static final Map<MessageType, ObjectReader> READERS = new EnumMap<>(MessageType.class);
+    private static final Map<MessageType, ObjectWriter> WRITERS = new EnumMap<>(MessageType.class);
+
+    static {
+        MESSAGE_CLASSES.put(MessageType.CHAT_REQUEST, ChatRequest.class);
+        MESSAGE_CLASSES.put(MessageType.CHAT_RESPONSE, ChatResponse.class);
+        MESSAGE_CLASSES.put(MessageType.LOGIN_REQUEST, LoginRequest.class);
+        MESSAGE_CLASSES.put(MessageType.LOGIN_RESPONSE, LoginResponse.class);
+        MESSAGE_CLASSES.put(MessageType.LOGOUT_REQUEST, LogoutRequest.class);
+        MESSAGE_CLASSES.put(MessageType.LOGOUT_RESPONSE, LogoutResponse.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_REQUEST, RoomRequest.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_CREATE, RoomRequest.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_JOIN, RoomRequest.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_LEAVE, RoomRequest.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_LIST, RoomRequest.class);
+        MESSAGE_CLASSES.put(MessageType.ROOM_RESPONSE, RoomResponse.class);
+        MESSAGE_CLASSES.put(MessageType.HEARTBEAT_REQUEST, HeartbeatRequest.class);
+        MESSAGE_CLASSES.put(MessageType.HEARTBEAT_RESPONSE, HeartbeatResponse.class);
+        MESSAGE_CLASSES.put(MessageType.MESSAGE_HISTORY_REQUEST, MessageHistoryRequest.class);
+        MESSAGE_CLASSES.put(MessageType.MESSAGE_HISTORY_RESPONSE, MessageHistoryResponse.class);
+        MESSAGE_CLASSES.put(MessageType.ERROR, ErrorMessage.class);
+        MESSAGE_CLASSES.put(MessageType.SYSTEM, SystemMessage.class);
+        MESSAGE_CLASSES.put(MessageType.NOTIFICATION, NotificationMessage.class);
+        MESSAGE_CLASSES.put(MessageType.MESSAGE_PUSH, PushMessage.class);
+
+        // 忽略未知字段：ChatMessage 的 isPrivate() 等派生属性会被写出，但没有对应的 setter
+        ObjectMapper mapper = JsonUtil.getObjectMapper();
+        MESSAGE_CLASSES.forEach((type, clazz) -> {
+            READERS.put(type, mapper.readerFor(clazz).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+            WRITERS.put(type, mapper.writerFor(clazz));
+        });
+    }
+
+    /**
+     * 消息类型对应的协议类
+     */
+    public static Class<? extends ProtocolMessage> messageClass(MessageType type) {
+        return MESSAGE_CLASSES.get(type);
+    }
+
+    @Override
+    public SerializerType getType() {
+        return SerializerType.JSON;
+    }
+
+    @Override
+    public void serialize(ProtocolMessage msg, ByteBuf out) throws Exception {
+        ObjectWriter writer = WRITERS.get(msg.getType());
+        if (writer == null) {
+            throw new IllegalArgumentException("Unsupported message type: " + msg.getType());
+        }
+        writer.writeValue((OutputStream) new ByteBufOutputStream(out), msg);
+    }
+
+    @Override
+    public ProtocolMessage deserialize(MessageType type, ByteBuf in) throws Exception {
+        ObjectReader reader = READERS.get(type);
+        if (reader == null) {
+            throw new DecoderException("Unsupported message type: " + type);
+        }
+        ProtocolMessage msg;
+        if (in.hasArray()) {
+            // 堆内存直接在底层数组上解析
+            msg = reader.readValue(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+        } else {
+            msg = reader.readValue((InputStream) new ByteBufInputStream(in));
+        }
+        in.skipBytes(in.readableBytes());
+        return msg;
+    }
+}
@@ -1,25 +1,66 @@
 package com.example.chat.core.codec;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.DecoderException;
 import com.example.chat.protocol.ProtocolMessage;
 import com.example.chat.protocol.MessageType;
-import com.example.chat.protocol.request.*;
-import com.example.chat.protocol.response.*;
-import com.example.chat.util.JsonUtil;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage> {
-    private static final int MAGIC_NUMBER = 0xCAFEBABE;
-    private static final byte VERSION = 1;
+    static final int MAGIC_NUMBER = 0xCAFEBABE;
+    static final byte VERSION = 1;
+    static final Serializer JSON_SERIALIZER = new JsonSerializer();
+    static final Serializer BINARY_SERIALIZER = new BinarySerializer();
+    static final int HEADER_LENGTH = 49; // 4 + 1 + 1 + 1 + 2 + 36 + 4
+    static final int LENGTH_FIELD_OFFSET = 45; // 4 + 1 + 1 + 1 + 2 + 36
+    private static final int REQUEST_ID_LENGTH = 36;
+    private static final int INITIAL_BODY_HINT = 256;
+    
+    /**
+     * 编码使用的序列化方式，解码时以消息头中的序列化方式为准，两种格式都能接收
+     */
+    private final Serializer serializer;
+    
+    /**
+     * 按消息类型记录最近一次的正文长度（留1/8余量），用来预分配编码缓冲区，避免写入过程中扩容
+     */
+    private final int[] bodySizeHints = new int[MessageType.values().length];
+    
+    public MessageCodec() {
+        this(SerializerType.JSON);
+    }
+    
+    public MessageCodec(SerializerType serializerType) {
+        this.serializer = serializerOf(serializerType.getCode());
+        Arrays.fill(bodySizeHints, INITIAL_BODY_HINT);
+    }
+    
+    static Serializer serializerOf(byte code) {
+        SerializerType type = SerializerType.fromCode(code);
+        if (type == null) {
+            return null;
+        }
+        return type == SerializerType.BINARY ? BINARY_SERIALIZER : JSON_SERIALIZER;
+    }
     
     @Override
     protected void encode(ChannelHandlerContext ctx, ProtocolMessage msg, List<Object> out) throws Exception {
-        ByteBuf buf = ctx.alloc().buffer();
+        out.add(encode(ctx.alloc(), msg));
+    }
+    
+    /**
+     * 在管道之外编码一条消息，供房间扇出预先编码一次后共享给所有成员
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, ProtocolMessage msg) throws Exception {
+        int typeIndex = msg.getType().ordinal();
+        ByteBuf buf = alloc.ioBuffer(HEADER_LENGTH + bodySizeHints[typeIndex]);
         try {
             // 1. 魔数 4字节
             buf.writeInt(MAGIC_NUMBER);
@@ -28,7 +69,7 @@ public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage
             buf.writeByte(VERSION);
             
             // 3. 序列化方式 1字节
-            buf.writeByte(SerializerType.JSON.ordinal());
+            buf.writeByte(serializer.getType().getCode());
             
             // 4. 消息类型 1字节
             buf.writeByte(msg.getType().ordinal());
@@ -36,37 +77,60 @@ public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage
             // 5. 状态码 2字节
             buf.writeShort(msg.getStatusCode());
             
-            // 6. 请求ID 36字节 - 如果为空则生成新的
+            // 6. 请求ID 36字节 - 如果为空则生成新的（请求ID只用于关联请求和响应，不需要 SecureRandom）
             String requestId = msg.getRequestId();
             if (requestId == null) {
-                requestId = UUID.randomUUID().toString();
+                requestId = randomRequestId();
                 msg.setRequestId(requestId);
             }
-            byte[] requestIdBytes = requestId.getBytes(StandardCharsets.UTF_8);
-            buf.writeBytes(requestIdBytes);
+            buf.writeCharSequence(requestId, StandardCharsets.UTF_8);
             
-            // 7. 正文长度 4字节
-            byte[] bytes = JsonUtil.toJson(msg).getBytes(StandardCharsets.UTF_8);
-            buf.writeInt(bytes.length);
+            // 7. 正文长度 4字节，先占位，写完正文后回填
+            int lengthIndex = buf.writerIndex();
+            buf.writeInt(0);
             
             // 8. 消息正文
-            buf.writeBytes(bytes);
+            serializer.serialize(msg, buf);
+            int bodyLength = buf.writerIndex() - lengthIndex - 4;
+            buf.setInt(lengthIndex, bodyLength);
+            bodySizeHints[typeIndex] = bodyLength + (bodyLength >> 3);
             
-            out.add(buf);
+            return buf;
         } catch (Exception e) {
             buf.release();
             throw e;
         }
     }
     
+    /**
+     * 生成 version 4 格式的 UUID 字符串，使用 ThreadLocalRandom 代替 UUID.randomUUID() 的 SecureRandom
+     */
+    private static String randomRequestId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+        long lsb = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+        return new UUID(msb, lsb).toString();
+    }
+    
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        ProtocolMessage decodedMessage = decode(in);
+        if (decodedMessage != null) {
+            out.add(decodedMessage);
+        }
+    }
+    
+    /**
+     * 在管道之外解码一条完整消息，供 WebSocket 二进制帧这类自带分帧的传输使用
+     * @return 解码出的消息，数据不完整时返回 null 且不移动读取索引
+     */
+    public ProtocolMessage decode(ByteBuf in) throws Exception {
         // 保存读取索引，以便需要时重置
         in.markReaderIndex();
         
         // 确保有足够的字节可读
-        if (in.readableBytes() < 49) { // 4 + 1 + 1 + 1 + 2 + 36 + 4
-            return;
+        if (in.readableBytes() < HEADER_LENGTH) {
+            return null;
         }
         
         // 1. 魔数 4字节
@@ -83,9 +147,10 @@ public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage
             throw new DecoderException("Version not supported: " + version);
         }
         
-        // 3. 序列化方式 1字节 (暂时只支持JSON)
+        // 3. 序列化方式 1字节
         byte serializerType = in.readByte();
-        if (serializerType != SerializerType.JSON.ordinal()) {
+        Serializer serializer = serializerOf(serializerType);
+        if (serializer == null) {
             in.resetReaderIndex();
             throw new DecoderException("Unsupported serializer type: " + serializerType);
         }
@@ -102,79 +167,17 @@ public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage
         short statusCode = in.readShort();
         
         // 6. 请求ID 36字节
-        byte[] requestIdBytes = new byte[36];
-        in.readBytes(requestIdBytes);
-        String requestId = new String(requestIdBytes, StandardCharsets.UTF_8);
+        String requestId = in.readCharSequence(REQUEST_ID_LENGTH, StandardCharsets.UTF_8).toString();
         
         // 7. 正文长度 4字节
         int length = in.readInt();
         if (in.readableBytes() < length) {
             in.resetReaderIndex();
-            return;
+            return null;
         }
         
-        // 8. 消息正文
-        byte[] bytes = new byte[length];
-        in.readBytes(bytes);
-        
-        // 反序列化消息
-        String json = new String(bytes, StandardCharsets.UTF_8);
-        ProtocolMessage decodedMessage = null;
-        
-        // 根据消息类型选择对应的类
-        switch (messageType) {
-            case CHAT_REQUEST:
-                decodedMessage = JsonUtil.fromJson(json, ChatRequest.class);
-                break;
-            case CHAT_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, ChatResponse.class);
-                break;
-            case LOGIN_REQUEST:
-                decodedMessage = JsonUtil.fromJson(json, LoginRequest.class);
-                break;
-            case LOGIN_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, LoginResponse.class);
-                break;
-            case LOGOUT_REQUEST:
-                decodedMessage = JsonUtil.fromJson(json, LogoutRequest.class);
-                break;
-            case LOGOUT_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, LogoutResponse.class);
-                break;
-            case ROOM_REQUEST:
-            case ROOM_CREATE:
-            case ROOM_JOIN:
-            case ROOM_LEAVE:
-            case ROOM_LIST:
-                decodedMessage = JsonUtil.fromJson(json, RoomRequest.class);
-                break;
-            case ROOM_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, RoomResponse.class);
-                break;
-            case HEARTBEAT_REQUEST:
-                decodedMessage = JsonUtil.fromJson(json, HeartbeatRequest.class);
-                break;
-            case HEARTBEAT_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, HeartbeatResponse.class);
-                break;
-            case MESSAGE_HISTORY_REQUEST:
-                decodedMessage = JsonUtil.fromJson(json, MessageHistoryRequest.class);
-                break;
-            case MESSAGE_HISTORY_RESPONSE:
-                decodedMessage = JsonUtil.fromJson(json, MessageHistoryResponse.class);
-                break;
-            case ERROR:
-                decodedMessage = JsonUtil.fromJson(json, ErrorMessage.class);
-                break;
-            case SYSTEM:
-                decodedMessage = JsonUtil.fromJson(json, SystemMessage.class);
-                break;
-            case NOTIFICATION:
-                decodedMessage = JsonUtil.fromJson(json, NotificationMessage.class);
-                break;
-            default:
-                throw new DecoderException("Unsupported message type: " + messageType);
-        }
+        // 8. 消息正文，按消息头中的序列化方式解析
+        ProtocolMessage decodedMessage = serializer.deserialize(messageType, in.readSlice(length));
         
         if (decodedMessage == null) {
             throw new DecoderException("Failed to decode message");
@@ -185,21 +188,6 @@ public class MessageCodec extends MessageToMessageCodec<ByteBuf, ProtocolMessage
         decodedMessage.setStatusCode(statusCode);
         decodedMessage.setRequestId(requestId);
         
-        out.add(decodedMessage);
+        return decodedMessage;
     }
 }
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
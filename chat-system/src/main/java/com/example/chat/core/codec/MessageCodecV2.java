@@ -0,0 +1,172 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.chat.util.VarIntUtil.*;
+
+/**
+ * v2 协议编解码器
+ * 连接建立时客户端先发送一次 5 字节前导（魔数 + 版本号2），之后每帧格式为：
+ * <pre>
+ * varint 帧长度 | 消息类型 1字节 | 标志 1字节 | zigzag varint 状态码 | 请求ID | 正文
+ * </pre>
+ * 标志低4位为序列化方式，FLAG_STRING_REQUEST_ID 置位时请求ID为长度前缀字符串，否则为 varint。
+ * 请求ID缺失时由本连接的计数器生成，心跳、确认这类空正文消息编码后只有几个字节。
+ * 解码端需要配合 {@link VarIntFrameDecoder}，它负责去掉帧长度前缀。
+ */
+public class MessageCodecV2 extends MessageToMessageCodec<ByteBuf, ProtocolMessage> {
+    static final byte VERSION = 2;
+    static final int PREAMBLE_LENGTH = 5;
+    private static final int SERIALIZER_MASK = 0x0F;
+    private static final int FLAG_STRING_REQUEST_ID = 0x10;
+    // 帧长度前缀最多5字节，先预留再从后往前回填，避免拷贝正文
+    private static final int LENGTH_RESERVE = 5;
+    private static final int INITIAL_BODY_HINT = 64;
+
+    private final Serializer serializer;
+    private final int[] bodySizeHints = new int[MessageType.values().length];
+    private long nextRequestId = 1;
+
+    public MessageCodecV2() {
+        this(SerializerType.BINARY);
+    }
+
+    public MessageCodecV2(SerializerType serializerType) {
+        this.serializer = MessageCodec.serializerOf(serializerType.getCode());
+        Arrays.fill(bodySizeHints, INITIAL_BODY_HINT);
+    }
+
+    /**
+     * 客户端在连接建立后、发送第一条消息之前写出v2前导
+     */
+    public static ChannelFuture writePreamble(Channel channel) {
+        ByteBuf preamble = channel.alloc().buffer(PREAMBLE_LENGTH);
+        preamble.writeInt(MessageCodec.MAGIC_NUMBER);
+        preamble.writeByte(VERSION);
+        return channel.writeAndFlush(preamble);
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ProtocolMessage msg, List<Object> out) throws Exception {
+        out.add(encode(ctx.alloc(), msg));
+    }
+
+    /**
+     * 在管道之外编码一条消息，供房间扇出预先编码一次后共享给所有成员
+     * 请求ID为空时会使用本实例的计数器，跨线程共用实例时调用方应预先设置请求ID
+     */
+    public ByteBuf encode(ByteBufAllocator alloc, ProtocolMessage msg) throws Exception {
+        int typeIndex = msg.getType().ordinal();
+        ByteBuf buf = alloc.ioBuffer(LENGTH_RESERVE + 16 + bodySizeHints[typeIndex]);
+        try {
+            buf.writerIndex(LENGTH_RESERVE);
+
+            // 1. 消息类型 1字节
+            buf.writeByte(typeIndex);
+
+            // 2. 标志 1字节 + 3. 状态码
+            String requestId = msg.getRequestId();
+            if (requestId == null) {
+                requestId = Long.toString(nextRequestId++);
+                msg.setRequestId(requestId);
+            }
+            long numericId = parseRequestId(requestId);
+            int flags = serializer.getType().getCode();
+            if (numericId < 0) {
+                flags |= FLAG_STRING_REQUEST_ID;
+            }
+            buf.writeByte(flags);
+            writeSignedVarInt(buf, msg.getStatusCode());
+
+            // 4. 请求ID
+            if (numericId < 0) {
+                writeString(buf, requestId);
+            } else {
+                writeVarLong(buf, numericId);
+            }
+
+            // 5. 正文
+            int bodyStart = buf.writerIndex();
+            serializer.serialize(msg, buf);
+            int bodyLength = buf.writerIndex() - bodyStart;
+            bodySizeHints[typeIndex] = bodyLength + (bodyLength >> 3);
+
+            // 回填帧长度
+            int frameLength = buf.writerIndex() - LENGTH_RESERVE;
+            int frameStart = LENGTH_RESERVE - varIntSize(frameLength);
+            int end = buf.writerIndex();
+            buf.writerIndex(frameStart);
+            writeVarInt(buf, frameLength);
+            buf.setIndex(frameStart, end);
+
+            return buf;
+        } catch (Exception e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        byte messageTypeCode = in.readByte();
+        MessageType messageType = MessageType.fromCode(messageTypeCode);
+        if (messageType == null) {
+            throw new DecoderException("Unknown message type: " + messageTypeCode);
+        }
+
+        int flags = in.readUnsignedByte();
+        Serializer serializer = MessageCodec.serializerOf((byte) (flags & SERIALIZER_MASK));
+        if (serializer == null) {
+            throw new DecoderException("Unsupported serializer type: " + (flags & SERIALIZER_MASK));
+        }
+        short statusCode = (short) readSignedVarInt(in);
+
+        String requestId;
+        if ((flags & FLAG_STRING_REQUEST_ID) != 0) {
+            requestId = readString(in);
+        } else {
+            requestId = Long.toString(readVarLong(in));
+        }
+
+        ProtocolMessage decodedMessage = serializer.deserialize(messageType, in);
+        if (decodedMessage == null) {
+            throw new DecoderException("Failed to decode message");
+        }
+
+        decodedMessage.setType(messageType);
+        decodedMessage.setStatusCode(statusCode);
+        decodedMessage.setRequestId(requestId);
+        out.add(decodedMessage);
+    }
+
+    /**
+     * 纯数字且无前导零的请求ID按 varint 编码，其他格式（如v1的UUID）按字符串编码
+     * @return 数值形式的请求ID，无法按数值编码时返回-1
+     */
+    static long parseRequestId(String requestId) {
+        int length = requestId.length();
+        if (length == 0 || length > 18 || (length > 1 && requestId.charAt(0) == '0')) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = requestId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
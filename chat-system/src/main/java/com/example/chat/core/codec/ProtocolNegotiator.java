@@ -0,0 +1,88 @@
+package com.example.chat.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * 协议版本协商
+ * 根据连接上的前5个字节（魔数 + 版本号）安装对应的帧解码器和编解码器，然后把自己从管道中移除：
+ * v1 客户端直接发送完整的v1消息，前5字节就是第一条消息的开头，不消费；
+ * v2 客户端先发送单独的前导，消费掉前导后切换到 varint 分帧。
+ * 同一个服务端因此可以同时接入v1和v2客户端。
+ */
+@Slf4j
+public class ProtocolNegotiator extends ByteToMessageDecoder {
+
+    public static final String FRAME_DECODER_NAME = "frameDecoder";
+    public static final String CODEC_NAME = "messageCodec";
+    private static final AttributeKey<Byte> VERSION_KEY = AttributeKey.valueOf("protocolVersion");
+
+    private final int maxFrameLength;
+    private final SerializerType v1Serializer;
+    private final SerializerType v2Serializer;
+
+    public ProtocolNegotiator(int maxFrameLength) {
+        this(maxFrameLength, SerializerType.JSON, SerializerType.BINARY);
+    }
+
+    /**
+     * @param v1Serializer v1连接上编码响应使用的序列化方式
+     * @param v2Serializer v2连接上编码响应使用的序列化方式
+     */
+    public ProtocolNegotiator(int maxFrameLength, SerializerType v1Serializer, SerializerType v2Serializer) {
+        this.maxFrameLength = maxFrameLength;
+        this.v1Serializer = v1Serializer;
+        this.v2Serializer = v2Serializer;
+    }
+
+    /**
+     * 连接协商出的协议版本，尚未协商时返回0
+     */
+    public static int versionOf(Channel channel) {
+        Byte version = channel.attr(VERSION_KEY).get();
+        return version != null ? version : 0;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < MessageCodecV2.PREAMBLE_LENGTH) {
+            return;
+        }
+
+        int start = in.readerIndex();
+        int magic = in.getInt(start);
+        if (magic != MessageCodec.MAGIC_NUMBER) {
+            in.skipBytes(in.readableBytes());
+            throw new DecoderException("Invalid magic number: " + magic);
+        }
+
+        byte version = in.getByte(start + 4);
+        ChannelPipeline pipeline = ctx.pipeline();
+        if (version == MessageCodec.VERSION) {
+            pipeline.addAfter(ctx.name(), FRAME_DECODER_NAME,
+                    new LengthFieldBasedFrameDecoder(maxFrameLength, MessageCodec.LENGTH_FIELD_OFFSET, 4, 0, 0));
+            pipeline.addAfter(FRAME_DECODER_NAME, CODEC_NAME, new MessageCodec(v1Serializer));
+        } else if (version == MessageCodecV2.VERSION) {
+            in.skipBytes(MessageCodecV2.PREAMBLE_LENGTH);
+            pipeline.addAfter(ctx.name(), FRAME_DECODER_NAME, new VarIntFrameDecoder(maxFrameLength));
+            pipeline.addAfter(FRAME_DECODER_NAME, CODEC_NAME, new MessageCodecV2(v2Serializer));
+        } else {
+            in.skipBytes(in.readableBytes());
+            throw new DecoderException("Version not supported: " + version);
+        }
+
+        ctx.channel().attr(VERSION_KEY).set(version);
+        log.debug("Negotiated protocol v{} for {}", version, ctx.channel().remoteAddress());
+        // 移除时剩余的字节会交给新安装的帧解码器
+        pipeline.remove(this);
+    }
+}
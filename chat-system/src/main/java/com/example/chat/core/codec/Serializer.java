@@ -0,0 +1,24 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 消息正文序列化器
+ * 只负责正文部分，消息类型、状态码和请求ID由 MessageCodec 写在消息头中。
+ */
+public interface Serializer {
+
+    SerializerType getType();
+
+    /**
+     * 将消息正文写入 out
+     */
+    void serialize(ProtocolMessage msg, ByteBuf out) throws Exception;
+
+    /**
+     * 从 in 中读取一条完整的消息正文（in 只包含正文字节）
+     */
+    ProtocolMessage deserialize(MessageType type, ByteBuf in) throws Exception;
+}
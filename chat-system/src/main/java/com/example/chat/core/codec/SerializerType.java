@@ -1,7 +1,7 @@
 package com.example.chat.core.codec;
 
 /**
- * 序列化类型枚举
+ * 序列化类型枚举，ordinal 即消息头中的序列化方式字节，只能在末尾追加
  */
 public enum SerializerType {
     /**
@@ -10,11 +10,18 @@ public enum SerializerType {
     JSON,
     
     /**
-     * Protobuf序列化
+     * 紧凑二进制序列化（原 Protobuf 预留位）
      */
-    PROTOBUF
-}
-
-
+    BINARY;
 
+    public byte getCode() {
+        return (byte) ordinal();
+    }
 
+    public static SerializerType fromCode(byte code) {
+        if (code >= 0 && code < values().length) {
+            return values()[code];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.chat.core.codec;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.List;
+
+/**
+ * 以 varint 长度为前缀的帧解码器，输出去掉长度前缀的帧内容
+ */
+public class VarIntFrameDecoder extends ByteToMessageDecoder {
+
+    private final int maxFrameLength;
+
+    public VarIntFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int start = in.readerIndex();
+        int length = 0;
+        int shift = 0;
+        int index = start;
+        while (true) {
+            if (index == in.writerIndex()) {
+                // 长度前缀还没收全
+                return;
+            }
+            byte b = in.getByte(index++);
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                break;
+            }
+            shift += 7;
+            if (shift >= 35) {
+                throw new CorruptedFrameException("Malformed frame length");
+            }
+        }
+
+        if (length < 0 || length > maxFrameLength) {
+            in.skipBytes(in.readableBytes());
+            throw new TooLongFrameException("Frame length " + length + " exceeds " + maxFrameLength);
+        }
+        if (in.writerIndex() - index < length) {
+            return;
+        }
+
+        in.readerIndex(index);
+        out.add(in.readRetainedSlice(length));
+    }
+}
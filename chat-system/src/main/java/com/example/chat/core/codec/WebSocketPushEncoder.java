@@ -0,0 +1,72 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.core.handler.WebSocketEncoding;
+import com.example.chat.core.handler.WebSocketReplies;
+import com.example.chat.core.server.ChatPush;
+import com.example.chat.util.ChannelUtil;
+import com.example.chat.util.JsonUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 按连接握手时协商的编码（见 {@link WebSocketEncoding}）把 {@link ChatPush} 编码为 WebSocket 帧
+ * 文本连接：单条推送为 {@link WebSocketReplies.MessagePush}，批量推送为 {"type":"batch","roomId":..,"messages":[..]}。
+ * 二进制连接：每帧一条 MessageCodec 格式的推送，批量推送拆成多帧。
+ * 编码结果缓存在推送对象上，同一房间同一编码的成员共享同一份字节。需放在背压处理器和业务处理器之间。
+ */
+@ChannelHandler.Sharable
+public class WebSocketPushEncoder extends MessageToMessageEncoder<ChatPush> {
+
+    public static final String FORMAT = "websocket";
+    public static final WebSocketPushEncoder INSTANCE = new WebSocketPushEncoder();
+    // 二进制连接的推送与二进制帧请求使用相同的格式
+    private static final BinaryPushEncoder BINARY = new BinaryPushEncoder(SerializerType.BINARY, SerializerType.BINARY);
+
+    private WebSocketPushEncoder() {
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ChatPush push, List<Object> out) {
+        if (ChannelUtil.getEncoding(ctx.channel()) == WebSocketEncoding.BINARY) {
+            for (ChatPush item : push.isBatch() ? push.getBatch() : List.of(push)) {
+                out.add(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(BINARY.encode(item, 1))));
+            }
+            return;
+        }
+        byte[] json = push.encode(FORMAT, WebSocketPushEncoder::toJson);
+        out.add(new TextWebSocketFrame(Unpooled.wrappedBuffer(json)));
+    }
+
+    private static byte[] toJson(ChatPush push) {
+        try {
+            if (!push.isBatch()) {
+                return WebSocketReplies.toJson(WebSocketReplies.MessagePush.of(push.getMessage()))
+                        .getBytes(StandardCharsets.UTF_8);
+            }
+
+            StringBuilder json = new StringBuilder("{\"type\":\"batch\",\"roomId\":")
+                    .append(JsonUtil.getObjectMapper().writeValueAsString(push.getRoomId()))
+                    .append(",\"messages\":[");
+            List<ChatPush> batch = push.getBatch();
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(new String(batch.get(i).encode(FORMAT, WebSocketPushEncoder::toJson),
+                        StandardCharsets.UTF_8));
+            }
+            return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new EncoderException("Failed to encode push for room " + push.getRoomId(), e);
+        }
+    }
+}
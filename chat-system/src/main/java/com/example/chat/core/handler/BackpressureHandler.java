@@ -0,0 +1,190 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.util.ChatMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+/**
+ * 慢消费者背压处理器
+ * 连接超过写缓冲高水位（Channel 不可写）后，WebSocket 帧和二进制协议消息进入有界的待发送队列，
+ * 回到低水位后按顺序写出；队列溢出时按 {@link OverflowPolicy} 丢弃消息或断开连接。
+ * 每个连接一个实例，所有方法都在连接的 EventLoop 上执行。
+ */
+@Slf4j
+public class BackpressureHandler extends ChannelDuplexHandler {
+
+    public static final String NAME = "backpressure";
+
+    private final String metricPrefix;
+    private final int maxPendingMessages;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<PendingWrite> pending = new ArrayDeque<>();
+    private boolean unwritable;
+
+    /**
+     * @param metricPrefix 指标前缀，如 websocket、socketio
+     */
+    public BackpressureHandler(String metricPrefix, int maxPendingMessages, OverflowPolicy policy) {
+        this.metricPrefix = metricPrefix;
+        this.maxPendingMessages = maxPendingMessages;
+        this.policy = policy;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        // 只缓冲 WebSocket 帧和二进制协议消息，HTTP 握手响应等其他消息直接放行
+        if (!isBufferable(msg) || (pending.isEmpty() && ctx.channel().isWritable())) {
+            ctx.write(msg, promise);
+            return;
+        }
+
+        pending.addLast(new PendingWrite(msg, promise));
+        if (pending.size() > maxPendingMessages) {
+            onOverflow(ctx);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            setUnwritable(false);
+            drain(ctx);
+        } else {
+            setUnwritable(true);
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        setUnwritable(false);
+        releaseAll(new IllegalStateException("Channel closed before message was sent"));
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    private void drain(ChannelHandlerContext ctx) {
+        boolean written = false;
+        while (!pending.isEmpty() && ctx.channel().isWritable()) {
+            PendingWrite write = pending.pollFirst();
+            ctx.write(write.msg, write.promise);
+            written = true;
+        }
+        if (written) {
+            ctx.flush();
+        }
+    }
+
+    private void onOverflow(ChannelHandlerContext ctx) {
+        ChatMetrics.counter(metricPrefix + ".backpressure.overflow").inc();
+        switch (policy) {
+            case DROP_OLDEST:
+                if (dropFirst(BackpressureHandler::isCompleteFrame)) {
+                    return;
+                }
+                break;
+            case DROP_NON_CRITICAL:
+                if (dropFirst(BackpressureHandler::isNonCritical)) {
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+
+        log.warn("Slow consumer {} exceeded {} pending messages, disconnecting", ctx.channel().remoteAddress(),
+                maxPendingMessages);
+        ChatMetrics.counter(metricPrefix + ".backpressure.disconnected").inc();
+        releaseAll(new IllegalStateException("Slow consumer disconnected"));
+        ctx.close();
+    }
+
+    private boolean dropFirst(Predicate<Object> droppable) {
+        Iterator<PendingWrite> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            PendingWrite write = iterator.next();
+            if (droppable.test(write.msg)) {
+                iterator.remove();
+                write.fail(new IllegalStateException("Message dropped for slow consumer"));
+                ChatMetrics.counter(metricPrefix + ".backpressure.dropped").inc();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void releaseAll(Throwable cause) {
+        PendingWrite write;
+        while ((write = pending.pollFirst()) != null) {
+            write.fail(cause);
+        }
+    }
+
+    private void setUnwritable(boolean value) {
+        if (unwritable == value) {
+            return;
+        }
+        unwritable = value;
+        if (value) {
+            ChatMetrics.counter(metricPrefix + ".backpressure.unwritable").inc();
+        } else {
+            ChatMetrics.counter(metricPrefix + ".backpressure.unwritable").dec();
+        }
+    }
+
+    private static boolean isBufferable(Object msg) {
+        return msg instanceof WebSocketFrame || msg instanceof ProtocolMessage || msg instanceof ByteBuf;
+    }
+
+    /**
+     * 完整的数据帧或控制帧才能丢弃，分片消息中的某一片丢掉会破坏帧序列。
+     * 二进制协议的 ProtocolMessage 和预编码的 ByteBuf 都是完整的一帧
+     */
+    private static boolean isCompleteFrame(Object msg) {
+        if (msg instanceof ProtocolMessage || msg instanceof ByteBuf) {
+            return true;
+        }
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            return ((WebSocketFrame) msg).isFinalFragment();
+        }
+        return msg instanceof PingWebSocketFrame || msg instanceof PongWebSocketFrame;
+    }
+
+    private static boolean isNonCritical(Object msg) {
+        if (msg instanceof NonCriticalTextFrame) {
+            return ((WebSocketFrame) msg).isFinalFragment();
+        }
+        return msg instanceof PingWebSocketFrame || msg instanceof PongWebSocketFrame;
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+
+        private void fail(Throwable cause) {
+            ReferenceCountUtil.release(msg);
+            promise.tryFailure(cause);
+        }
+    }
+}
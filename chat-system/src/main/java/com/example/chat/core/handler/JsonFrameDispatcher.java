@@ -0,0 +1,98 @@
+package com.example.chat.core.handler;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JSON 文本帧的类型分发器
+ * 用流式 JsonParser 读取开头的 "type" 字段，其余字段由预先创建的 ObjectReader 直接绑定到请求记录类，
+ * 不再经过 Map&lt;String,Object&gt; 中转。"type" 不是第一个字段时退回到树模型解析。
+ * 路由表在构造阶段注册完成后只读，可以被多个连接共享。
+ *
+ * @param <C> 处理器上下文类型，通常是持有连接状态的业务处理器
+ */
+public class JsonFrameDispatcher<C> {
+
+    /**
+     * 类型处理函数
+     */
+    @FunctionalInterface
+    public interface Handler<C, T> {
+        void handle(C context, ChannelHandlerContext ctx, T request) throws Exception;
+    }
+
+    private static final String TYPE_FIELD = "type";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Route<C, ?>> routes = new HashMap<>();
+
+    public JsonFrameDispatcher(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 注册一个消息类型
+     */
+    public <T> JsonFrameDispatcher<C> on(String type, Class<T> requestType, Handler<C, T> handler) {
+        ObjectReader reader = objectMapper.readerFor(requestType)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        routes.put(type, new Route<>(reader, handler));
+        return this;
+    }
+
+    /**
+     * 解析并分发一个文本帧
+     * @return 分发到的消息类型；未注册的类型返回 null 且不调用任何处理函数
+     */
+    public String dispatch(C context, ChannelHandlerContext ctx, String text) throws Exception {
+        try (JsonParser parser = objectMapper.getFactory().createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected JSON object");
+            }
+            if (parser.nextToken() != JsonToken.FIELD_NAME || !TYPE_FIELD.equals(parser.currentName())) {
+                return dispatchTree(context, ctx, text);
+            }
+
+            String type = parser.nextTextValue();
+            Route<C, ?> route = type != null ? routes.get(type) : null;
+            if (route == null) {
+                return null;
+            }
+            // 停在下一个字段名上，ObjectReader 从这里继续绑定剩余字段
+            JsonToken next = parser.nextToken();
+            Object request = next == JsonToken.END_OBJECT
+                    ? route.reader.readValue("{}")
+                    : route.reader.readValue(parser);
+            route.invoke(context, ctx, request);
+            return type;
+        }
+    }
+
+    private String dispatchTree(C context, ChannelHandlerContext ctx, String text) throws Exception {
+        JsonNode tree = objectMapper.readTree(text);
+        String type = tree.path(TYPE_FIELD).textValue();
+        Route<C, ?> route = type != null ? routes.get(type) : null;
+        if (route == null) {
+            return null;
+        }
+        route.invoke(context, ctx, route.reader.readValue(tree));
+        return type;
+    }
+
+    private record Route<C, T>(ObjectReader reader, Handler<C, T> handler) {
+
+        @SuppressWarnings("unchecked")
+        void invoke(C context, ChannelHandlerContext ctx, Object request) throws Exception {
+            handler.handle(context, ctx, (T) request);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.chat.core.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 把 Socket.IO 框架写出的非关键事件帧（如 userStatus）换成 {@link NonCriticalTextFrame}，
+ * 使 DROP_NON_CRITICAL 策略可以丢弃它们。框架为每个包创建普通的 TextWebSocketFrame，
+ * 这里按帧开头的事件包前缀 42["事件名" 识别，只比较前缀字节，不解码整个帧。
+ * 需要放在 BackpressureHandler 之后（更靠近 pipeline 尾部），出站时先于它执行。
+ */
+@ChannelHandler.Sharable
+public class NonCriticalEventMarker extends ChannelOutboundHandlerAdapter {
+
+    public static final String NAME = "nonCriticalEventMarker";
+
+    private final byte[][] prefixes;
+
+    public NonCriticalEventMarker(String... events) {
+        this.prefixes = Arrays.stream(events)
+                .map(event -> ("42[\"" + event + "\"").getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof TextWebSocketFrame && !(msg instanceof NonCriticalTextFrame)) {
+            TextWebSocketFrame frame = (TextWebSocketFrame) msg;
+            if (frame.isFinalFragment() && isNonCritical(frame.content())) {
+                // 新帧接管原帧的内容，引用计数不变
+                msg = new NonCriticalTextFrame(true, frame.rsv(), frame.content());
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    private boolean isNonCritical(ByteBuf content) {
+        for (byte[] prefix : prefixes) {
+            if (startsWith(content, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(ByteBuf content, byte[] prefix) {
+        if (content.readableBytes() < prefix.length) {
+            return false;
+        }
+        int start = content.readerIndex();
+        for (int i = 0; i < prefix.length; i++) {
+            if (content.getByte(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.chat.core.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+/**
+ * 非关键文本帧（如在线状态变更），连接积压时可以按 DROP_NON_CRITICAL 策略丢弃。
+ * 重写 replace 使 ChannelGroup 广播时复制出的帧仍保留该类型。
+ */
+public class NonCriticalTextFrame extends TextWebSocketFrame {
+
+    public NonCriticalTextFrame(String text) {
+        super(text);
+    }
+
+    public NonCriticalTextFrame(boolean finalFragment, int rsv, ByteBuf binaryData) {
+        super(finalFragment, rsv, binaryData);
+    }
+
+    @Override
+    public TextWebSocketFrame replace(ByteBuf content) {
+        return new NonCriticalTextFrame(isFinalFragment(), rsv(), content);
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.chat.core.handler;
+
+/**
+ * 慢消费者的待发送队列溢出时的处理策略
+ */
+public enum OverflowPolicy {
+    /**
+     * 丢弃最早排队的完整消息
+     */
+    DROP_OLDEST,
+    /**
+     * 只丢弃非关键事件（在线状态、心跳等），没有可丢弃的事件时断开连接
+     */
+    DROP_NON_CRITICAL,
+    /**
+     * 直接断开连接
+     */
+    DISCONNECT
+}
@@ -0,0 +1,206 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.util.ChatMetrics;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import io.netty.util.AttributeKey;
+
+/**
+ * WebSocket permessage-deflate 压缩
+ * 握手时与客户端协商 permessage-deflate，负载小于阈值的完整帧跳过压缩；
+ * 压缩编码器前后各放一个统计处理器，分别记录压缩前后的负载字节数，得到每个连接的压缩率。
+ * 安装后管道顺序（从头到尾）为：压缩后统计 → 扩展握手（握手完成后替换为压缩编解码器）→ 压缩前统计。
+ */
+public final class WebSocketCompression {
+
+    public static final String EXTENSION_NAME = "wsCompression";
+    public static final String RAW_STATS_NAME = "wsCompressionRaw";
+    public static final String WIRE_STATS_NAME = "wsCompressionWire";
+    private static final AttributeKey<Stats> STATS_KEY = AttributeKey.valueOf("compressionStats");
+    // permessage-deflate 使用 RSV1 标记压缩过的消息
+    private static final int RSV1 = 0x04;
+
+    private WebSocketCompression() {
+        // 私有构造函数，防止实例化
+    }
+
+    /**
+     * 在管道末尾安装压缩处理器，应位于 WebSocketServerProtocolHandler 之前
+     * @param metricPrefix 指标前缀，如 websocket、socketio
+     */
+    public static void addLast(ChannelPipeline pipeline, ChatConfig.Compression config, String metricPrefix) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Stats stats = newStats(pipeline.channel(), metricPrefix);
+        pipeline.addLast(WIRE_STATS_NAME, stats.wireRecorder());
+        pipeline.addLast(EXTENSION_NAME, newExtensionHandler(config));
+        pipeline.addLast(RAW_STATS_NAME, stats.rawRecorder());
+    }
+
+    /**
+     * 在指定处理器之前安装压缩处理器，用于 Socket.IO 这类由框架组装的管道
+     */
+    public static void addBefore(ChannelPipeline pipeline, String baseName, ChatConfig.Compression config,
+                                 String metricPrefix) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        Stats stats = newStats(pipeline.channel(), metricPrefix);
+        pipeline.addBefore(baseName, WIRE_STATS_NAME, stats.wireRecorder());
+        pipeline.addBefore(baseName, EXTENSION_NAME, newExtensionHandler(config));
+        pipeline.addBefore(baseName, RAW_STATS_NAME, stats.rawRecorder());
+    }
+
+    /**
+     * 连接的压缩统计，未安装压缩时返回 null
+     */
+    public static Stats statsOf(Channel channel) {
+        return channel.attr(STATS_KEY).get();
+    }
+
+    static WebSocketServerExtensionHandler newExtensionHandler(ChatConfig.Compression config) {
+        WebSocketExtensionFilter encoderFilter = minPayloadFilter(config.getMinPayloadSize());
+        WebSocketExtensionFilterProvider filterProvider = new WebSocketExtensionFilterProvider() {
+            @Override
+            public WebSocketExtensionFilter encoderFilter() {
+                return encoderFilter;
+            }
+
+            @Override
+            public WebSocketExtensionFilter decoderFilter() {
+                return WebSocketExtensionFilter.NEVER_SKIP;
+            }
+        };
+        return new WebSocketServerExtensionHandler(new PerMessageDeflateServerExtensionHandshaker(
+                config.getLevel(),
+                true,
+                PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE,
+                config.isAllowServerNoContextTakeover(),
+                config.isRequestClientNoContextTakeover(),
+                filterProvider));
+    }
+
+    /**
+     * 只跳过单帧的小消息：分片消息的后续帧必须和首帧保持一致，不能单独跳过
+     */
+    static WebSocketExtensionFilter minPayloadFilter(int minPayloadSize) {
+        return frame -> frame.isFinalFragment()
+                && !(frame instanceof ContinuationWebSocketFrame)
+                && frame.content().readableBytes() < minPayloadSize;
+    }
+
+    /**
+     * 只统计数据帧，控制帧（ping/pong/close）不参与压缩
+     */
+    private static boolean isDataFrame(Object msg) {
+        return msg instanceof TextWebSocketFrame
+                || msg instanceof BinaryWebSocketFrame
+                || msg instanceof ContinuationWebSocketFrame;
+    }
+
+    private static Stats newStats(Channel channel, String metricPrefix) {
+        Stats stats = new Stats(metricPrefix);
+        channel.attr(STATS_KEY).set(stats);
+        // 连接关闭时记录本连接的整体压缩率
+        channel.closeFuture().addListener(future -> stats.recordRatio());
+        return stats;
+    }
+
+    /**
+     * 单个连接的出站压缩统计，两个记录器都在连接的 EventLoop 上执行
+     */
+    public static class Stats {
+        private final String metricPrefix;
+        private long rawBytes;
+        private long wireBytes;
+        private long compressedFrames;
+        private long skippedFrames;
+
+        Stats(String metricPrefix) {
+            this.metricPrefix = metricPrefix;
+        }
+
+        public long getRawBytes() {
+            return rawBytes;
+        }
+
+        public long getWireBytes() {
+            return wireBytes;
+        }
+
+        public long getCompressedFrames() {
+            return compressedFrames;
+        }
+
+        public long getSkippedFrames() {
+            return skippedFrames;
+        }
+
+        /**
+         * 压缩后字节数占压缩前的比例，没有发送过数据时返回1
+         */
+        public double getRatio() {
+            return rawBytes == 0 ? 1 : (double) wireBytes / rawBytes;
+        }
+
+        void recordRatio() {
+            if (rawBytes > 0) {
+                ChatMetrics.histogram(metricPrefix + ".compression.ratio").update(Math.round(getRatio() * 100));
+            }
+        }
+
+        ChannelHandler rawRecorder() {
+            return new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                    if (isDataFrame(msg)) {
+                        int length = ((WebSocketFrame) msg).content().readableBytes();
+                        rawBytes += length;
+                        ChatMetrics.counter(metricPrefix + ".compression.raw.bytes").inc(length);
+                    }
+                    ctx.write(msg, promise);
+                }
+            };
+        }
+
+        ChannelHandler wireRecorder() {
+            return new ChannelOutboundHandlerAdapter() {
+                @Override
+                public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                    if (isDataFrame(msg)) {
+                        WebSocketFrame frame = (WebSocketFrame) msg;
+                        int length = frame.content().readableBytes();
+                        wireBytes += length;
+                        ChatMetrics.counter(metricPrefix + ".compression.wire.bytes").inc(length);
+                        // 分片消息只在首帧上标记 RSV1，后续帧不单独计数
+                        if (frame instanceof ContinuationWebSocketFrame) {
+                            ctx.write(msg, promise);
+                            return;
+                        }
+                        if ((frame.rsv() & RSV1) != 0) {
+                            compressedFrames++;
+                        } else {
+                            skippedFrames++;
+                            ChatMetrics.counter(metricPrefix + ".compression.skipped").inc();
+                        }
+                    }
+                    ctx.write(msg, promise);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.chat.core.handler;
+
+/**
+ * WebSocket 连接的消息编码方式，握手时通过 Sec-WebSocket-Protocol 子协议协商
+ * 客户端未声明子协议时使用 JSON 文本帧，与旧客户端保持兼容。
+ */
+public enum WebSocketEncoding {
+    /**
+     * JSON 文本帧
+     */
+    TEXT("chat.json"),
+    /**
+     * 二进制帧，每帧承载一条 MessageCodec 格式的完整消息
+     */
+    BINARY("chat.binary");
+
+    /**
+     * 服务端支持的子协议列表，用于 WebSocketServerProtocolHandler
+     */
+    public static final String SUBPROTOCOLS = "chat.json,chat.binary";
+
+    private final String subprotocol;
+
+    WebSocketEncoding(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    /**
+     * 根据握手选中的子协议确定编码方式，未选中时返回 TEXT
+     */
+    public static WebSocketEncoding fromSubprotocol(String subprotocol) {
+        return BINARY.subprotocol.equals(subprotocol) ? BINARY : TEXT;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.User;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * WebSocket 文本协议的响应体
+ * 每种响应是一个记录类，序列化使用按类型预先创建的 ObjectWriter，直接写入帧的 ByteBuf。
+ */
+public final class WebSocketReplies {
+
+    private static final ClassValue<ObjectWriter> WRITERS = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return JsonUtil.getObjectMapper().writerFor(type);
+        }
+    };
+
+    private WebSocketReplies() {
+        // 私有构造函数，防止实例化
+    }
+
+    /**
+     * 序列化为 JSON 字符串，用于需要拼接或缓存的场景
+     */
+    public static String toJson(Object reply) throws IOException {
+        return WRITERS.get(reply.getClass()).writeValueAsString(reply);
+    }
+
+    /**
+     * 直接序列化到文本帧的缓冲区，避免中间 String
+     */
+    public static TextWebSocketFrame toFrame(ByteBufAllocator alloc, Object reply) throws IOException {
+        ByteBuf buf = alloc.buffer();
+        try (ByteBufOutputStream out = new ByteBufOutputStream(buf)) {
+            WRITERS.get(reply.getClass()).writeValue((OutputStream) out, reply);
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        return new TextWebSocketFrame(buf);
+    }
+
+    public record Auth(String type, boolean success, String userId) {
+        public static Auth success(String userId) {
+            return new Auth("auth", true, userId);
+        }
+    }
+
+    public record MessageAck(String type, String messageId, boolean success) {
+        public static MessageAck of(String messageId) {
+            return new MessageAck("messageAck", messageId, true);
+        }
+    }
+
+    /**
+     * 批量发送的确认，results 与请求中的 messages 一一对应；整批被拒绝时 success 为 false 且没有 results
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BatchAck(String type, boolean success, String error, List<BatchResult> results) {
+        public static BatchAck of(List<BatchResult> results) {
+            return new BatchAck("batchAck", true, null, results);
+        }
+
+        public static BatchAck rejected(String error) {
+            return new BatchAck("batchAck", false, error, null);
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record BatchResult(String clientId, String messageId, boolean success, String error) {
+        public static BatchResult accepted(String clientId, String messageId) {
+            return new BatchResult(clientId, messageId, true, null);
+        }
+
+        public static BatchResult failed(String clientId, String error) {
+            return new BatchResult(clientId, null, false, error);
+        }
+    }
+
+    /**
+     * 加入/离开房间的确认，type 为 join 或 leave
+     */
+    public record RoomAck(String type, String roomId, boolean success) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Users(String type, String roomId, List<UserView> users) {
+        public static Users all(List<UserView> users) {
+            return new Users("users", null, users);
+        }
+
+        public static Users ofRoom(String roomId, List<UserView> users) {
+            return new Users("roomUsers", roomId, users);
+        }
+    }
+
+    public record UserView(String id, String username, boolean online, String fullName, String profilePicture) {
+        public static UserView of(User user) {
+            return new UserView(user.getId(), user.getUsername(), user.isOnline(),
+                    user.getFullName(), user.getProfilePicture());
+        }
+    }
+
+    public record Error(String type, int code, String message) {
+        public static Error of(int code, String message) {
+            return new Error("error", code, message);
+        }
+    }
+
+    public record Announcement(String type, String content, long timestamp) {
+        public static Announcement of(String content) {
+            return new Announcement("announcement", content, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 推送给房间成员的聊天消息
+     * userId、roomId、content 与早期版本原样转发的聊天帧同名，只读取这几个字段的旧客户端不受影响
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record MessagePush(String type, String id, String userId, String senderId, String roomId,
+                              String receiverId, String content, long timestamp, String messageType) {
+        public static MessagePush of(ChatMessage message) {
+            return new MessagePush("message", message.getId(), message.getSenderId(), message.getSenderId(),
+                    message.getRoomId(), message.getReceiverId(), message.getContent(), message.getTimestamp(),
+                    message.getType() != null ? message.getType().name().toLowerCase() : null);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.chat.core.handler;
+
+import java.util.List;
+
+/**
+ * WebSocket 文本协议的请求体
+ * 由 {@link JsonFrameDispatcher} 按 type 字段直接绑定，未出现的字段为 null，多余字段忽略。
+ */
+public final class WebSocketRequests {
+
+    private WebSocketRequests() {
+        // 私有构造函数，防止实例化
+    }
+
+    /**
+     * auth：token 认证，userId 为客户端声明的用户ID
+     */
+    public record Auth(String userId, String token) {
+    }
+
+    /**
+     * message：房间消息或私聊消息
+     */
+    public record Chat(String userId, String roomId, String receiverId, String content) {
+    }
+
+    /**
+     * messages：批量发送，一次携带多条消息
+     */
+    public record ChatBatch(String userId, List<BatchItem> messages) {
+    }
+
+    /**
+     * 批量发送中的一条消息，clientId 由客户端生成，原样带回确认中用于对应
+     */
+    public record BatchItem(String clientId, String roomId, String receiverId, String content) {
+    }
+
+    /**
+     * join / leave / getRoomUsers 等只携带房间ID的请求
+     */
+    public record Room(String userId, String roomId) {
+    }
+
+    /**
+     * getUsers 等不带参数的请求
+     */
+    public record Empty() {
+    }
+}
@@ -1,21 +1,52 @@
 package com.example.chat.core.handler;
 
+import com.example.chat.core.codec.MessageCodec;
+import com.example.chat.core.codec.SerializerType;
+import com.example.chat.core.server.ChatSession;
+import com.example.chat.core.server.EventLoopAffinity;
+import com.example.chat.core.server.SessionHub;
 import com.example.chat.model.ChatMessage;
+import com.example.chat.model.ChatRoom;
 import com.example.chat.model.User;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.request.LoginRequest;
+import com.example.chat.protocol.request.RoomRequest;
+import com.example.chat.protocol.response.ChatResponse;
+import com.example.chat.protocol.response.ErrorMessage;
+import com.example.chat.protocol.response.HeartbeatResponse;
+import com.example.chat.protocol.response.LoginResponse;
+import com.example.chat.protocol.response.NotificationMessage;
+import com.example.chat.protocol.response.RoomResponse;
+import com.example.chat.protocol.response.StatusCode;
 import com.example.chat.service.MessageService;
 import com.example.chat.service.RoomService;
 import com.example.chat.service.UserService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.chat.util.ChannelUtil;
+import com.example.chat.util.JsonUtil;
+import com.example.chat.util.MessageBroadcaster;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * WebSocket 业务处理器
+ * 文本帧承载 JSON 消息；二进制帧承载 MessageCodec 格式的消息，登录请求的 password 字段传 token。
+ * 连接的编码方式在握手时按子协议确定（见 {@link WebSocketEncoding}），所有响应都按该编码写出，
+ * 房间和私聊推送由管道中的 WebSocketPushEncoder 按同一编码写出。
+ * 会话和房间分组登记在所有传输层共用的 {@link SessionHub}。
+ */
 @Slf4j
 @RequiredArgsConstructor
 public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
@@ -23,95 +54,182 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
     private final UserService userService;
     private final RoomService roomService;
     private final MessageService messageService;
-    private final ObjectMapper objectMapper;
-    private final Map<String, ChannelHandlerContext> userChannels;
+    private final SessionHub sessionHub;
+    // 为null时认证后不迁移会话的 EventLoop
+    private final EventLoopAffinity affinity;
+    private final int maxSendBatchSize;
+    
+    // 文本帧按 type 分发到类型化的请求，路由表所有连接共享
+    private static final JsonFrameDispatcher<WebSocketServerHandler> DISPATCHER =
+            new JsonFrameDispatcher<WebSocketServerHandler>(JsonUtil.getObjectMapper())
+                    .on("auth", WebSocketRequests.Auth.class,
+                            (h, ctx, r) -> h.handleAuth(ctx, null, r.token()))
+                    .on("message", WebSocketRequests.Chat.class,
+                            (h, ctx, r) -> h.handleChatMessage(ctx, null, r.content(), r.roomId(), r.receiverId()))
+                    .on("messages", WebSocketRequests.ChatBatch.class,
+                            (h, ctx, r) -> h.handleChatMessages(ctx, r.messages()))
+                    .on("join", WebSocketRequests.Room.class,
+                            (h, ctx, r) -> h.handleJoinRoom(ctx, null, r.roomId()))
+                    .on("leave", WebSocketRequests.Room.class,
+                            (h, ctx, r) -> h.handleLeaveRoom(ctx, null, r.roomId()))
+                    .on("getUsers", WebSocketRequests.Empty.class,
+                            (h, ctx, r) -> h.handleGetUsers(ctx))
+                    .on("getRoomUsers", WebSocketRequests.Room.class,
+                            (h, ctx, r) -> h.handleGetRoomUsers(ctx, r.roomId()));
+    
+    // 二进制帧的编解码器，编码时会更新正文大小提示，每个连接一个实例
+    private final MessageCodec binaryCodec = new MessageCodec(SerializerType.BINARY);
     
     private String userId;
+    // 认证通过后置位，迁移 EventLoop 期间 userId 尚未设置，也不能再次认证
+    private boolean authenticated;
+    private WebSocketEncoding encoding = WebSocketEncoding.TEXT;
     
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
         if (frame instanceof TextWebSocketFrame) {
             String text = ((TextWebSocketFrame) frame).text();
             handleTextMessage(ctx, text);
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            handleBinaryMessage(ctx, frame.content());
         } else {
             log.warn("Unsupported frame type: {}", frame.getClass().getName());
         }
     }
     
-    @SuppressWarnings("unchecked")
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
+            String subprotocol = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol();
+            encoding = WebSocketEncoding.fromSubprotocol(subprotocol);
+            ChannelUtil.setEncoding(ctx.channel(), encoding);
+            log.debug("WebSocket handshake complete, encoding: {}", encoding);
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+    
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        // 只注销本连接自己的会话，同一用户的其他连接不受影响
+        if (userId != null) {
+            sessionHub.unregister(userId, new ChatSession.ChannelSession(ctx.channel()));
+        }
+        MessageBroadcaster.removeChannel(ctx.channel());
+    }
+    
     private void handleTextMessage(ChannelHandlerContext ctx, String text) {
         try {
-            Map<String, Object> message = objectMapper.readValue(text, Map.class);
-            String type = (String) message.get("type");
-            
-            switch (type) {
-                case "auth":
-                    handleAuth(ctx, message);
-                    break;
-                case "message":
-                    handleChatMessage(ctx, message);
-                    break;
-                case "join":
-                    handleJoinRoom(ctx, message);
-                    break;
-                case "leave":
-                    handleLeaveRoom(ctx, message);
-                    break;
-                case "getUsers":
-                    handleGetUsers(ctx);
-                    break;
-                case "getRoomUsers":
-                    handleGetRoomUsers(ctx, message);
-                    break;
-                default:
-                    log.warn("Unknown message type: {}", type);
+            String type = DISPATCHER.dispatch(this, ctx, text);
+            if (type == null) {
+                log.warn("Unknown message type: {}", text);
             }
         } catch (Exception e) {
             log.error("Error processing message", e);
-            sendError(ctx, "Invalid message format");
+            sendError(ctx, null, StatusCode.BAD_REQUEST, "Invalid message format");
         }
     }
     
-    private void handleAuth(ChannelHandlerContext ctx, Map<String, Object> message) {
-        String token = (String) message.get("token");
+    /**
+     * 二进制帧中的协议消息映射到与文本消息相同的处理逻辑，响应沿用请求的请求ID
+     */
+    private void handleBinaryMessage(ChannelHandlerContext ctx, ByteBuf content) {
+        ProtocolMessage message;
+        try {
+            message = binaryCodec.decode(content);
+        } catch (Exception e) {
+            log.error("Error decoding binary message", e);
+            sendError(ctx, null, StatusCode.BAD_REQUEST, "Invalid message format");
+            return;
+        }
+        if (message == null) {
+            sendError(ctx, null, StatusCode.BAD_REQUEST, "Incomplete message");
+            return;
+        }
+        
+        String requestId = message.getRequestId();
+        switch (message.getType()) {
+            case LOGIN_REQUEST:
+                handleAuth(ctx, requestId, ((LoginRequest) message).getPassword());
+                break;
+            case CHAT_REQUEST:
+                ChatRequest chat = (ChatRequest) message;
+                handleChatMessage(ctx, requestId, chat.getContent(), chat.getRoomId(), null);
+                break;
+            case ROOM_JOIN:
+                handleJoinRoom(ctx, requestId, ((RoomRequest) message).getRoomId());
+                break;
+            case ROOM_LEAVE:
+                handleLeaveRoom(ctx, requestId, ((RoomRequest) message).getRoomId());
+                break;
+            case HEARTBEAT_REQUEST:
+                HeartbeatResponse pong = HeartbeatResponse.builder()
+                        .type(MessageType.HEARTBEAT_RESPONSE)
+                        .requestId(requestId)
+                        .serverTime(System.currentTimeMillis())
+                        .build();
+                sendBinary(ctx, pong);
+                break;
+            default:
+                sendError(ctx, requestId, StatusCode.BAD_REQUEST, "Unsupported message type: " + message.getType());
+        }
+    }
+    
+    private void handleAuth(ChannelHandlerContext ctx, String requestId, String token) {
+        if (authenticated) {
+            // 连接上的身份不能更换，否则旧用户的会话和房间分组会留在这个连接上
+            sendError(ctx, requestId, StatusCode.BAD_REQUEST, "Already authenticated");
+            return;
+        }
         
         // 验证token
         String userId = userService.validateToken(token);
         if (userId != null) {
-            this.userId = userId;
-            userChannels.put(userId, ctx);
+            authenticated = true;
+            List<String> roomIds = roomService.getUserRooms(userId).stream()
+                    .map(ChatRoom::getId)
+                    .collect(Collectors.toList());
+            Channel channel = ctx.channel();
             
-            // 更新用户在线状态
-            User user = userService.getUserById(userId);
-            if (user != null) {
-                user.setOnline(true);
-                userService.updateUser(user);
+            // 首次认证时把会话迁移到最热房间所在的 EventLoop，迁移完成后才加入注册表，期间不会有其他线程写该 Channel
+            if (affinity != null) {
+                affinity.migrate(channel, affinity.preferredLoop(roomIds),
+                        () -> completeAuth(ctx, requestId, userId, roomIds));
+            } else {
+                completeAuth(ctx, requestId, userId, roomIds);
             }
-            
-            // 发送认证成功响应
-            Map<String, Object> response = new HashMap<>();
-            response.put("type", "auth");
-            response.put("success", true);
-            response.put("userId", userId);
-            
-            sendMessage(ctx, response);
-            log.info("User authenticated: {}", userId);
         } else {
-            sendError(ctx, "Authentication failed");
+            sendError(ctx, requestId, StatusCode.UNAUTHORIZED, "Authentication failed");
             ctx.close();
         }
     }
     
-    private void handleChatMessage(ChannelHandlerContext ctx, Map<String, Object> message) {
+    private void completeAuth(ChannelHandlerContext ctx, String requestId, String userId, List<String> roomIds) {
+        Channel channel = ctx.channel();
+        this.userId = userId;
+        ChannelUtil.setUserId(channel, userId);
+        // 在线状态由 SessionHub 的第一个/最后一个会话统一维护
+        sessionHub.register(userId, new ChatSession.ChannelSession(channel));
+        MessageBroadcaster.addChannel(channel);
+        
+        // 已加入的房间登记到房间注册表
+        roomIds.forEach(roomId -> MessageBroadcaster.addToRoom(roomId, channel));
+        
+        // 发送认证成功响应
+        sendMessage(ctx, requestId, WebSocketReplies.Auth.success(userId));
+        log.info("User authenticated: {}", userId);
+    }
+    
+    private void handleChatMessage(ChannelHandlerContext ctx, String requestId, String content, String roomId,
+                                   String receiverId) {
         if (userId == null) {
-            sendError(ctx, "Not authenticated");
+            sendError(ctx, requestId, StatusCode.UNAUTHORIZED, "Not authenticated");
+            return;
+        }
+        // 没有接收方的消息无法投递，不保存；二进制的 CHAT_REQUEST 没有 receiverId，必须带 roomId
+        if (content == null || (roomId == null && receiverId == null)) {
+            sendError(ctx, requestId, StatusCode.BAD_REQUEST, "Missing required fields");
             return;
         }
-        
-        String content = (String) message.get("content");
-        String type = (String) message.get("type");
-        String roomId = (String) message.get("roomId");
-        String receiverId = (String) message.get("receiverId");
         
         // 创建消息对象
         ChatMessage chatMessage = ChatMessage.builder()
@@ -120,28 +238,76 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
                 .roomId(roomId)
                 .receiverId(receiverId)
                 .timestamp(System.currentTimeMillis())
-                .type("image".equalsIgnoreCase(type) ? ChatMessage.MessageType.IMAGE : ChatMessage.MessageType.TEXT)
+                .type(ChatMessage.MessageType.TEXT)
                 .build();
         
-        // 保存并发送消息
+        // 保存消息
         messageService.sendMessage(chatMessage);
         
-        // 发送确认
-        Map<String, Object> response = new HashMap<>();
-        response.put("type", "messageAck");
-        response.put("messageId", chatMessage.getId());
-        response.put("success", true);
-        
-        sendMessage(ctx, response);
+        // 发送确认，再投递给所有传输层上的接收者
+        sendMessage(ctx, requestId, WebSocketReplies.MessageAck.of(chatMessage.getId()));
+        deliver(chatMessage);
+    }
+    
+    private void deliver(ChatMessage message) {
+        if (message.getRoomId() != null) {
+            sessionHub.sendMessageToRoom(message.getRoomId(), message);
+        } else if (message.getReceiverId() != null) {
+            sessionHub.sendMessageToUser(message.getReceiverId(), message);
+        }
     }
     
-    private void handleJoinRoom(ChannelHandlerContext ctx, Map<String, Object> message) {
+    /**
+     * 批量发送：合法的消息作为一组保存，只回一个批量确认，逐条给出消息ID或失败原因
+     */
+    private void handleChatMessages(ChannelHandlerContext ctx, List<WebSocketRequests.BatchItem> items) {
         if (userId == null) {
-            sendError(ctx, "Not authenticated");
+            sendError(ctx, null, StatusCode.UNAUTHORIZED, "Not authenticated");
+            return;
+        }
+        if (items == null || items.size() > maxSendBatchSize) {
+            sendMessage(ctx, null, WebSocketReplies.BatchAck.rejected(
+                    items == null ? "Missing messages" : "Batch too large"));
             return;
         }
         
-        String roomId = (String) message.get("roomId");
+        long now = System.currentTimeMillis();
+        List<ChatMessage> accepted = new ArrayList<>(items.size());
+        List<WebSocketReplies.BatchResult> results = new ArrayList<>(items.size());
+        for (WebSocketRequests.BatchItem item : items) {
+            if (item == null) {
+                results.add(WebSocketReplies.BatchResult.failed(null, "Invalid message format"));
+            } else if (item.roomId() == null && item.receiverId() == null) {
+                results.add(WebSocketReplies.BatchResult.failed(item.clientId(), "Missing roomId or receiverId"));
+            } else if (item.content() == null || item.content().isEmpty()) {
+                results.add(WebSocketReplies.BatchResult.failed(item.clientId(), "Empty message"));
+            } else {
+                ChatMessage chatMessage = ChatMessage.builder()
+                        .id(UUID.randomUUID().toString())
+                        .senderId(userId)
+                        .content(item.content())
+                        .roomId(item.roomId())
+                        .receiverId(item.receiverId())
+                        .timestamp(now)
+                        .type(ChatMessage.MessageType.TEXT)
+                        .build();
+                accepted.add(chatMessage);
+                results.add(WebSocketReplies.BatchResult.accepted(item.clientId(), chatMessage.getId()));
+            }
+        }
+        
+        if (!accepted.isEmpty()) {
+            messageService.saveMessages(accepted);
+        }
+        sendMessage(ctx, null, WebSocketReplies.BatchAck.of(results));
+        accepted.forEach(this::deliver);
+    }
+    
+    private void handleJoinRoom(ChannelHandlerContext ctx, String requestId, String roomId) {
+        if (userId == null) {
+            sendError(ctx, requestId, StatusCode.UNAUTHORIZED, "Not authenticated");
+            return;
+        }
         
         // 加入房间
         roomService.addUserToRoom(roomId, userId);
@@ -157,25 +323,23 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
         
         messageService.sendMessage(systemMessage);
         
-        // 发送确认
-        Map<String, Object> response = new HashMap<>();
-        response.put("type", "joinAck");
-        response.put("roomId", roomId);
-        response.put("success", true);
+        // 先通知房间内的其他成员，再把本连接加入房间分组，加入者自己不会收到这条通知
+        deliver(systemMessage);
+        MessageBroadcaster.addToRoom(roomId, ctx.channel());
         
-        sendMessage(ctx, response);
+        // 发送确认
+        sendMessage(ctx, requestId, new WebSocketReplies.RoomAck("join", roomId, true));
     }
     
-    private void handleLeaveRoom(ChannelHandlerContext ctx, Map<String, Object> message) {
+    private void handleLeaveRoom(ChannelHandlerContext ctx, String requestId, String roomId) {
         if (userId == null) {
-            sendError(ctx, "Not authenticated");
+            sendError(ctx, requestId, StatusCode.UNAUTHORIZED, "Not authenticated");
             return;
         }
         
-        String roomId = (String) message.get("roomId");
-        
         // 离开房间
         roomService.removeUserFromRoom(roomId, userId);
+        MessageBroadcaster.removeFromRoom(roomId, ctx.channel());
         
         // 发送系统消息
         ChatMessage systemMessage = ChatMessage.builder()
@@ -189,81 +353,114 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocke
         messageService.sendMessage(systemMessage);
         
         // 发送确认
-        Map<String, Object> response = new HashMap<>();
-        response.put("type", "leaveAck");
-        response.put("roomId", roomId);
-        response.put("success", true);
-        
-        sendMessage(ctx, response);
+        sendMessage(ctx, requestId, new WebSocketReplies.RoomAck("leave", roomId, true));
+        deliver(systemMessage);
     }
     
     private void handleGetUsers(ChannelHandlerContext ctx) {
         if (userId == null) {
-            sendError(ctx, "Not authenticated");
+            sendError(ctx, null, StatusCode.UNAUTHORIZED, "Not authenticated");
             return;
         }
         
         List<User> users = userService.getAllUsers();
-        List<Map<String, Object>> userList = users.stream()
-                .map(this::convertUserToMap)
+        List<WebSocketReplies.UserView> userList = users.stream()
+                .map(WebSocketReplies.UserView::of)
                 .collect(Collectors.toList());
         
-        Map<String, Object> response = new HashMap<>();
-        response.put("type", "users");
-        response.put("users", userList);
-        
-        sendMessage(ctx, response);
+        sendMessage(ctx, null, WebSocketReplies.Users.all(userList));
     }
     
-    private void handleGetRoomUsers(ChannelHandlerContext ctx, Map<String, Object> message) {
+    private void handleGetRoomUsers(ChannelHandlerContext ctx, String roomId) {
         if (userId == null) {
-            sendError(ctx, "Not authenticated");
+            sendError(ctx, null, StatusCode.UNAUTHORIZED, "Not authenticated");
             return;
         }
         
-        String roomId = (String) message.get("roomId");
         List<String> userIds = roomService.getRoomMembers(roomId);
         
-        List<Map<String, Object>> userList = userIds.stream()
+        List<WebSocketReplies.UserView> userList = userIds.stream()
                 .map(userService::getUserById)
                 .filter(Objects::nonNull)
-                .map(this::convertUserToMap)
+                .map(WebSocketReplies.UserView::of)
                 .collect(Collectors.toList());
         
-        Map<String, Object> response = new HashMap<>();
-        response.put("type", "roomUsers");
-        response.put("roomId", roomId);
-        response.put("users", userList);
-        
-        sendMessage(ctx, response);
+        sendMessage(ctx, null, WebSocketReplies.Users.ofRoom(roomId, userList));
     }
     
-    private Map<String, Object> convertUserToMap(User user) {
-        Map<String, Object> userMap = new HashMap<>();
-        userMap.put("id", user.getId());
-        userMap.put("username", user.getUsername());
-        userMap.put("online", user.isOnline());
-        userMap.put("fullName", user.getFullName());
-        userMap.put("profilePicture", user.getProfilePicture());
-        return userMap;
+    /**
+     * 按连接协商的编码写出响应，二进制连接先转换为对应的协议消息
+     * @param requestId 触发该响应的请求ID，文本连接忽略
+     * @param reply {@link WebSocketReplies} 中的响应记录
+     */
+    private void sendMessage(ChannelHandlerContext ctx, String requestId, Object reply) {
+        if (encoding == WebSocketEncoding.BINARY) {
+            ProtocolMessage message = toProtocolMessage(reply);
+            message.setRequestId(requestId);
+            sendBinary(ctx, message);
+            return;
+        }
+        try {
+            ctx.writeAndFlush(WebSocketReplies.toFrame(ctx.alloc(), reply));
+        } catch (Exception e) {
+            log.error("Error sending message", e);
+        }
     }
     
-    private void sendMessage(ChannelHandlerContext ctx, Map<String, Object> response) {
+    private void sendBinary(ChannelHandlerContext ctx, ProtocolMessage message) {
         try {
-            String jsonResponse = objectMapper.writeValueAsString(response);
-            ctx.writeAndFlush(new TextWebSocketFrame(jsonResponse));
+            ctx.writeAndFlush(new BinaryWebSocketFrame(binaryCodec.encode(ctx.alloc(), message)));
         } catch (Exception e) {
-            log.error("Error sending message", e);
+            log.error("Error sending binary message", e);
         }
     }
     
-    private void sendError(ChannelHandlerContext ctx, String errorMessage) {
-        Map<String, Object> errorResponse = new HashMap<>();
-        errorResponse.put("type", "error");
-        errorResponse.put("message", errorMessage);
-        sendMessage(ctx, errorResponse);
+    private void sendError(ChannelHandlerContext ctx, String requestId, StatusCode status, String errorMessage) {
+        sendMessage(ctx, requestId, WebSocketReplies.Error.of(status.getCode(), errorMessage));
+    }
+    
+    /**
+     * 文本响应到协议消息的映射；用户列表这类没有对应协议消息的响应以通知消息承载原 JSON
+     */
+    private ProtocolMessage toProtocolMessage(Object reply) {
+        if (reply instanceof WebSocketReplies.Auth auth) {
+            return LoginResponse.builder()
+                    .type(MessageType.LOGIN_RESPONSE)
+                    .userId(auth.userId())
+                    .build();
+        }
+        if (reply instanceof WebSocketReplies.MessageAck ack) {
+            return ChatResponse.builder()
+                    .type(MessageType.CHAT_RESPONSE)
+                    .success(ack.success())
+                    .message(ack.messageId())
+                    .build();
+        }
+        if (reply instanceof WebSocketReplies.RoomAck ack) {
+            return RoomResponse.builder()
+                    .type(MessageType.ROOM_RESPONSE)
+                    .roomId(ack.roomId())
+                    .success(ack.success())
+                    .build();
+        }
+        if (reply instanceof WebSocketReplies.Error error) {
+            return ErrorMessage.builder()
+                    .type(MessageType.ERROR)
+                    .statusCode((short) error.code())
+                    .errorCode(String.valueOf(error.code()))
+                    .message(error.message())
+                    .build();
+        }
+        String title = reply instanceof WebSocketReplies.Users users ? users.type() : reply.getClass().getSimpleName();
+        try {
+            return NotificationMessage.builder()
+                    .type(MessageType.NOTIFICATION)
+                    .title(title)
+                    .message(WebSocketReplies.toJson(reply))
+                    .timestamp(System.currentTimeMillis())
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to encode response: " + reply.getClass().getSimpleName(), e);
+        }
     }
 }
-
-
-
@@ -0,0 +1,68 @@
+package com.example.chat.core.server;
+
+import com.example.chat.model.ChatMessage;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 与传输协议无关的消息推送
+ * 房间扇出时所有 Channel 共享同一个推送对象，由各连接管道中的编码器按自己的协议编码；
+ * 每种格式只编码一次，结果缓存在推送对象上，同一格式的其他接收者直接复用。
+ * 批量推送由一个窗口内的多条单条推送组成，各格式按自己的方式组帧。
+ */
+public final class ChatPush {
+
+    private final String roomId;
+    private final ChatMessage message;
+    private final List<ChatPush> batch;
+    private final Map<String, Object> encoded = new ConcurrentHashMap<>();
+
+    private ChatPush(String roomId, ChatMessage message, List<ChatPush> batch) {
+        this.roomId = roomId;
+        this.message = message;
+        this.batch = batch;
+    }
+
+    public static ChatPush of(ChatMessage message) {
+        return new ChatPush(message.getRoomId(), message, Collections.emptyList());
+    }
+
+    /**
+     * @param pushes 按到达顺序排列的单条推送
+     */
+    public static ChatPush batch(String roomId, List<ChatPush> pushes) {
+        return new ChatPush(roomId, null, List.copyOf(pushes));
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    /**
+     * 单条推送的消息，批量推送时为null
+     */
+    public ChatMessage getMessage() {
+        return message;
+    }
+
+    public boolean isBatch() {
+        return message == null;
+    }
+
+    public List<ChatPush> getBatch() {
+        return batch;
+    }
+
+    /**
+     * 按格式取编码结果，缓存缺失时编码一次，并发的首次编码只保留一份
+     * @param format 编码格式，如 websocket、binary/v1/JSON
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T encode(String format, Function<ChatPush, T> encoder) {
+        return (T) encoded.computeIfAbsent(format, key -> encoder.apply(this));
+    }
+}
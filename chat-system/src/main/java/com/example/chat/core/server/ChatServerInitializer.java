@@ -1,41 +1,45 @@
 package com.example.chat.core.server;
 
-import com.example.chat.core.handler.HeartbeatHandler;
-import com.example.chat.core.handler.WebSocketMessageCodec;
+import com.example.chat.config.ChatConfig;
+import com.example.chat.core.codec.WebSocketPushEncoder;
+import com.example.chat.core.handler.BackpressureHandler;
+import com.example.chat.core.handler.WebSocketCompression;
+import com.example.chat.core.handler.WebSocketEncoding;
 import com.example.chat.core.handler.WebSocketServerHandler;
 import com.example.chat.service.MessageService;
 import com.example.chat.service.RoomService;
 import com.example.chat.service.UserService;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import lombok.RequiredArgsConstructor;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
-
+/**
+ * WebSocket 服务器的连接管道，由 {@link WebSocketChatServer} 启动
+ */
 @RequiredArgsConstructor
 public class ChatServerInitializer extends ChannelInitializer<SocketChannel> {
-    private static final String WEBSOCKET_PATH = "/ws";
-    
+
     private final UserService userService;
     private final RoomService roomService;
     private final MessageService messageService;
-    private final ObjectMapper objectMapper;
-    
-    // 存储用户ID和Channel的映射
-    private final Map<String, io.netty.channel.ChannelHandlerContext> userChannels = new ConcurrentHashMap<>();
+    private final SessionHub sessionHub;
+    // 为null时认证后不迁移会话的 EventLoop
+    private final EventLoopAffinity affinity;
+    private final ChatConfig chatConfig;
+    private final String websocketPath;
 
     @Override
     protected void initChannel(SocketChannel ch) {
         ChannelPipeline pipeline = ch.pipeline();
+        ChatConfig.Backpressure backpressure = chatConfig.getBackpressure();
+        ch.config().setWriteBufferWaterMark(new WriteBufferWaterMark(
+                backpressure.getLowWaterMark(), backpressure.getHighWaterMark()));
 
         // HTTP协议相关的处理器
         pipeline.addLast(new HttpServerCodec());
@@ -43,18 +47,16 @@ public class ChatServerInitializer extends ChannelInitializer<SocketChannel> {
         pipeline.addLast(new ChunkedWriteHandler());
 
         // WebSocket协议相关的处理器
-        pipeline.addLast(new WebSocketServerProtocolHandler(WEBSOCKET_PATH, null, true));
-        pipeline.addLast(new WebSocketMessageCodec());
-
-        // 空闲检测处理器
-        pipeline.addLast(new IdleStateHandler(60, 0, 0, TimeUnit.SECONDS));
-        pipeline.addLast(new HeartbeatHandler());
+        WebSocketCompression.addLast(pipeline, chatConfig.getCompression(), "websocket");
+        // 子协议决定连接使用JSON文本帧还是二进制帧
+        pipeline.addLast(new WebSocketServerProtocolHandler(websocketPath, WebSocketEncoding.SUBPROTOCOLS, true));
+        pipeline.addLast(BackpressureHandler.NAME, new BackpressureHandler("websocket",
+                backpressure.getMaxPendingMessages(), backpressure.getOverflowPolicy()));
+        // 房间和私聊推送按连接协商的编码写出
+        pipeline.addLast(WebSocketPushEncoder.INSTANCE);
 
         // 业务逻辑处理器
-        pipeline.addLast(new WebSocketServerHandler(userService, roomService, messageService, objectMapper, userChannels));
+        pipeline.addLast(new WebSocketServerHandler(userService, roomService, messageService, sessionHub, affinity,
+                chatConfig.getSendBatch().getMaxSize()));
     }
 }
-
-
-
-
@@ -0,0 +1,28 @@
+package com.example.chat.core.server;
+
+import io.netty.channel.Channel;
+
+/**
+ * 已认证的客户端会话，不区分传输协议
+ * 各传输层把自己的连接包装成会话登记到 {@link SessionHub}，私聊推送通过这里写出。
+ */
+public interface ChatSession {
+
+    /**
+     * 把推送写给该会话，由会话自己决定编码方式
+     */
+    void push(ChatPush push);
+
+    /**
+     * Netty 原生连接（WebSocket、TCP）的会话，推送交给管道中的编码器按协议编码
+     */
+    record ChannelSession(Channel channel) implements ChatSession {
+
+        @Override
+        public void push(ChatPush push) {
+            if (channel.isActive()) {
+                channel.writeAndFlush(push);
+            }
+        }
+    }
+}
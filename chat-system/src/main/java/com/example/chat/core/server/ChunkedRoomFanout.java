@@ -0,0 +1,105 @@
+package com.example.chat.core.server;
+
+import com.example.chat.util.ChatMetrics;
+import com.example.chat.util.MessageBroadcaster;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * 大房间分块扇出
+ * 把成员切成若干块并行投递，不占用接收消息的 IO 线程。
+ * 同一房间的下一条消息要等上一条的所有分块投递完才开始，因此每个成员收到的消息顺序与提交顺序一致。
+ *
+ * @param <T> 接收者类型
+ */
+@Slf4j
+public class ChunkedRoomFanout<T> {
+
+    private final String metricPrefix;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    /**
+     * @param metricPrefix 指标前缀，如 socketio
+     */
+    public ChunkedRoomFanout(String metricPrefix, ExecutorService executor, int parallelism) {
+        this.metricPrefix = metricPrefix;
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 提交一次房间扇出
+     * @param members 接收者快照，调用方之后不能再修改
+     * @param send 对单个接收者的投递动作，异常会被记录但不会中断其他接收者
+     */
+    public CompletableFuture<Void> submit(String roomId, List<T> members, Consumer<T> send) {
+        List<List<T>> chunks = split(members);
+        CompletableFuture<Void> next = tails.compute(roomId, (key, tail) -> enqueue(tail, chunks, send));
+        next.whenComplete((v, e) -> tails.remove(roomId, next));
+        return next;
+    }
+
+    /**
+     * 小房间且没有排队中的分块时在当前线程直接投递，否则排在该房间已提交的分块之后
+     * 判断和直接投递在房间的队尾上原子完成，直接投递不会越过之后才提交的分块，也不会越过还没投递完的分块
+     * @return 直接投递成功的接收者数，排队时为接收者总数
+     */
+    public int submitOrRun(String roomId, List<T> members, Consumer<T> send) {
+        if (members.size() >= MessageBroadcaster.LARGE_ROOM_THRESHOLD) {
+            submit(roomId, members, send);
+            return members.size();
+        }
+        int[] sent = new int[1];
+        CompletableFuture<Void> next = tails.compute(roomId, (key, tail) -> {
+            if (tail == null) {
+                sent[0] = deliver(members, send);
+                return null;
+            }
+            sent[0] = members.size();
+            return enqueue(tail, List.of(members), send);
+        });
+        if (next != null) {
+            next.whenComplete((v, e) -> tails.remove(roomId, next));
+        }
+        return sent[0];
+    }
+
+    private List<List<T>> split(List<T> members) {
+        int chunkSize = MessageBroadcaster.chunkSize(members.size(), parallelism);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < members.size(); from += chunkSize) {
+            chunks.add(members.subList(from, Math.min(from + chunkSize, members.size())));
+        }
+        ChatMetrics.histogram(metricPrefix + ".fanout.chunkSize").update(chunkSize);
+        return chunks;
+    }
+
+    private CompletableFuture<Void> enqueue(CompletableFuture<Void> tail, List<List<T>> chunks, Consumer<T> send) {
+        CompletableFuture<Void> previous = tail != null ? tail : CompletableFuture.completedFuture(null);
+        // 上一条消息失败也不影响后续消息
+        return previous.handle((v, e) -> null).thenCompose(v -> CompletableFuture.allOf(chunks.stream()
+                .map(chunk -> CompletableFuture.runAsync(() -> deliver(chunk, send), executor))
+                .toArray(CompletableFuture[]::new)));
+    }
+
+    private int deliver(List<T> chunk, Consumer<T> send) {
+        int sent = 0;
+        for (T member : chunk) {
+            try {
+                send.accept(member);
+                sent++;
+            } catch (Exception e) {
+                log.error("Failed to deliver room message to {}", member, e);
+            }
+        }
+        return sent;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.chat.core.server;
+
+import com.example.chat.util.ChatMetrics;
+import com.example.chat.util.MessageBroadcaster;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 房间与会话的 EventLoop 亲和性
+ * 每个房间固定归属一个 EventLoop，会话认证后迁移到其最热房间的 EventLoop，
+ * 这样同一热门房间的成员大多在同一个线程上，{@link MessageBroadcaster#writeToRoom} 按 EventLoop 分组写出时只需提交很少的任务。
+ */
+@Slf4j
+public class EventLoopAffinity {
+
+    private final String metricPrefix;
+    private final List<EventLoop> loops = new ArrayList<>();
+
+    /**
+     * @param metricPrefix 指标前缀，如 websocket、tcp
+     */
+    public EventLoopAffinity(String metricPrefix, EventLoopGroup group) {
+        this.metricPrefix = metricPrefix;
+        for (EventExecutor executor : group) {
+            loops.add((EventLoop) executor);
+        }
+    }
+
+    /**
+     * 房间归属的 EventLoop，按房间ID哈希固定分配
+     */
+    public EventLoop ownerOf(String roomId) {
+        return loops.get(Math.floorMod(roomId.hashCode(), loops.size()));
+    }
+
+    /**
+     * 会话的首选 EventLoop：成员最多的房间所归属的 EventLoop，没有房间时返回null
+     */
+    public EventLoop preferredLoop(Collection<String> roomIds) {
+        String hottest = null;
+        int maxSize = -1;
+        for (String roomId : roomIds) {
+            int size = MessageBroadcaster.getRoomSize(roomId);
+            if (size > maxSize) {
+                hottest = roomId;
+                maxSize = size;
+            }
+        }
+        return hottest != null ? ownerOf(hottest) : null;
+    }
+
+    /**
+     * 将 Channel 迁移到目标 EventLoop，完成后在目标线程上执行 then。
+     * 必须在 Channel 被加入任何注册表之前调用，迁移期间不能有其他线程向该 Channel 写数据。
+     */
+    public void migrate(Channel channel, EventLoop target, Runnable then) {
+        if (target == null || channel.eventLoop() == target) {
+            then.run();
+            return;
+        }
+
+        channel.deregister().addListener((ChannelFuture deregistered) -> {
+            if (!deregistered.isSuccess()) {
+                log.warn("Failed to deregister channel {}, keeping current event loop", channel.id(),
+                        deregistered.cause());
+                channel.eventLoop().execute(then);
+                return;
+            }
+            target.register(channel).addListener((ChannelFuture registered) -> {
+                if (registered.isSuccess()) {
+                    ChatMetrics.counter(metricPrefix + ".affinity.migrations").inc();
+                    then.run();
+                } else {
+                    log.error("Failed to register channel {} to target event loop", channel.id(),
+                            registered.cause());
+                    channel.close();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.chat.core.server;
+
+import com.example.chat.util.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 房间消息批量投递器
+ * 对开启了批量模式的房间，在时间窗口内（或达到条数上限时）聚合消息，
+ * 然后一次性交给 flusher 写出，每个接收者只收到一个批量帧、只触发一次 flush。
+ * 所有 flush 都在同一个调度线程上执行，保证同一房间的批次按顺序写出。
+ *
+ * @param <T> 消息类型，如已编码的 JSON 或 {@link ChatPush}
+ */
+@Slf4j
+public class RoomBatcher<T> {
+
+    // 开启批量模式的房间只来自配置 chat.batching.rooms
+    private final Set<String> batchedRooms;
+    private final ConcurrentHashMap<String, Batch<T>> pending = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final long windowMillis;
+    private final int maxMessages;
+    private final BiConsumer<String, List<T>> flusher;
+
+    /**
+     * @param name 调度线程名前缀
+     * @param flusher 接收 (roomId, 按到达顺序排列的消息)，负责组帧并写给房间成员
+     */
+    public RoomBatcher(String name, Collection<String> rooms, long windowMillis, int maxMessages,
+                       BiConsumer<String, List<T>> flusher) {
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory(name));
+        // 关闭时未到期的窗口已由 shutdown 直接写出，不需要再等待定时任务
+        this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.batchedRooms = Set.copyOf(rooms);
+        this.windowMillis = windowMillis;
+        this.maxMessages = maxMessages;
+        this.flusher = flusher;
+    }
+
+    public boolean isBatched(String roomId) {
+        return batchedRooms.contains(roomId);
+    }
+
+    /**
+     * 提交一条房间消息
+     * @return 如果房间未开启批量模式则返回false，调用方应立即发送
+     */
+    public boolean offer(String roomId, T message) {
+        if (!batchedRooms.contains(roomId)) {
+            return false;
+        }
+
+        List<Batch<T>> created = new ArrayList<>(1);
+        List<Batch<T>> full = new ArrayList<>(1);
+        pending.compute(roomId, (key, batch) -> {
+            if (batch == null) {
+                batch = new Batch<>();
+                created.add(batch);
+            }
+            batch.messages.add(message);
+            if (batch.messages.size() >= maxMessages) {
+                full.add(batch);
+                return null;
+            }
+            return batch;
+        });
+
+        if (!full.isEmpty()) {
+            Batch<T> batch = full.get(0);
+            scheduler.execute(() -> deliver(roomId, batch));
+        } else if (!created.isEmpty()) {
+            Batch<T> batch = created.get(0);
+            scheduler.schedule(() -> {
+                // 只处理本次窗口创建的批次，已因条数上限提前写出的批次不会重复处理
+                if (pending.remove(roomId, batch)) {
+                    deliver(roomId, batch);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * 写出所有未完成的批次并停止调度线程
+     */
+    public void shutdown() {
+        pending.forEach((roomId, batch) -> {
+            if (pending.remove(roomId, batch)) {
+                scheduler.execute(() -> deliver(roomId, batch));
+            }
+        });
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deliver(String roomId, Batch<T> batch) {
+        try {
+            flusher.accept(roomId, batch.messages);
+        } catch (Exception e) {
+            log.error("Failed to flush batch for room {}, size: {}", roomId, batch.messages.size(), e);
+        }
+    }
+
+    /**
+     * 单个窗口内聚合的消息，只在 pending.compute 内修改，移出 pending 后不再变化
+     */
+    private static class Batch<T> {
+        private final List<T> messages = new ArrayList<>();
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.chat.core.server;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.util.ChatMetrics;
+import com.example.chat.util.MessageBroadcaster;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 所有传输层共用的会话注册表和房间扇出
+ * Socket.IO、WebSocket、TCP 的会话登记在同一个 {@link SessionRegistry}，任一传输层收到的消息都会投递给所有传输层的接收者。
+ * Netty 原生连接（WebSocket、TCP）按房间ID加入同一个 {@link MessageBroadcaster} 分组，写出的是 {@link ChatPush}，
+ * 由各连接管道中的编码器按协议编码，每种格式只编码一次；Socket.IO 的房间由其自身维护，通过 {@link #addRoomTransport} 接入。
+ */
+@Slf4j
+@Component
+public class SessionHub {
+
+    private final SessionRegistry<ChatSession> sessions = new SessionRegistry<>();
+    private final RoomBatcher<ChatPush> roomBatcher;
+    private final List<BiConsumer<String, ChatPush>> roomTransports = new CopyOnWriteArrayList<>();
+    private final List<Consumer<String>> presenceListeners = new CopyOnWriteArrayList<>();
+
+    public SessionHub(ChatConfig chatConfig) {
+        ChatConfig.Batching batching = chatConfig.getBatching();
+        this.roomBatcher = new RoomBatcher<>("room-batch", batching.getRooms(),
+                batching.getWindowMillis(), batching.getMaxMessages(), this::flushRoomBatch);
+    }
+
+    @PreDestroy
+    public void stop() {
+        roomBatcher.shutdown();
+    }
+
+    /**
+     * 注册房间投递通道，接收 (roomId, 推送)，推送可能是批量推送
+     */
+    public void addRoomTransport(BiConsumer<String, ChatPush> transport) {
+        roomTransports.add(transport);
+    }
+
+    /**
+     * 注册在线状态监听，用户的会话数在 0/1 之间切换后在注册表锁外回调
+     */
+    public void addPresenceListener(Consumer<String> listener) {
+        presenceListeners.add(listener);
+    }
+
+    /**
+     * 登记会话
+     * @return 如果这是该用户的第一个会话（离线 -> 在线）则返回true
+     */
+    public boolean register(String userId, ChatSession session) {
+        boolean first = sessions.add(userId, session);
+        if (first) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+        return first;
+    }
+
+    /**
+     * 注销会话，重复注销是安全的
+     * @return 如果移除的是该用户的最后一个会话（在线 -> 离线）则返回true
+     */
+    public boolean unregister(String userId, ChatSession session) {
+        boolean last = sessions.remove(userId, session);
+        if (last) {
+            presenceListeners.forEach(listener -> listener.accept(userId));
+        }
+        return last;
+    }
+
+    public boolean isOnline(String userId) {
+        return sessions.isOnline(userId);
+    }
+
+    public int sessionCount(String userId) {
+        return sessions.sessionCount(userId);
+    }
+
+    public void forEach(BiConsumer<String, Set<ChatSession>> action) {
+        sessions.forEach(action);
+    }
+
+    /**
+     * 发送消息给指定用户在所有传输层上的会话，各会话共享同一个推送对象
+     */
+    public void sendMessageToUser(String userId, ChatMessage message) {
+        Set<ChatSession> targets = sessions.get(userId);
+        if (targets.isEmpty()) {
+            log.debug("User {} is offline, messageId: {}", userId, message.getId());
+            return;
+        }
+
+        ChatPush push = ChatPush.of(message);
+        for (ChatSession session : targets) {
+            try {
+                session.push(push);
+            } catch (Exception e) {
+                log.error("Failed to send message {} to session {}", message.getId(), session, e);
+            }
+        }
+        ChatMetrics.recordFanout("user", 1, targets.size());
+    }
+
+    /**
+     * 发送消息到聊天室在所有传输层上的成员
+     */
+    public void sendMessageToRoom(String roomId, ChatMessage message) {
+        sendToRoom(roomId, ChatPush.of(message));
+    }
+
+    /**
+     * 投递房间推送：批量模式的房间先聚合，其余房间立即写出
+     */
+    public void sendToRoom(String roomId, ChatPush push) {
+        if (roomBatcher.offer(roomId, push)) {
+            return;
+        }
+        deliverToRoom(roomId, push);
+    }
+
+    /**
+     * 将一个窗口内的消息合成一个批量推送，每个接收者只收到一帧
+     */
+    private void flushRoomBatch(String roomId, List<ChatPush> pushes) {
+        deliverToRoom(roomId, ChatPush.batch(roomId, pushes));
+        ChatMetrics.histogram("room.batch.size").update(pushes.size());
+    }
+
+    private void deliverToRoom(String roomId, ChatPush push) {
+        if (MessageBroadcaster.getRoomSize(roomId) > 0) {
+            // 按 EventLoop 分组写出，同一 EventLoop 上的成员直接写出
+            int recipients = MessageBroadcaster.writeToRoom(roomId, push);
+            ChatMetrics.recordFanout("netty", 1, recipients);
+            log.debug("Message sent to room {}, netty recipients: {}", roomId, recipients);
+        }
+        for (BiConsumer<String, ChatPush> transport : roomTransports) {
+            try {
+                transport.accept(roomId, push);
+            } catch (Exception e) {
+                log.error("Failed to deliver message to room {}", roomId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.chat.core.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 用户会话注册表
+ * 按用户ID分段加锁（ConcurrentHashMap 的 compute 只锁定该用户所在的桶），读操作无锁。
+ * add/remove 会原子地返回"第一个会话/最后一个会话"的状态变化，调用方在锁外执行副作用（Redis、广播等）。
+ *
+ * @param <S> 会话类型，如 SocketIOClient 或 Channel
+ */
+public class SessionRegistry<S> {
+
+    private final ConcurrentHashMap<String, Set<S>> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 注册会话
+     * @return 如果这是该用户的第一个会话（离线 -> 在线）则返回true
+     */
+    public boolean add(String userId, S session) {
+        boolean[] first = new boolean[1];
+        sessions.compute(userId, (key, set) -> {
+            if (set == null) {
+                set = ConcurrentHashMap.newKeySet();
+            }
+            first[0] = set.isEmpty();
+            set.add(session);
+            return set;
+        });
+        return first[0];
+    }
+
+    /**
+     * 注销会话，重复注销是安全的
+     * @return 如果移除的是该用户的最后一个会话（在线 -> 离线）则返回true
+     */
+    public boolean remove(String userId, S session) {
+        boolean[] last = new boolean[1];
+        sessions.computeIfPresent(userId, (key, set) -> {
+            last[0] = set.remove(session) && set.isEmpty();
+            return set.isEmpty() ? null : set;
+        });
+        return last[0];
+    }
+
+    /**
+     * 获取用户的所有会话（只读视图，可在无锁情况下安全遍历）
+     */
+    public Set<S> get(String userId) {
+        Set<S> set = sessions.get(userId);
+        return set != null ? Collections.unmodifiableSet(set) : Collections.emptySet();
+    }
+
+    public boolean isOnline(String userId) {
+        Set<S> set = sessions.get(userId);
+        return set != null && !set.isEmpty();
+    }
+
+    public int sessionCount(String userId) {
+        Set<S> set = sessions.get(userId);
+        return set != null ? set.size() : 0;
+    }
+
+    /**
+     * 当前有会话的用户ID集合（只读视图）
+     */
+    public Set<String> onlineUsers() {
+        return Collections.unmodifiableSet(sessions.keySet());
+    }
+
+    public void forEach(BiConsumer<String, Set<S>> action) {
+        sessions.forEach((userId, set) -> action.accept(userId, Collections.unmodifiableSet(set)));
+    }
+}
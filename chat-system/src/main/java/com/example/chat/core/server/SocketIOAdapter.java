@@ -5,10 +5,23 @@ import com.corundumstudio.socketio.SocketIOClient;
 import com.corundumstudio.socketio.SocketIOServer;
 import com.corundumstudio.socketio.listener.ConnectListener;
 import com.corundumstudio.socketio.listener.DisconnectListener;
+import com.example.chat.config.ChatConfig;
+import com.example.chat.config.ThreadPoolConfig;
+import com.example.chat.core.codec.ClientMessageEncoder;
 import com.example.chat.model.ChatMessage;
+import com.example.chat.model.PresenceDelta;
+import com.example.chat.model.UploadSession;
 import com.example.chat.model.User;
+import com.example.chat.service.ContentStore;
 import com.example.chat.service.MessageService;
+import com.example.chat.service.PresenceService;
 import com.example.chat.service.UserService;
+import com.example.chat.util.ChatMetrics;
+import com.example.chat.util.MessageBroadcaster;
+import com.example.chat.util.PacedBroadcast;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -16,39 +29,65 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Component
 public class SocketIOAdapter {
     
+    // 在线状态变更推送，连接积压时按 DROP_NON_CRITICAL 策略可以丢弃
+    public static final String USER_STATUS_EVENT = "userStatus";
+    
     private final SocketIOServer server;
     private final UserService userService;
     private final MessageService messageService;
-    
-    // 存储用户ID与客户端的映射关系
-    private final Map<String, Set<SocketIOClient>> userClients = new ConcurrentHashMap<>();
+    private final PresenceService presenceService;
+    private final ObjectMapper objectMapper;
+    private final ClientMessageEncoder clientMessageEncoder;
+    private final ContentStore contentStore;
+    private final SessionHub sessionHub;
+    private final ChunkedRoomFanout<SocketIOClient> largeRoomFanout;
+    private final int maxSendBatchSize;
     
     // 重试次数和间隔
     private static final int MAX_RETRY_COUNT = 3;
     private static final long RETRY_INTERVAL = 5000; // 5秒
     
+    // 旧客户端内联图片的 data URL 格式：data:image/png;base64,...
+    private static final String DATA_URL_PREFIX = "data:";
+    private static final String BASE64_MARKER = ";base64,";
+    
     @Autowired
-    public SocketIOAdapter(SocketIOServer server, UserService userService, MessageService messageService) {
+    public SocketIOAdapter(SocketIOServer server, UserService userService, MessageService messageService,
+                           PresenceService presenceService, ObjectMapper objectMapper,
+                           ClientMessageEncoder clientMessageEncoder, ContentStore contentStore,
+                           SessionHub sessionHub, ChatConfig chatConfig) {
         this.server = server;
         this.userService = userService;
         this.messageService = messageService;
+        this.presenceService = presenceService;
+        this.objectMapper = objectMapper;
+        this.clientMessageEncoder = clientMessageEncoder;
+        this.contentStore = contentStore;
+        this.sessionHub = sessionHub;
+        this.largeRoomFanout = new ChunkedRoomFanout<>("socketio", ThreadPoolConfig.getExecutorService(),
+                Runtime.getRuntime().availableProcessors());
+        this.maxSendBatchSize = chatConfig.getSendBatch().getMaxSize();
+        
+        // 会话登记在所有传输层共用的注册表，任一传输层的房间消息都会经由这里投递给 Socket.IO 房间成员
+        sessionHub.addRoomTransport(this::deliverToRoom);
+        sessionHub.addPresenceListener(this::syncPresence);
         
         // 注册事件监听器
         this.server.addConnectListener(onConnected());
@@ -62,9 +101,21 @@ public class SocketIOAdapter {
                 Map<String, Object> messageData = (Map<String, Object>) data;
                 handleChatMessage(client, messageData, ack);
             });
+        this.server.addEventListener("sendMessages", Map.class, 
+            (client, data, ack) -> {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> batchData = (Map<String, Object>) data;
+                handleChatMessages(client, batchData, ack);
+            });
             
         this.server.addEventListener("getOnlineUsers", Object.class, 
             (client, data, ack) -> handleGetOnlineUsers(client, data, ack));
+        this.server.addEventListener("getPresence", Map.class, 
+            (client, data, ack) -> {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> presenceData = (Map<String, Object>) data;
+                handleGetPresence(client, presenceData, ack);
+            });
         
         // 注册房间相关事件
         this.server.addEventListener("joinRoom", Map.class, 
@@ -119,42 +170,13 @@ public class SocketIOAdapter {
     private void onPing(SocketIOClient client) {
         String userId = client.get("userId");
         if (userId != null) {
-            // 更新用户最后心跳时间
+            // 更新用户最后心跳时间，在线状态由会话注册表决定，这里不再读写 Redis
             client.set("lastPingTime", System.currentTimeMillis());
             
             // 发送 pong 响应
             Map<String, Object> pongData = new HashMap<>();
             pongData.put("timestamp", System.currentTimeMillis());
             client.sendEvent("pong", pongData);
-            
-            // 检查用户当前状态
-            User user = userService.getUserById(userId);
-            if (user != null) {
-                boolean wasOnline = user.isOnline();
-                boolean hasActiveConnection = false;
-                
-                // 检查是否有活跃连接
-                Set<SocketIOClient> clients = userClients.get(userId);
-                if (clients != null && !clients.isEmpty()) {
-                    for (SocketIOClient c : clients) {
-                        Long lastPingTime = c.get("lastPingTime");
-                        if (lastPingTime != null && 
-                            System.currentTimeMillis() - lastPingTime < 30000) {
-                            hasActiveConnection = true;
-                            break;
-                        }
-                    }
-                }
-                
-                // 只在状态发生变化时更新
-                if (wasOnline != hasActiveConnection) {
-                    user.setOnline(hasActiveConnection);
-                    userService.updateUser(user);
-                    broadcastUserStatus(userId, hasActiveConnection);
-                    log.info("User {} online status updated to {} after ping check", 
-                        userId, hasActiveConnection);
-                }
-            }
         }
     }
     
@@ -183,28 +205,16 @@ public class SocketIOAdapter {
                 client.set("lastPingTime", System.currentTimeMillis());
                 client.set("connectTime", System.currentTimeMillis());
                 
-                synchronized (userClients) {
-                    Set<SocketIOClient> clients = userClients.computeIfAbsent(userId, k -> new HashSet<>());
-                    clients.add(client);
-                    
-                    // 更新用户在线状态
-                    User user = userService.getUserById(userId);
-                    if (user != null) {
-                        user.setOnline(true);
-                        userService.updateUser(user);
-                        broadcastUserStatus(userId, true);
-                        log.info("User {} marked as online with new connection: {}", userId, client.getSessionId());
-                    }
+                // 只有第一个会话（任一传输层）才触发上线，副作用在注册表锁外执行
+                if (sessionHub.register(userId, new SocketIOSession(client, clientMessageEncoder))) {
+                    log.info("User {} marked as online with new connection: {}", userId, client.getSessionId());
                 }
                 
-                // 发送当前在线用户列表给新连接的客户端
+                // 发送当前在线用户列表给新连接的客户端，其他客户端通过 userStatus 增量更新
                 sendOnlineUsersToClient(client);
                 
-                // 广播给所有客户端更新用户列表
-                server.getBroadcastOperations().sendEvent("getOnlineUsers");
-                
                 log.info("Client connected: {}, userId: {}, total connections: {}", 
-                    client.getSessionId(), userId, userClients.get(userId).size());
+                    client.getSessionId(), userId, sessionHub.sessionCount(userId));
             } else {
                 Map<String, Object> errorData = new HashMap<>();
                 errorData.put("error", "AUTH_FAILED");
@@ -223,36 +233,34 @@ public class SocketIOAdapter {
             return;
         }
         
-        List<User> allUsers = userService.getAllUsers();
-        List<Map<String, Object>> userList = new ArrayList<>();
-        
-        for (User user : allUsers) {
-            if (!user.getId().equals(userId)) {  // 排除当前用户
-                Map<String, Object> userData = convertUserToClientFormat(user);
-                
-                // 检查用户是否有活跃的WebSocket连接
-                Set<SocketIOClient> userClients = this.userClients.get(user.getId());
-                boolean isOnline = userClients != null && !userClients.isEmpty();
-                
-                // 更新用户在线状态
-                if (user.isOnline() != isOnline) {
-                    user.setOnline(isOnline);
-                    userService.updateUser(user);
-                }
-                
-                userData.put("online", isOnline);
-                userList.add(userData);
-            }
-        }
-        
         try {
-            client.sendEvent("onlineUsers", userList);
+            client.sendEvent("onlineUsers", getOnlineUserList(userId));
             log.debug("Sent online users list to client: {}", client.getSessionId());
         } catch (Exception e) {
             log.error("Failed to send online users list to client: {}", client.getSessionId(), e);
         }
     }
     
+    /**
+     * 在线用户列表，直接取内存中的在线状态快照，不读取用户存储；
+     * 只包含在线用户，version 为该用户最近一次状态变更的版本号，客户端之后通过 userStatus 增量更新
+     */
+    private List<Map<String, Object>> getOnlineUserList(String excludeUserId) {
+        List<Map<String, Object>> userList = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (PresenceDelta delta : presenceService.getSnapshot()) {
+            if (!delta.getUserId().equals(excludeUserId)) {  // 排除当前用户
+                Map<String, Object> userData = new HashMap<>();
+                userData.put("id", delta.getUserId());
+                userData.put("online", true);
+                userData.put("version", delta.getVersion());
+                userData.put("lastUpdate", now);
+                userList.add(userData);
+            }
+        }
+        return userList;
+    }
+    
     private DisconnectListener onDisconnected() {
         return client -> {
             String userId = client.get("userId");
@@ -261,28 +269,13 @@ public class SocketIOAdapter {
                 long connectionDuration = connectTime != null ? 
                     System.currentTimeMillis() - connectTime : 0;
                 
-                synchronized (userClients) {
-                    Set<SocketIOClient> clients = userClients.get(userId);
-                    if (clients != null) {
-                        clients.remove(client);
-                        log.info("Client disconnected: {}, userId: {}, connection duration: {}ms, remaining connections: {}", 
-                            client.getSessionId(), userId, connectionDuration, clients.size());
-                            
-                        if (clients.isEmpty()) {
-                            userClients.remove(userId);
-                            User user = userService.getUserById(userId);
-                            if (user != null) {
-                                user.setOnline(false);
-                                userService.updateUser(user);
-                                broadcastUserStatus(userId, false);
-                                log.info("User {} marked as offline after {}ms connection", userId, connectionDuration);
-                            }
-                        }
-                    }
+                // 心跳超时清理可能已经注销过该会话，重复注销不会再次触发下线
+                boolean last = sessionHub.unregister(userId, new SocketIOSession(client, clientMessageEncoder));
+                log.info("Client disconnected: {}, userId: {}, connection duration: {}ms, remaining connections: {}", 
+                    client.getSessionId(), userId, connectionDuration, sessionHub.sessionCount(userId));
+                if (last) {
+                    log.info("User {} marked as offline after {}ms connection", userId, connectionDuration);
                 }
-                
-                // 广播给所有客户端更新用户列表
-                server.getBroadcastOperations().sendEvent("getOnlineUsers");
             }
         };
     }
@@ -300,29 +293,28 @@ public class SocketIOAdapter {
         
         log.info("Received message from user {}: {}", userId, data);
         
-        String content = (String) data.get("content");
-        String type = (String) data.get("type");
-        String receiverId = (String) data.get("receiverId");
-        String roomId = (String) data.get("roomId");
-        String image = (String) data.get("image");
-        
-        // 创建消息对象 - 保留文字内容
-        ChatMessage message = ChatMessage.builder()
-                .id(UUID.randomUUID().toString())
-                .senderId(userId)
-                .content(content)  // 保留文字内容
-                .image(image)      // 设置图片
-                .receiverId(receiverId)
-                .roomId(roomId)
-                .timestamp(System.currentTimeMillis())
-                .type(image != null ? ChatMessage.MessageType.IMAGE : ChatMessage.MessageType.TEXT)
-                .build();
+        ChatMessage message;
+        try {
+            message = buildMessage(userId, data);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected message from user {}: {}", userId, e.getMessage());
+            if (ackRequest.isAckRequested()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("type", "messageAck");
+                response.put("success", false);
+                response.put("error", e.getMessage());
+                ackRequest.sendAckData(response);
+            }
+            return;
+        }
         
         // 保存消息
         messageService.saveMessage(message);
         log.info("Message saved: {}", message.getId());
         
         // 发送消息给接收者或房间
+        String roomId = message.getRoomId();
+        String receiverId = message.getReceiverId();
         if (roomId != null) {
             log.info("Sending message to room: {}", roomId);
             sendMessageToRoom(roomId, message);
@@ -342,161 +334,320 @@ public class SocketIOAdapter {
         }
     }
     
-    // 处理获取在线用户请求
-    private void handleGetOnlineUsers(SocketIOClient client, Object data, AckRequest ackRequest) {
+    /**
+     * 处理批量发送：整批校验后作为一组保存，再逐条投递，最后只回一个批量确认
+     * 确认中的 results 与请求中的 messages 一一对应，失败的条目带 error，不影响其余条目
+     */
+    private void handleChatMessages(SocketIOClient client, Map<String, Object> data, AckRequest ackRequest) {
         String userId = client.get("userId");
         if (userId == null) {
+            log.warn("Received message batch from unauthenticated client");
             return;
         }
+        client.set("lastPingTime", System.currentTimeMillis());
         
-        List<User> allUsers = userService.getAllUsers();
-        List<Map<String, Object>> userList = new ArrayList<>();
-        
-        // 获取当前时间戳
-        long now = System.currentTimeMillis();
+        Object items = data.get("messages");
+        if (!(items instanceof List) || ((List<?>) items).size() > maxSendBatchSize) {
+            if (ackRequest.isAckRequested()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("type", "batchAck");
+                response.put("success", false);
+                response.put("error", items instanceof List ? "Batch too large" : "Missing messages");
+                ackRequest.sendAckData(response);
+            }
+            return;
+        }
         
-        for (User user : allUsers) {
-            if (!user.getId().equals(userId)) {  // 排除当前用户
-                Map<String, Object> userData = convertUserToClientFormat(user);
-                
-                // 检查用户是否真实在线（有活跃的WebSocket连接）
-                boolean isReallyOnline = false;
-                Set<SocketIOClient> userClients = this.userClients.get(user.getId());
-                if (userClients != null && !userClients.isEmpty()) {
-                    for (SocketIOClient userClient : userClients) {
-                        Long lastPingTime = userClient.get("lastPingTime");
-                        if (lastPingTime != null && now - lastPingTime < 30000) { // 30秒内有心跳
-                            isReallyOnline = true;
-                            break;
-                        }
+        List<?> batch = (List<?>) items;
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        List<ChatMessage> accepted = new ArrayList<>(batch.size());
+        for (Object item : batch) {
+            Map<String, Object> result = new HashMap<>();
+            String error = null;
+            if (item instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> messageData = (Map<String, Object>) item;
+                result.put("clientId", messageData.get("clientId"));
+                try {
+                    ChatMessage message = buildMessage(userId, messageData);
+                    error = validateMessage(message);
+                    if (error == null) {
+                        accepted.add(message);
+                        result.put("messageId", message.getId());
                     }
+                } catch (IllegalArgumentException e) {
+                    error = e.getMessage();
                 }
-                
-                // 更新用户在线状态
-                if (user.isOnline() != isReallyOnline) {
-                    user.setOnline(isReallyOnline);
-                    userService.updateUser(user);
-                    // 广播状态变更
-                    broadcastUserStatus(user.getId(), isReallyOnline);
-                    log.info("User {} online status updated to {} during users list request", 
-                        user.getId(), isReallyOnline);
-                }
-                
-                userData.put("online", isReallyOnline);
-                userData.put("lastUpdate", now);  // 添加最后更新时间戳
-                userList.add(userData);
+            } else {
+                error = "Invalid message format";
+            }
+            result.put("success", error == null);
+            if (error != null) {
+                result.put("error", error);
+            }
+            results.add(result);
+        }
+        
+        // 整批一次写入存储
+        if (!accepted.isEmpty()) {
+            messageService.saveMessages(accepted);
+        }
+        ChatMetrics.histogram("socketio.send.batchSize").update(batch.size());
+        log.info("Saved message batch from user {}: {}/{} accepted", userId, accepted.size(), batch.size());
+        
+        for (ChatMessage message : accepted) {
+            if (message.getRoomId() != null) {
+                sendMessageToRoom(message.getRoomId(), message);
+            } else {
+                sendMessageToUser(message.getReceiverId(), message);
             }
         }
         
-        // 发送响应
         if (ackRequest.isAckRequested()) {
-            ackRequest.sendAckData(userList);
-            log.debug("Sent online users list to client: {}, users count: {}", 
-                client.getSessionId(), userList.size());
+            Map<String, Object> response = new HashMap<>();
+            response.put("type", "batchAck");
+            response.put("success", true);
+            response.put("results", results);
+            ackRequest.sendAckData(response);
         }
     }
     
-    // 广播用户状态变更
-    private void broadcastUserStatus(String userId, boolean online) {
-        User user = userService.getUserById(userId);
-        if (user != null) {
-            Map<String, Object> statusData = new HashMap<>();
-            statusData.put("userId", userId);
-            statusData.put("username", user.getUsername());
-            statusData.put("online", online);
-            statusData.put("lastUpdate", System.currentTimeMillis());
-            
-            // 广播给所有在线用户
-            server.getBroadcastOperations().sendEvent("userStatus", statusData);
-            log.info("Broadcasting user {} status change to {}", userId, online);
+    /**
+     * 由客户端数据创建消息对象，同时保留文字内容和图片
+     * @throws IllegalArgumentException 字段类型不对，或图片无法解析或存储，整条消息被拒绝
+     */
+    private ChatMessage buildMessage(String userId, Map<String, Object> data) {
+        String content = stringField(data, "content");
+        String receiverId = stringField(data, "receiverId");
+        String roomId = stringField(data, "roomId");
+        String image = resolveImage(userId, stringField(data, "imageId"), stringField(data, "image"));
+        
+        return ChatMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .senderId(userId)
+                .content(content)
+                .image(image)
+                .receiverId(receiverId)
+                .roomId(roomId)
+                .timestamp(System.currentTimeMillis())
+                .type(image != null ? ChatMessage.MessageType.IMAGE : ChatMessage.MessageType.TEXT)
+                .build();
+    }
+    
+    /**
+     * 读取可选的字符串字段，客户端传入其他类型时拒绝该条消息而不是抛出 ClassCastException
+     */
+    private static String stringField(Map<String, Object> data, String name) {
+        Object value = data.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException("Invalid field: " + name);
         }
+        return (String) value;
     }
     
-    // 发送消息给指定用户
-    public void sendMessageToUser(String userId, ChatMessage message) {
-        Set<SocketIOClient> clients = userClients.get(userId);
-        boolean messageSent = false;
-        
-        if (clients != null && !clients.isEmpty()) {
-            Map<String, Object> messageData = convertToClientFormat(message);
-            log.info("Sending message to user: {}, messageId: {}, clients: {}", userId, message.getId(), clients.size());
-            
-            for (SocketIOClient client : clients) {
-                try {
-                    client.sendEvent("newMessage", messageData);
-                    messageSent = true;
-                    log.debug("Message sent to client: {}", client.getSessionId());
-                } catch (Exception e) {
-                    log.error("Failed to send message to client: {}", client.getSessionId(), e);
-                }
+    /**
+     * 消息中的图片只保存内容地址
+     * imageId 引用已上传完成的内容；旧客户端直接发送的 base64 data URL 先写入内容存储再替换为地址。
+     * 内容不存在、类型不在白名单内或存储失败时拒绝消息，不把原始数据留在消息中
+     */
+    private String resolveImage(String userId, String imageId, String image) {
+        if (imageId != null) {
+            UploadSession content = contentStore.getContent(imageId);
+            if (content == null || !userId.equals(content.getUserId())) {
+                log.warn("User {} referenced unknown content: {}", userId, imageId);
+                throw new IllegalArgumentException("Unknown image: " + imageId);
             }
+            return contentStore.getContentUrl(imageId);
+        }
+        if (image == null || !image.startsWith(DATA_URL_PREFIX)) {
+            return image;
         }
         
-        if (!messageSent) {
-            log.warn("Failed to send message to user: {}, messageId: {}", userId, message.getId());
+        int separator = image.indexOf(BASE64_MARKER);
+        String contentType = separator < 0 ? null : image.substring(DATA_URL_PREFIX.length(), separator);
+        if (contentType == null || !ContentStore.IMAGE_TYPES.contains(contentType)) {
+            throw new IllegalArgumentException("Unsupported image type: " + contentType);
+        }
+        try {
+            byte[] data = Base64.getDecoder().decode(image.substring(separator + BASE64_MARKER.length()));
+            String contentId = contentStore.store(userId, contentType, data);
+            ChatMetrics.counter("socketio.image.inline.externalized").inc();
+            return contentStore.getContentUrl(contentId);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid image: " + e.getMessage(), e);
+        } catch (IOException e) {
+            log.error("Failed to store inline image from user {}", userId, e);
+            throw new IllegalArgumentException("Failed to store image", e);
         }
     }
     
-    // 发送消息给房间内所有用户
-    public void sendMessageToRoom(String roomId, ChatMessage message) {
-        // 转换为客户端期望的格式
-        Map<String, Object> messageData = convertToClientFormat(message);
+    // 批量消息的逐条校验，返回错误描述，合法时返回 null
+    private String validateMessage(ChatMessage message) {
+        if (message.getRoomId() == null && message.getReceiverId() == null) {
+            return "Missing roomId or receiverId";
+        }
+        if ((message.getContent() == null || message.getContent().isEmpty()) && message.getImage() == null) {
+            return "Empty message";
+        }
+        return null;
+    }
+    
+    // 处理获取在线用户请求
+    private void handleGetOnlineUsers(SocketIOClient client, Object data, AckRequest ackRequest) {
+        String userId = client.get("userId");
+        if (userId == null || !ackRequest.isAckRequested()) {
+            return;
+        }
+        
+        List<Map<String, Object>> userList = getOnlineUserList(userId);
         
-        // 发送给房间内所有客户端
-        server.getRoomOperations(roomId).sendEvent("newMessage", messageData);
+        // 发送响应
+        ackRequest.sendAckData(userList);
+        log.debug("Sent online users list to client: {}, users count: {}", 
+            client.getSessionId(), userList.size());
     }
     
-    // 将消息转换为客户端期望的格式
-    private Map<String, Object> convertToClientFormat(ChatMessage message) {
-        Map<String, Object> result = new HashMap<>();
+    // 处理在线状态同步请求：带 sinceVersion 时返回该版本之后的增量，否则（或增量已被淘汰时）返回快照
+    private void handleGetPresence(SocketIOClient client, Map<String, Object> data, AckRequest ackRequest) {
+        if (client.get("userId") == null || !ackRequest.isAckRequested()) {
+            return;
+        }
         
-        // 基本字段
-        result.put("_id", message.getId());
-        result.put("messageId", message.getId());
-        result.put("senderId", message.getSenderId());
-        result.put("receiverId", message.getReceiverId());
-        result.put("timestamp", message.getTimestamp());
-        result.put("createdAt", message.getTimestamp());
-        result.put("type", message.getType().toString().toLowerCase());
+        // 先读版本再取数据，快照可能比版本新，客户端按版本号再取增量时重复应用是幂等的
+        long version = presenceService.getVersion();
+        List<PresenceDelta> deltas = null;
+        Object since = data != null ? data.get("sinceVersion") : null;
+        if (since instanceof Number) {
+            deltas = presenceService.getDeltasSince(((Number) since).longValue());
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("full", deltas == null);
+        response.put("users", deltas != null ? deltas : presenceService.getSnapshot());
+        response.put("version", version);
+        ackRequest.sendAckData(response);
+    }
+    
+    // 会话数在 0/1 之间切换后同步用户在线状态
+    // 以注册表的当前状态为准而不是触发时的方向，这样并发的上线/下线副作用乱序执行时最终状态仍然正确
+    private void syncPresence(String userId) {
+        PresenceDelta delta = presenceService.setOnline(userId, sessionHub.isOnline(userId));
+        if (delta == null) {
+            return;
+        }
         
-        // 消息内容 - 同时支持图片和文字
-        result.put("content", message.getContent());
-        result.put("text", message.getContent());
-        if (message.getType() == ChatMessage.MessageType.IMAGE) {
-            result.put("image", message.getImage());
+        User user = userService.getUserById(userId);
+        if (user != null) {
+            user.setOnline(delta.isOnline());
+            userService.updateUser(user);
+        }
+        broadcastPresence(delta);
+    }
+    
+    // 广播在线状态增量
+    private void broadcastPresence(PresenceDelta delta) {
+        Map<String, Object> statusData = new HashMap<>();
+        statusData.put("userId", delta.getUserId());
+        statusData.put("online", delta.isOnline());
+        statusData.put("version", delta.getVersion());
+        statusData.put("lastUpdate", System.currentTimeMillis());
+        
+        // 广播给所有在线用户
+        server.getBroadcastOperations().sendEvent(USER_STATUS_EVENT, statusData);
+        log.info("Broadcasting user {} status change to {}, version {}", 
+            delta.getUserId(), delta.isOnline(), delta.getVersion());
+    }
+    
+    /**
+     * 限速向所有客户端广播系统公告，公告只编码一次
+     * @param perSecond 每秒投递的客户端数量
+     */
+    public PacedBroadcast<SocketIOClient> broadcastAnnouncement(String content, int perSecond) {
+        Map<String, Object> announcement = new HashMap<>();
+        announcement.put("content", content);
+        announcement.put("timestamp", System.currentTimeMillis());
+        RawValue payload;
+        try {
+            payload = new RawValue(new SerializedString(objectMapper.writeValueAsString(announcement)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to encode announcement", e);
         }
         
-        // 可选字段
-        if (message.getRoomId() != null) {
-            result.put("roomId", message.getRoomId());
+        List<SocketIOClient> clients = new ArrayList<>(server.getAllClients());
+        return new PacedBroadcast<>(clients, perSecond, wave -> {
+            for (SocketIOClient client : wave) {
+                try {
+                    client.sendEvent("announcement", payload);
+                } catch (Exception e) {
+                    log.error("Failed to send announcement to client: {}", client.getSessionId(), e);
+                }
+            }
+        }, () -> { }).start();
+    }
+    
+    // 发送消息给指定用户在所有传输层上的会话
+    public void sendMessageToUser(String userId, ChatMessage message) {
+        sessionHub.sendMessageToUser(userId, message);
+    }
+    
+    // 发送消息给房间在所有传输层上的成员，批量模式的房间由 SessionHub 统一聚合
+    public void sendMessageToRoom(String roomId, ChatMessage message) {
+        sessionHub.sendMessageToRoom(roomId, message);
+    }
+    
+    // SessionHub 的房间投递：单条推送为一个 newMessage 事件，批量推送为一个 newMessages 事件
+    private void deliverToRoom(String roomId, ChatPush push) {
+        if (!push.isBatch()) {
+            sendToRoom(roomId, push.getMessage(), null);
+            return;
         }
         
-        // 添加发送者信息
-        User sender = userService.getUserById(message.getSenderId());
-        if (sender != null) {
-            Map<String, Object> senderInfo = new HashMap<>();
-            senderInfo.put("id", sender.getId());
-            senderInfo.put("username", sender.getUsername());
-            senderInfo.put("fullName", sender.getFullName());
-            senderInfo.put("profilePic", sender.getProfilePicture());
-            result.put("sender", senderInfo);
+        Collection<SocketIOClient> members = server.getRoomOperations(roomId).getClients();
+        if (members.isEmpty()) {
+            return;
+        }
+        List<String> messages = new ArrayList<>(push.getBatch().size());
+        for (ChatPush item : push.getBatch()) {
+            messages.add(clientMessageEncoder.encode(item.getMessage()).getValue());
+        }
+        RawValue payload = new RawValue(new SerializedString("[" + String.join(",", messages) + "]"));
+        int recipients = deliverToMembers(roomId, members, null, "newMessages", payload);
+        ChatMetrics.recordFanout("socketio", 1, recipients);
+        ChatMetrics.histogram("socketio.batch.size").update(messages.size());
+    }
+    
+    // 发送消息给房间内的客户端，可排除一个客户端；消息只编码一次
+    private void sendToRoom(String roomId, ChatMessage message, SocketIOClient excluded) {
+        Collection<SocketIOClient> members = server.getRoomOperations(roomId).getClients();
+        if (members.isEmpty()) {
+            return;
         }
         
-        return result;
+        RawValue payload = encodeClientMessage(message);
+        int recipients = deliverToMembers(roomId, members, excluded, "newMessage", payload);
+        ChatMetrics.recordFanout("socketio", 1, recipients);
+    }
+    
+    // 小房间在当前线程直接发送；大房间（或该房间仍有分块在投递时）由 largeRoomFanout 排队分块并行发送
+    private int deliverToMembers(String roomId, Collection<SocketIOClient> members, SocketIOClient excluded,
+                                 String event, Object payload) {
+        List<SocketIOClient> recipients = new ArrayList<>(members.size());
+        for (SocketIOClient client : members) {
+            if (excluded == null || !client.getSessionId().equals(excluded.getSessionId())) {
+                recipients.add(client);
+            }
+        }
+        return largeRoomFanout.submitOrRun(roomId, recipients, client -> client.sendEvent(event, payload));
     }
     
-    // 将用户对象转换为客户端期望的格式
-    private Map<String, Object> convertUserToClientFormat(User user) {
-        Map<String, Object> result = new HashMap<>();
-        result.put("id", user.getId());
-        result.put("fullName", user.getFullName());
-        result.put("username", user.getUsername());
-        result.put("email", user.getEmail());
-        result.put("profilePic", user.getProfilePicture());
-        result.put("online", user.isOnline());
-        return result;
+    /**
+     * 将消息编码为客户端格式的 JSON，返回可被多个客户端复用的原始值。
+     * 编码结果缓存在消息上，历史查询和后续推送不再重复序列化，每个连接写出时只做内存拷贝。
+     */
+    private RawValue encodeClientMessage(ChatMessage message) {
+        return new RawValue(clientMessageEncoder.encode(message));
     }
-
+    
     // 处理加入房间请求
     private void handleJoinRoom(SocketIOClient client, Map<String, Object> data, AckRequest ackRequest) {
         String userId = client.get("userId");
@@ -527,11 +678,7 @@ public class SocketIOAdapter {
                     .build();
             
             // 发送给房间内所有客户端（除了刚加入的客户端）
-            for (SocketIOClient c : server.getRoomOperations(roomId).getClients()) {
-                if (!c.getSessionId().equals(client.getSessionId())) {
-                    c.sendEvent("newMessage", convertToClientFormat(joinMessage));
-                }
-            }
+            sendToRoom(roomId, joinMessage, client);
         }
         
         // 发送确认
@@ -604,48 +751,24 @@ public class SocketIOAdapter {
     private void checkHeartbeatTimeout() {
         long currentTime = System.currentTimeMillis();
         long timeout = 120000; // 增加到120秒超时
-        for (Map.Entry<String, Set<SocketIOClient>> entry : userClients.entrySet()) {
-            String userId = entry.getKey();
-            Set<SocketIOClient> clients = entry.getValue();
-            clients.removeIf(client -> {
-                Long lastPingTime = client.get("lastPingTime");
-                if (lastPingTime == null || currentTime - lastPingTime > timeout) {
-                    log.warn("Client {} heartbeat timeout (last ping: {}ms ago), disconnecting", 
-                        client.getSessionId(), 
-                        lastPingTime != null ? currentTime - lastPingTime : -1);
-                    client.disconnect();
-                    return true;
-                }
-                return false;
-            });
-            if (clients.isEmpty()) {
-                User user = userService.getUserById(userId);
-                if (user != null) {
-                    user.setOnline(false);
-                    userService.updateUser(user);
-                    broadcastUserStatus(userId, false);
-                    log.info("User {} marked as offline due to no active connections", userId);
-                }
+        forEachSession((userId, session) -> {
+            SocketIOClient client = session.client();
+            Long lastPingTime = client.get("lastPingTime");
+            if (lastPingTime == null || currentTime - lastPingTime > timeout) {
+                log.warn("Client {} heartbeat timeout (last ping: {}ms ago), disconnecting", 
+                    client.getSessionId(), 
+                    lastPingTime != null ? currentTime - lastPingTime : -1);
+                expireSession(userId, session);
             }
-        }
+        });
     }
-
-    private void updateUserOnlineStatus(String userId, boolean isOnline) {
-        User user = userService.getUserById(userId);
-        if (user != null && user.isOnline() != isOnline) {
-            user.setOnline(isOnline);
-            userService.updateUser(user);
-            
-            // 广播用户状态更新
-            Map<String, Object> statusUpdate = new HashMap<>();
-            statusUpdate.put("type", "userStatus");
-            statusUpdate.put("userId", userId);
-            statusUpdate.put("online", isOnline);
-            statusUpdate.put("timestamp", System.currentTimeMillis());
-            
-            // 广播给所有连接的客户端
-            server.getBroadcastOperations().sendEvent("userStatus", statusUpdate);
-            log.info("User {} online status updated to: {}", userId, isOnline);
+    
+    // 注销并断开超时的会话；与断开回调竞争时只有一方能拿到"最后一个会话"并触发下线
+    private void expireSession(String userId, SocketIOSession session) {
+        boolean last = sessionHub.unregister(userId, session);
+        session.client().disconnect();
+        if (last) {
+            log.info("User {} marked as offline due to no active connections", userId);
         }
     }
 
@@ -653,55 +776,36 @@ public class SocketIOAdapter {
     @Scheduled(fixedRate = 30000) // 每30秒执行一次
     public void cleanupInactiveConnections() {
         long now = System.currentTimeMillis();
-        Set<String> processedUsers = new HashSet<>();
         
-        userClients.forEach((userId, clients) -> {
-            if (processedUsers.contains(userId)) {
-                return;
-            }
-            
-            boolean hasActiveConnection = false;
-            Iterator<SocketIOClient> iterator = clients.iterator();
-            
-            while (iterator.hasNext()) {
-                SocketIOClient client = iterator.next();
-                Long lastPingTime = client.get("lastPingTime");
-                
-                if (lastPingTime == null || now - lastPingTime > 30000) {
-                    // 移除不活跃的连接
-                    iterator.remove();
-                    client.disconnect();
-                    log.info("Removing inactive connection for user {}: {}", userId, client.getSessionId());
-                } else {
-                    hasActiveConnection = true;
-                }
+        forEachSession((userId, session) -> {
+            Long lastPingTime = session.client().get("lastPingTime");
+            if (lastPingTime == null || now - lastPingTime > 30000) {
+                // 移除不活跃的连接
+                log.info("Removing inactive connection for user {}: {}", userId, session.client().getSessionId());
+                expireSession(userId, session);
             }
-            
-            // 如果没有活跃连接，更新用户状态
-            if (!hasActiveConnection) {
-                User user = userService.getUserById(userId);
-                if (user != null && user.isOnline()) {
-                    user.setOnline(false);
-                    userService.updateUser(user);
-                    broadcastUserStatus(userId, false);
-                    log.info("User {} marked as offline due to no active connections", userId);
-                }
-                
-                // 如果没有连接，清理用户客户端集合
-                if (clients.isEmpty()) {
-                    userClients.remove(userId);
+        });
+    }
+    
+    // 遍历注册表中的 Socket.IO 会话，其他传输层的会话由各自的服务器管理
+    private void forEachSession(BiConsumer<String, SocketIOSession> action) {
+        sessionHub.forEach((userId, sessions) -> {
+            for (ChatSession session : sessions) {
+                if (session instanceof SocketIOSession socketIOSession) {
+                    action.accept(userId, socketIOSession);
                 }
             }
-            
-            processedUsers.add(userId);
         });
     }
+    
+    /**
+     * Socket.IO 客户端的会话，私聊推送作为 newMessage 事件发送
+     */
+    private record SocketIOSession(SocketIOClient client, ClientMessageEncoder encoder) implements ChatSession {
+        
+        @Override
+        public void push(ChatPush push) {
+            client.sendEvent("newMessage", new RawValue(encoder.encode(push.getMessage())));
+        }
+    }
 }
-
-
-
-
-
-
-
-
@@ -0,0 +1,459 @@
+package com.example.chat.core.server;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.core.codec.BinaryPushEncoder;
+import com.example.chat.core.codec.ProtocolNegotiator;
+import com.example.chat.core.handler.BackpressureHandler;
+import com.example.chat.core.handler.HeartbeatHandler;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.ChatRoom;
+import com.example.chat.model.User;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.request.LoginRequest;
+import com.example.chat.protocol.request.MessageHistoryRequest;
+import com.example.chat.protocol.request.RoomRequest;
+import com.example.chat.protocol.response.*;
+import com.example.chat.service.JwtService;
+import com.example.chat.service.MessageService;
+import com.example.chat.service.RoomService;
+import com.example.chat.service.UserService;
+import com.example.chat.util.ChannelUtil;
+import com.example.chat.util.MessageBroadcaster;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 二进制协议的原生 TCP 服务器
+ * 供机器人和服务间集成使用，跳过 HTTP 升级和 JSON 文本帧。v1/v2 客户端共用同一端口，由 {@link ProtocolNegotiator} 区分。
+ * 会话和房间分组与其他传输层共用 {@link SessionHub}，房间消息会同时投递给 Socket.IO、WebSocket 和 TCP 成员。
+ * 推送在写出时由 {@link BinaryPushEncoder} 按连接协商出的协议版本编码，每个版本只编码一次。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TcpChatServer implements ChatServer {
+
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = 200;
+
+    private final UserService userService;
+    private final RoomService roomService;
+    private final MessageService messageService;
+    private final JwtService jwtService;
+    private final ChatConfig chatConfig;
+    private final SessionHub sessionHub;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+    private EventLoopAffinity affinity;
+    private BinaryPushEncoder pushEncoder;
+
+    @Override
+    @PostConstruct
+    public void start() throws Exception {
+        ChatConfig.Tcp tcp = chatConfig.getTcp();
+        if (!tcp.isEnabled()) {
+            log.info("TCP server disabled");
+            return;
+        }
+
+        pushEncoder = new BinaryPushEncoder(tcp.getV1Serializer(), tcp.getV2Serializer());
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        affinity = new EventLoopAffinity("tcp", workerGroup);
+
+        ChatConfig.Backpressure backpressure = chatConfig.getBackpressure();
+
+        try {
+            ServerBootstrap bootstrap = new ServerBootstrap();
+            bootstrap.group(bossGroup, workerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                            backpressure.getLowWaterMark(), backpressure.getHighWaterMark()))
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ChannelPipeline pipeline = ch.pipeline();
+
+                            // 空闲检测，客户端需定期发送 HEARTBEAT_REQUEST
+                            pipeline.addLast(new IdleStateHandler(tcp.getReaderIdleSeconds(), 0, 0, TimeUnit.SECONDS));
+                            pipeline.addLast(new HeartbeatHandler());
+                            // 协商协议版本后在此处安装帧解码器和编解码器
+                            pipeline.addLast(new ProtocolNegotiator(tcp.getMaxFrameLength(),
+                                    tcp.getV1Serializer(), tcp.getV2Serializer()));
+                            // 慢消费者背压
+                            pipeline.addLast(BackpressureHandler.NAME, new BackpressureHandler("tcp",
+                                    backpressure.getMaxPendingMessages(), backpressure.getOverflowPolicy()));
+                            // 房间和私聊推送按协议版本编码
+                            pipeline.addLast(pushEncoder);
+                            // 业务处理器
+                            pipeline.addLast(new BinaryProtocolHandler());
+                        }
+                    });
+
+            serverChannel = bootstrap.bind(tcp.getPort()).sync().channel();
+            log.info("TCP server started on port {}", getPort());
+
+        } catch (Exception e) {
+            log.error("Failed to start TCP server", e);
+            stop();
+            throw e;
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+        }
+        if (workerGroup != null) {
+            workerGroup.shutdownGracefully();
+        }
+        log.info("TCP server stopped");
+    }
+
+    /**
+     * 实际监听的端口（配置为0时由系统分配）
+     */
+    public int getPort() {
+        return serverChannel != null ? ((InetSocketAddress) serverChannel.localAddress()).getPort() : -1;
+    }
+
+    /**
+     * 发送消息给指定用户在所有传输层上的会话
+     */
+    @Override
+    public void sendMessageToUser(String userId, ChatMessage message) {
+        sessionHub.sendMessageToUser(userId, message);
+    }
+
+    /**
+     * 发送消息到聊天室在所有传输层上的成员
+     */
+    @Override
+    public void sendMessageToRoom(String roomId, ChatMessage message) {
+        sessionHub.sendMessageToRoom(roomId, message);
+    }
+
+    /**
+     * 二进制协议消息处理器
+     */
+    private class BinaryProtocolHandler extends SimpleChannelInboundHandler<ProtocolMessage> {
+
+        // 登录校验通过后置位，迁移 EventLoop 期间也算已登录，连接上的身份不能再更换
+        private boolean authenticated;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ProtocolMessage msg) {
+            MessageType type = msg.getType();
+            switch (type) {
+                case HEARTBEAT_REQUEST:
+                    reply(ctx, msg, HeartbeatResponse.builder().serverTime(System.currentTimeMillis()).build(),
+                            MessageType.HEARTBEAT_RESPONSE);
+                    return;
+                case LOGIN_REQUEST:
+                    handleLogin(ctx, (LoginRequest) msg);
+                    return;
+                default:
+                    break;
+            }
+
+            String userId = ChannelUtil.getUserId(ctx.channel());
+            if (userId == null) {
+                sendError(ctx, msg, StatusCode.UNAUTHORIZED, "Not authenticated");
+                return;
+            }
+
+            switch (type) {
+                case LOGOUT_REQUEST:
+                    handleLogout(ctx, msg);
+                    break;
+                case CHAT_REQUEST:
+                    handleChat(ctx, userId, (ChatRequest) msg);
+                    break;
+                case ROOM_CREATE:
+                    handleCreateRoom(ctx, userId, (RoomRequest) msg);
+                    break;
+                case ROOM_JOIN:
+                    handleJoinRoom(ctx, userId, (RoomRequest) msg);
+                    break;
+                case ROOM_LEAVE:
+                    handleLeaveRoom(ctx, userId, (RoomRequest) msg);
+                    break;
+                case ROOM_LIST:
+                    handleListRooms(ctx, userId, msg);
+                    break;
+                case ROOM_REQUEST:
+                    handleGetRoom(ctx, (RoomRequest) msg);
+                    break;
+                case MESSAGE_HISTORY_REQUEST:
+                    handleHistory(ctx, userId, (MessageHistoryRequest) msg);
+                    break;
+                default:
+                    sendError(ctx, msg, StatusCode.BAD_REQUEST, "Unsupported message type: " + type);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            Channel channel = ctx.channel();
+            String userId = ChannelUtil.getUserId(channel);
+            if (userId != null && sessionHub.unregister(userId, new ChatSession.ChannelSession(channel))) {
+                log.debug("Last session of user {} closed", userId);
+            }
+            MessageBroadcaster.removeChannel(channel);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.error("TCP connection error: {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+
+        /**
+         * 登录：username 非空时按账号密码登录，否则 password 字段携带已签发的 token
+         */
+        private void handleLogin(ChannelHandlerContext ctx, LoginRequest request) {
+            if (authenticated) {
+                // 否则旧身份的会话和房间分组会一直留在这个连接上
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Already authenticated");
+                return;
+            }
+            String userId;
+            String token;
+            if (request.getUsername() != null) {
+                User user = userService.login(request.getUsername(), request.getPassword());
+                userId = user != null ? user.getId() : null;
+                token = userId != null ? jwtService.generateToken(userId) : null;
+            } else {
+                token = request.getPassword();
+                userId = userService.validateToken(token);
+            }
+
+            if (userId == null) {
+                sendError(ctx, request, StatusCode.UNAUTHORIZED, "Authentication failed")
+                        .addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            authenticated = true;
+
+            Channel channel = ctx.channel();
+            List<String> roomIds = roomService.getUserRooms(userId).stream()
+                    .map(ChatRoom::getId)
+                    .collect(Collectors.toList());
+            User user = userService.getUserById(userId);
+            LoginResponse response = LoginResponse.builder()
+                    .token(token)
+                    .userId(userId)
+                    .username(user != null ? user.getUsername() : null)
+                    .build();
+
+            // 首次登录时把会话迁移到最热房间所在的 EventLoop，迁移完成后才加入注册表
+            if (chatConfig.getAffinity().isMigrateSessions()) {
+                affinity.migrate(channel, affinity.preferredLoop(roomIds),
+                        () -> completeLogin(channel, userId, roomIds, request, response));
+            } else {
+                completeLogin(channel, userId, roomIds, request, response);
+            }
+        }
+
+        private void completeLogin(Channel channel, String userId, List<String> roomIds,
+                                   LoginRequest request, LoginResponse response) {
+            ChannelUtil.setUserId(channel, userId);
+            if (sessionHub.register(userId, new ChatSession.ChannelSession(channel))) {
+                log.debug("First session of user {}", userId);
+            }
+            roomIds.forEach(roomId -> MessageBroadcaster.addToRoom(roomId, channel));
+
+            prepare(request, response, MessageType.LOGIN_RESPONSE, StatusCode.SUCCESS);
+            channel.writeAndFlush(response);
+            log.debug("User authenticated over TCP: {}", userId);
+        }
+
+        private void handleLogout(ChannelHandlerContext ctx, ProtocolMessage request) {
+            LogoutResponse response = LogoutResponse.builder().success(true).message("Logged out").build();
+            reply(ctx, request, response, MessageType.LOGOUT_RESPONSE).addListener(ChannelFutureListener.CLOSE);
+        }
+
+        private void handleChat(ChannelHandlerContext ctx, String userId, ChatRequest request) {
+            if (request.getRoomId() == null || request.getContent() == null) {
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Missing required fields");
+                return;
+            }
+            // 与历史记录相同，只有房间成员可以发言，否则消息会扇出到所有传输层的成员
+            if (!roomService.isUserInRoom(request.getRoomId(), userId)) {
+                sendError(ctx, request, StatusCode.FORBIDDEN, "Not a member of room " + request.getRoomId());
+                return;
+            }
+
+            ChatMessage chatMessage = ChatMessage.builder()
+                    .senderId(userId)
+                    .content(request.getContent())
+                    .roomId(request.getRoomId())
+                    .timestamp(System.currentTimeMillis())
+                    .type(ChatMessage.MessageType.TEXT)
+                    .build();
+            messageService.saveMessage(chatMessage);
+
+            reply(ctx, request, new ChatResponse(true, chatMessage.getId()), MessageType.CHAT_RESPONSE);
+            sessionHub.sendMessageToRoom(request.getRoomId(), chatMessage);
+        }
+
+        private void handleCreateRoom(ChannelHandlerContext ctx, String userId, RoomRequest request) {
+            if (request.getRoomName() == null) {
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Missing room name");
+                return;
+            }
+            ChatRoom room = roomService.createRoom(request.getRoomName(), userId);
+            room.setDescription(request.getDescription());
+            room.setPrivate(request.isPrivate());
+            roomService.updateRoom(room);
+            MessageBroadcaster.addToRoom(room.getId(), ctx.channel());
+            reply(ctx, request, toRoomResponse(room, "Room created"), MessageType.ROOM_RESPONSE);
+        }
+
+        private void handleJoinRoom(ChannelHandlerContext ctx, String userId, RoomRequest request) {
+            ChatRoom room = request.getRoomId() != null ? roomService.getRoomById(request.getRoomId()) : null;
+            if (room == null) {
+                sendError(ctx, request, StatusCode.NOT_FOUND, "Room not found");
+                return;
+            }
+            roomService.addUserToRoom(room.getId(), userId);
+            MessageBroadcaster.addToRoom(room.getId(), ctx.channel());
+            reply(ctx, request, toRoomResponse(room, "Joined"), MessageType.ROOM_RESPONSE);
+        }
+
+        private void handleLeaveRoom(ChannelHandlerContext ctx, String userId, RoomRequest request) {
+            if (request.getRoomId() == null) {
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Missing room id");
+                return;
+            }
+            roomService.removeUserFromRoom(request.getRoomId(), userId);
+            MessageBroadcaster.removeFromRoom(request.getRoomId(), ctx.channel());
+
+            RoomResponse response = new RoomResponse();
+            response.setRoomId(request.getRoomId());
+            response.setSuccess(true);
+            response.setMessage("Left");
+            reply(ctx, request, response, MessageType.ROOM_RESPONSE);
+        }
+
+        /**
+         * 房间列表：每个房间一条 ROOM_RESPONSE（共用请求ID），最后一条 roomId 为空、message 为房间总数
+         */
+        private void handleListRooms(ChannelHandlerContext ctx, String userId, ProtocolMessage request) {
+            List<ChatRoom> rooms = roomService.getUserRooms(userId);
+            for (ChatRoom room : rooms) {
+                ctx.write(prepare(request, toRoomResponse(room, null), MessageType.ROOM_RESPONSE, StatusCode.SUCCESS));
+            }
+            RoomResponse end = new RoomResponse();
+            end.setSuccess(true);
+            end.setMessage(String.valueOf(rooms.size()));
+            reply(ctx, request, end, MessageType.ROOM_RESPONSE);
+        }
+
+        private void handleGetRoom(ChannelHandlerContext ctx, RoomRequest request) {
+            ChatRoom room = request.getRoomId() != null ? roomService.getRoomById(request.getRoomId()) : null;
+            if (room == null) {
+                sendError(ctx, request, StatusCode.NOT_FOUND, "Room not found");
+                return;
+            }
+            reply(ctx, request, toRoomResponse(room, null), MessageType.ROOM_RESPONSE);
+        }
+
+        /**
+         * 历史消息：按时间倒序，startTime/endTime 大于0时限定时间范围，lastMessageId 为上一页最后一条消息的ID
+         */
+        private void handleHistory(ChannelHandlerContext ctx, String userId, MessageHistoryRequest request) {
+            String roomId = request.getRoomId();
+            if (roomId == null) {
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Missing room id");
+                return;
+            }
+            if (!roomService.isUserInRoom(roomId, userId)) {
+                sendError(ctx, request, StatusCode.FORBIDDEN, "Not a member of room " + roomId);
+                return;
+            }
+
+            int limit = request.getLimit() > 0 ? Math.min(request.getLimit(), MAX_HISTORY_LIMIT) : DEFAULT_HISTORY_LIMIT;
+            // 多取一条用来判断是否还有下一页
+            List<ChatMessage> page = messageService.getRoomMessages(roomId, request.getLastMessageId(),
+                    request.getStartTime(), request.getEndTime(), limit + 1);
+            if (page == null) {
+                sendError(ctx, request, StatusCode.BAD_REQUEST, "Unknown cursor " + request.getLastMessageId());
+                return;
+            }
+            boolean hasMore = page.size() > limit;
+            if (hasMore) {
+                page = new ArrayList<>(page.subList(0, limit));
+            }
+
+            MessageHistoryResponse response = MessageHistoryResponse.builder()
+                    .roomId(roomId)
+                    .messages(page)
+                    .hasMore(hasMore)
+                    .build();
+            reply(ctx, request, response, MessageType.MESSAGE_HISTORY_RESPONSE);
+        }
+
+        private RoomResponse toRoomResponse(ChatRoom room, String message) {
+            RoomResponse response = new RoomResponse();
+            response.setRoomId(room.getId());
+            response.setRoomName(room.getName());
+            response.setDescription(room.getDescription());
+            response.setPrivate(room.isPrivate());
+            response.setSuccess(true);
+            response.setMessage(message);
+            return response;
+        }
+
+        private ChannelFuture reply(ChannelHandlerContext ctx, ProtocolMessage request, ProtocolMessage response,
+                                    MessageType type) {
+            return ctx.writeAndFlush(prepare(request, response, type, StatusCode.SUCCESS));
+        }
+
+        private ChannelFuture sendError(ChannelHandlerContext ctx, ProtocolMessage request, StatusCode status,
+                                        String message) {
+            ErrorMessage error = ErrorMessage.builder()
+                    .errorCode(String.valueOf(status.getCode()))
+                    .message(message)
+                    .build();
+            return ctx.writeAndFlush(prepare(request, error, MessageType.ERROR, status));
+        }
+
+        /**
+         * 响应沿用请求的请求ID，客户端据此关联请求和响应
+         */
+        private ProtocolMessage prepare(ProtocolMessage request, ProtocolMessage response, MessageType type,
+                                        StatusCode status) {
+            response.setType(type);
+            response.setRequestId(request.getRequestId());
+            response.setStatusCode((short) status.getCode());
+            return response;
+        }
+    }
+}
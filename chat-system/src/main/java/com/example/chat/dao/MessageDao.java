@@ -1,6 +1,7 @@
 package com.example.chat.dao;
 
 import com.example.chat.model.ChatMessage;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface MessageDao {
@@ -12,6 +13,19 @@ public interface MessageDao {
      */
     ChatMessage save(ChatMessage message);
     
+    /**
+     * 批量保存消息，实现应尽量在一次存储交互中完成
+     * @param messages 要保存的消息
+     * @return 保存后的消息，顺序与参数一致
+     */
+    default List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        List<ChatMessage> saved = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            saved.add(save(message));
+        }
+        return saved;
+    }
+    
     /**
      * 根据ID查找消息
      * @param id 消息ID
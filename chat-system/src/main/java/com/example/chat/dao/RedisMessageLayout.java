@@ -0,0 +1,15 @@
+package com.example.chat.dao;
+
+/**
+ * 消息在 Redis 中的存储结构，由 chat.redis.message-layout 选择
+ */
+public enum RedisMessageLayout {
+    /**
+     * 每条消息一个字符串键，房间、用户、私聊各有一个按时间戳排序的 ZSET 索引（RedisMessageDao）
+     */
+    ZSET,
+    /**
+     * 每个房间或私聊会话一个 Stream，消息正文内联在条目中（RedisStreamMessageDao）
+     */
+    STREAM
+}
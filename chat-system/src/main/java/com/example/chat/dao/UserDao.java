@@ -1,7 +1,9 @@
 package com.example.chat.dao;
 
 import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public interface UserDao {
     User save(User user);
@@ -11,4 +13,25 @@ public interface UserDao {
     User update(User user); // 返回更新后的User对象
     void delete(String userId);
     List<User> findAll();
+
+    /**
+     * 获取所有在线用户，默认实现遍历全部用户
+     */
+    default List<User> findOnline() {
+        return findAll().stream()
+                .filter(User::isOnline)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 按游标分页获取在线用户，默认实现一次返回全部
+     * @param cursor 上一页返回的游标，首页传 "0"
+     * @param count 每页的大致数量
+     */
+    default UserPage findOnline(String cursor, int count) {
+        return UserPage.builder()
+                .users(findOnline())
+                .cursor(UserPage.END_CURSOR)
+                .build();
+    }
 }
@@ -6,6 +6,7 @@ import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,6 +27,17 @@ public class JpaMessageDao implements MessageDao {
         }
     }
 
+    @Override
+    public List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        List<ChatMessage> saved = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            saved.add(save(message));
+        }
+        // 整批只刷新一次，插入语句在同一次刷新中批量提交
+        entityManager.flush();
+        return saved;
+    }
+
     @Override
     public ChatMessage findById(String id) {
         return entityManager.find(ChatMessage.class, id);
@@ -5,10 +5,17 @@ import com.example.chat.model.ChatMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -16,6 +23,7 @@ import java.util.Set;
 @Slf4j
 @Repository
 @RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "chat.redis", name = "message-layout", havingValue = "ZSET", matchIfMissing = true)
 public class RedisMessageDao implements MessageDao {
     
     private final RedisTemplate<String, String> redisTemplate;
@@ -26,36 +34,25 @@ public class RedisMessageDao implements MessageDao {
     private static final String USER_MESSAGES_KEY = "user:messages:";
     private static final String PRIVATE_MESSAGES_KEY = "private:messages:";
     
+    // 不指定分页大小时返回的消息数
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    
+    // KEYS[1] 为消息正文，其余为索引集合；ARGV 依次为消息JSON、消息ID、时间戳
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SET', KEYS[1], ARGV[1]) " +
+            "for i = 2, #KEYS do redis.call('ZADD', KEYS[i], ARGV[3], ARGV[2]) end " +
+            "return #KEYS",
+            Long.class);
+    
     @Override
     public ChatMessage save(ChatMessage message) {
         try {
             // 将消息对象转换为JSON字符串
             String messageJson = objectMapper.writeValueAsString(message);
             
-            // 保存消息
-            String messageKey = MESSAGE_KEY + message.getId();
-            redisTemplate.opsForValue().set(messageKey, messageJson);
-            
-            // 如果是房间消息，添加到房间消息集合
-            if (message.getRoomId() != null && !message.getRoomId().isEmpty()) {
-                String roomMessagesKey = ROOM_MESSAGES_KEY + message.getRoomId();
-                redisTemplate.opsForZSet().add(roomMessagesKey, message.getId(), message.getTimestamp());
-            }
-            
-            // 添加到发送者的消息集合
-            String senderMessagesKey = USER_MESSAGES_KEY + message.getSenderId();
-            redisTemplate.opsForZSet().add(senderMessagesKey, message.getId(), message.getTimestamp());
-            
-            // 如果是私聊消息，添加到接收者的消息集合
-            if (message.getReceiverId() != null && !message.getReceiverId().isEmpty()) {
-                String receiverMessagesKey = USER_MESSAGES_KEY + message.getReceiverId();
-                redisTemplate.opsForZSet().add(receiverMessagesKey, message.getId(), message.getTimestamp());
-                
-                // 添加到私聊消息集合
-                String privateMessagesKey = getPrivateMessagesKey(message.getSenderId(), message.getReceiverId());
-                redisTemplate.opsForZSet().add(privateMessagesKey, message.getId(), message.getTimestamp());
-            }
-            
+            // 正文和所有索引由脚本在服务端一次写入，一次往返且不会留下孤立的索引
+            redisTemplate.execute(SAVE_SCRIPT, getMessageKeys(message),
+                    messageJson, message.getId(), String.valueOf(message.getTimestamp()));
             return message;
         } catch (Exception e) {
             log.error("Error saving message", e);
@@ -63,6 +60,66 @@ public class RedisMessageDao implements MessageDao {
         }
     }
     
+    /**
+     * 整批消息及其索引在一个管道中以 MULTI/EXEC 事务写入，只有一次网络往返，整批要么全部写入要么都不写入
+     */
+    @Override
+    public List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        try {
+            List<String> messageJsons = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                messageJsons.add(objectMapper.writeValueAsString(message));
+            }
+            
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.multi();
+                    for (int i = 0; i < messages.size(); i++) {
+                        writeMessage(ops, messages.get(i), messageJsons.get(i));
+                    }
+                    ops.exec();
+                    return null;
+                }
+            });
+            return messages;
+        } catch (Exception e) {
+            log.error("Error saving message batch", e);
+            return Collections.emptyList();
+        }
+    }
+    
+    /**
+     * 写入消息正文和各个索引
+     */
+    private void writeMessage(RedisOperations<String, String> ops, ChatMessage message, String messageJson) {
+        List<String> keys = getMessageKeys(message);
+        ops.opsForValue().set(keys.get(0), messageJson);
+        for (String indexKey : keys.subList(1, keys.size())) {
+            ops.opsForZSet().add(indexKey, message.getId(), message.getTimestamp());
+        }
+    }
+    
+    /**
+     * 消息涉及的键：第一个是正文，其余是按时间戳排序的索引集合
+     * 索引包括房间消息、发送者消息，私聊时还有接收者消息和私聊消息
+     */
+    private List<String> getMessageKeys(ChatMessage message) {
+        List<String> keys = new ArrayList<>(5);
+        keys.add(MESSAGE_KEY + message.getId());
+        if (message.getRoomId() != null && !message.getRoomId().isEmpty()) {
+            keys.add(ROOM_MESSAGES_KEY + message.getRoomId());
+        }
+        keys.add(USER_MESSAGES_KEY + message.getSenderId());
+        if (message.getReceiverId() != null && !message.getReceiverId().isEmpty()) {
+            keys.add(USER_MESSAGES_KEY + message.getReceiverId());
+            keys.add(getPrivateMessagesKey(message.getSenderId(), message.getReceiverId()));
+        }
+        return keys;
+    }
+    
     @Override
     public ChatMessage findById(String messageId) {
         try {
@@ -122,37 +179,13 @@ public class RedisMessageDao implements MessageDao {
     
     @Override
     public List<ChatMessage> findByRoomId(String roomId) {
-        return findByRoomId(roomId, 100, 0);
+        return findByRoomId(roomId, DEFAULT_PAGE_SIZE, 0);
     }
     
     // 辅助方法，用于分页获取房间消息
     public List<ChatMessage> findByRoomId(String roomId, int limit, long before) {
         try {
-            String roomMessagesKey = ROOM_MESSAGES_KEY + roomId;
-            
-            // 获取指定时间戳之前的消息ID
-            Set<String> messageIds;
-            if (before > 0) {
-                messageIds = redisTemplate.opsForZSet().reverseRangeByScore(
-                        roomMessagesKey, 0, before, 0, limit);
-            } else {
-                messageIds = redisTemplate.opsForZSet().reverseRange(roomMessagesKey, 0, limit - 1);
-            }
-            
-            if (messageIds == null || messageIds.isEmpty()) {
-                return Collections.emptyList();
-            }
-            
-            // 获取消息详情
-            List<ChatMessage> messages = new ArrayList<>();
-            for (String messageId : messageIds) {
-                ChatMessage message = findById(messageId);
-                if (message != null) {
-                    messages.add(message);
-                }
-            }
-            
-            return messages;
+            return findPage(ROOM_MESSAGES_KEY + roomId, limit, before);
         } catch (Exception e) {
             log.error("Error getting messages by room ID", e);
             return Collections.emptyList();
@@ -162,65 +195,74 @@ public class RedisMessageDao implements MessageDao {
     @Override
     public List<ChatMessage> findBetweenUsers(String userId1, String userId2, int limit, long before) {
         try {
-            String privateMessagesKey = getPrivateMessagesKey(userId1, userId2);
-            
-            // 获取指定时间戳之前的消息ID
-            Set<String> messageIds;
-            if (before > 0) {
-                messageIds = redisTemplate.opsForZSet().reverseRangeByScore(
-                        privateMessagesKey, 0, before, 0, limit);
-            } else {
-                messageIds = redisTemplate.opsForZSet().reverseRange(privateMessagesKey, 0, limit - 1);
-            }
-            
-            if (messageIds == null || messageIds.isEmpty()) {
-                return Collections.emptyList();
-            }
-            
-            // 获取消息详情
-            List<ChatMessage> messages = new ArrayList<>();
-            for (String messageId : messageIds) {
-                ChatMessage message = findById(messageId);
-                if (message != null) {
-                    messages.add(message);
-                }
-            }
-            
-            return messages;
+            return findPage(getPrivateMessagesKey(userId1, userId2), limit, before);
         } catch (Exception e) {
             log.error("Error getting messages between users", e);
             return Collections.emptyList();
         }
     }
     
-    // 辅助方法，不是接口的一部分
+    // 辅助方法，不是接口的一部分；返回最新的一页
     public List<ChatMessage> findByUserId(String userId) {
+        return findByUserId(userId, DEFAULT_PAGE_SIZE, 0);
+    }
+    
+    // 辅助方法，用于分页获取用户的消息
+    public List<ChatMessage> findByUserId(String userId, int limit, long before) {
         try {
-            String userMessagesKey = USER_MESSAGES_KEY + userId;
-            
-            // 获取用户的所有消息ID
-            Set<String> messageIds = redisTemplate.opsForZSet().reverseRange(userMessagesKey, 0, -1);
-            
-            if (messageIds == null || messageIds.isEmpty()) {
-                return Collections.emptyList();
-            }
-            
-            // 获取消息详情
-            List<ChatMessage> messages = new ArrayList<>();
-            for (String messageId : messageIds) {
-                ChatMessage message = findById(messageId);
-                if (message != null) {
-                    messages.add(message);
-                }
-            }
-            
-            return messages;
+            return findPage(USER_MESSAGES_KEY + userId, limit, before);
         } catch (Exception e) {
             log.error("Error getting messages by user ID", e);
             return Collections.emptyList();
         }
     }
     
+    /**
+     * 按时间倒序读取一页消息：一次 ZSET 查询取得消息ID，再用一次 MGET 取回所有正文
+     * @param before 只返回该时间戳之前（含）的消息，0 表示从最新的开始
+     */
+    private List<ChatMessage> findPage(String indexKey, int limit, long before) {
+        Set<String> messageIds;
+        if (before > 0) {
+            messageIds = redisTemplate.opsForZSet().reverseRangeByScore(indexKey, 0, before, 0, limit);
+        } else {
+            messageIds = redisTemplate.opsForZSet().reverseRange(indexKey, 0, limit - 1);
+        }
+        
+        if (messageIds == null || messageIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return findByIds(messageIds);
+    }
+    
+    /**
+     * 批量获取消息详情，顺序与消息ID一致，已删除或无法解析的消息被跳过
+     */
+    private List<ChatMessage> findByIds(Collection<String> messageIds) {
+        List<String> messageKeys = new ArrayList<>(messageIds.size());
+        for (String messageId : messageIds) {
+            messageKeys.add(MESSAGE_KEY + messageId);
+        }
+        
+        List<String> messageJsons = redisTemplate.opsForValue().multiGet(messageKeys);
+        if (messageJsons == null) {
+            return Collections.emptyList();
+        }
+        
+        List<ChatMessage> messages = new ArrayList<>(messageJsons.size());
+        for (String messageJson : messageJsons) {
+            if (messageJson == null) {
+                continue;
+            }
+            try {
+                messages.add(objectMapper.readValue(messageJson, ChatMessage.class));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable message: {}", e.getMessage());
+            }
+        }
+        return messages;
+    }
+    
     /**
      * 获取私聊消息的键
      */
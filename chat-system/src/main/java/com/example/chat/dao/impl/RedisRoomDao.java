@@ -7,134 +7,116 @@ import com.example.chat.util.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * 基于 Redis 的房间存储
+ * 房间信息保存为 JSON，成员关系只保存在房间成员集合和用户房间集合中，JSON 里的 members 不再写入，读取时由成员集合填充。
+ * 每个操作只借用一个连接，多条命令通过管道或 MULTI 一次发送。
+ */
 @Slf4j
 @Repository
 public class RedisRoomDao implements RoomDao {
-    
+
     private static final String ROOM_KEY_PREFIX = "chat:room:";
     private static final String ROOM_MEMBERS_KEY_PREFIX = "chat:room:members:";
     private static final String USER_ROOMS_KEY_PREFIX = "chat:user:rooms:";
     private static final String ALL_ROOMS_KEY = "chat:rooms:all";
-    
+
+    // KEYS 依次为房间信息、房间成员、所有房间；ARGV 依次为房间ID、用户房间集合的键前缀
+    private static final String DELETE_ROOM_SCRIPT =
+            "local members = redis.call('SMEMBERS', KEYS[2]) " +
+            "for _, userId in ipairs(members) do redis.call('SREM', ARGV[2] .. userId, ARGV[1]) end " +
+            "redis.call('DEL', KEYS[1], KEYS[2]) " +
+            "redis.call('SREM', KEYS[3], ARGV[1]) " +
+            "return #members";
+
+    /**
+     * 保存房间信息，room 中的成员会加入成员集合；移除成员使用 removeUserFromRoom
+     */
     @Override
     public Room save(Room room) {
         try (Jedis jedis = RedisUtil.getJedis()) {
-            String key = ROOM_KEY_PREFIX + room.getId();
-            jedis.set(key, JsonUtil.toJson(room));
-            
+            Transaction tx = jedis.multi();
+            tx.set(ROOM_KEY_PREFIX + room.getId(), toJson(room));
             // 添加到所有房间集合
-            jedis.sadd(ALL_ROOMS_KEY, room.getId());
+            tx.sadd(ALL_ROOMS_KEY, room.getId());
+            for (String userId : room.getMembers()) {
+                addMember(tx, room.getId(), userId);
+            }
+            tx.exec();
         }
         return room;
     }
-    
+
     @Override
     public Room findById(String roomId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
-            String key = ROOM_KEY_PREFIX + roomId;
-            String json = jedis.get(key);
-            return json != null ? JsonUtil.fromJson(json, Room.class) : null;
+            Pipeline pipeline = jedis.pipelined();
+            RoomResponse response = readRoom(pipeline, roomId);
+            pipeline.sync();
+            return response.get();
         }
     }
-    
+
     @Override
     public List<Room> findAll() {
         try (Jedis jedis = RedisUtil.getJedis()) {
-            Set<String> roomIds = jedis.smembers(ALL_ROOMS_KEY);
-            List<Room> rooms = new ArrayList<>();
-            
-            for (String roomId : roomIds) {
-                Room room = findById(roomId);
-                if (room != null) {
-                    rooms.add(room);
-                }
-            }
-            
-            return rooms;
+            return findRooms(jedis, jedis.smembers(ALL_ROOMS_KEY));
         }
     }
-    
+
     @Override
     public void delete(String roomId) {
         deleteRoom(roomId);
     }
-    
+
+    /**
+     * 删除房间及其成员关系，由脚本在服务端一次完成
+     */
     @Override
     public void deleteRoom(String roomId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
-            // 删除房间信息
-            String key = ROOM_KEY_PREFIX + roomId;
-            jedis.del(key);
-            
-            // 从所有房间集合中移除
-            jedis.srem(ALL_ROOMS_KEY, roomId);
-            
-            // 获取房间成员
-            String membersKey = ROOM_MEMBERS_KEY_PREFIX + roomId;
-            Set<String> members = jedis.smembers(membersKey);
-            
-            // 从每个成员的房间列表中移除该房间
-            for (String userId : members) {
-                String userRoomsKey = USER_ROOMS_KEY_PREFIX + userId;
-                jedis.srem(userRoomsKey, roomId);
-            }
-            
-            // 删除房间成员列表
-            jedis.del(membersKey);
+            jedis.eval(DELETE_ROOM_SCRIPT,
+                    List.of(ROOM_KEY_PREFIX + roomId, ROOM_MEMBERS_KEY_PREFIX + roomId, ALL_ROOMS_KEY),
+                    List.of(roomId, USER_ROOMS_KEY_PREFIX));
         }
     }
-    
+
     @Override
     public void updateRoom(Room room) {
         save(room);
     }
-    
+
     @Override
     public void addUserToRoom(String roomId, String userId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
-            // 添加用户到房间成员列表
-            String membersKey = ROOM_MEMBERS_KEY_PREFIX + roomId;
-            jedis.sadd(membersKey, userId);
-            
-            // 添加房间到用户的房间列表
-            String userRoomsKey = USER_ROOMS_KEY_PREFIX + userId;
-            jedis.sadd(userRoomsKey, roomId);
-            
-            // 更新房间信息
-            Room room = findById(roomId);
-            if (room != null) {
-                room.getMembers().add(userId);
-                save(room);
-            }
+            Transaction tx = jedis.multi();
+            addMember(tx, roomId, userId);
+            tx.exec();
         }
     }
-    
+
     @Override
     public void removeUserFromRoom(String roomId, String userId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
+            Transaction tx = jedis.multi();
             // 从房间成员列表中移除用户
-            String membersKey = ROOM_MEMBERS_KEY_PREFIX + roomId;
-            jedis.srem(membersKey, userId);
-            
+            tx.srem(ROOM_MEMBERS_KEY_PREFIX + roomId, userId);
             // 从用户的房间列表中移除房间
-            String userRoomsKey = USER_ROOMS_KEY_PREFIX + userId;
-            jedis.srem(userRoomsKey, roomId);
-            
-            // 更新房间信息
-            Room room = findById(roomId);
-            if (room != null) {
-                room.getMembers().remove(userId);
-                save(room);
-            }
+            tx.srem(USER_ROOMS_KEY_PREFIX + userId, roomId);
+            tx.exec();
         }
     }
-    
+
     @Override
     public Set<String> getRoomMembers(String roomId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
@@ -142,7 +124,7 @@ public class RedisRoomDao implements RoomDao {
             return jedis.smembers(membersKey);
         }
     }
-    
+
     @Override
     public List<String> getUserRooms(String userId) {
         try (Jedis jedis = RedisUtil.getJedis()) {
@@ -151,13 +133,74 @@ public class RedisRoomDao implements RoomDao {
             return new ArrayList<>(roomIds);
         }
     }
-    
+
     @Override
     public List<Room> findByUserId(String userId) {
-        List<String> roomIds = getUserRooms(userId);
-        return roomIds.stream()
-                .map(this::findById)
-                .filter(room -> room != null)
-                .collect(Collectors.toList());
+        try (Jedis jedis = RedisUtil.getJedis()) {
+            return findRooms(jedis, jedis.smembers(USER_ROOMS_KEY_PREFIX + userId));
+        }
+    }
+
+    /**
+     * 在同一个连接上用一个管道取回多个房间的信息和成员
+     */
+    private List<Room> findRooms(Jedis jedis, Collection<String> roomIds) {
+        Pipeline pipeline = jedis.pipelined();
+        List<RoomResponse> responses = new ArrayList<>(roomIds.size());
+        for (String roomId : roomIds) {
+            responses.add(readRoom(pipeline, roomId));
+        }
+        pipeline.sync();
+
+        List<Room> rooms = new ArrayList<>(responses.size());
+        for (RoomResponse response : responses) {
+            Room room = response.get();
+            if (room != null) {
+                rooms.add(room);
+            }
+        }
+        return rooms;
+    }
+
+    private RoomResponse readRoom(Pipeline pipeline, String roomId) {
+        return new RoomResponse(pipeline.get(ROOM_KEY_PREFIX + roomId),
+                pipeline.smembers(ROOM_MEMBERS_KEY_PREFIX + roomId));
+    }
+
+    private void addMember(Transaction tx, String roomId, String userId) {
+        // 添加用户到房间成员列表
+        tx.sadd(ROOM_MEMBERS_KEY_PREFIX + roomId, userId);
+        // 添加房间到用户的房间列表
+        tx.sadd(USER_ROOMS_KEY_PREFIX + userId, roomId);
+    }
+
+    /**
+     * 房间信息的 JSON 不包含成员
+     */
+    private String toJson(Room room) {
+        return JsonUtil.toJson(Room.builder()
+                .id(room.getId())
+                .name(room.getName())
+                .creatorId(room.getCreatorId())
+                .createTime(room.getCreateTime())
+                .build());
+    }
+
+    /**
+     * 管道中一个房间的信息和成员
+     */
+    private record RoomResponse(Response<String> json, Response<Set<String>> members) {
+
+        Room get() {
+            String value = json.get();
+            if (value == null) {
+                return null;
+            }
+            Room room = JsonUtil.fromJson(value, Room.class);
+            if (room != null) {
+                room.setMembers(new HashSet<>(members.get()));
+            }
+            return room;
+        }
     }
 }
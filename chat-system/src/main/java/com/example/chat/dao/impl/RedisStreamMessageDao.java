@@ -0,0 +1,256 @@
+package com.example.chat.dao.impl;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.dao.MessageDao;
+import com.example.chat.model.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于 Redis Stream 的消息存储
+ * 每个房间、每对私聊用户各一个 Stream，消息正文内联在条目的 body 字段中，历史记录用 XREVRANGE 按条目ID倒序读取，
+ * 一页只有一次往返。条目ID由 Redis 按写入时间生成，分页参数 before 按毫秒时间戳比较。
+ * 另有一个消息ID到条目位置的哈希，用于 findById 和 delete，大小与各 Stream 中的消息总数相同。
+ * 默认保留全部历史；配置了 chat.redis.stream-max-length 时每个 Stream 最多保留这么多条消息，
+ * 写入时在同一个脚本中删除超出的最早条目和它们的位置记录。
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(prefix = "chat.redis", name = "message-layout", havingValue = "STREAM")
+public class RedisStreamMessageDao implements MessageDao {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final String maxLength;
+
+    private static final String ROOM_STREAM_KEY = "stream:room:";
+    private static final String PRIVATE_STREAM_KEY = "stream:private:";
+    // 既不是房间消息也不是私聊消息时写入发送者自己的 Stream
+    private static final String USER_STREAM_KEY = "stream:user:";
+    private static final String LOCATIONS_KEY = "stream:message:locations";
+    private static final String BODY_FIELD = "body";
+
+    // 不指定分页大小时返回的消息数
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    // KEYS[1] 为 Stream，KEYS[2] 为位置哈希；ARGV 依次为消息ID、消息JSON、Stream 最大长度；返回条目ID
+    // 条目的第一个字段是消息ID，超出最大长度时按条目读出最早的消息ID，删除位置记录后再截断 Stream
+    private static final String SAVE_SOURCE =
+            "local entryId = redis.call('XADD', KEYS[1], '*', 'id', ARGV[1], 'body', ARGV[2]) " +
+            "redis.call('HSET', KEYS[2], ARGV[1], KEYS[1] .. ' ' .. entryId) " +
+            "local maxLength = tonumber(ARGV[3]) " +
+            "if maxLength > 0 then " +
+            "  local excess = redis.call('XLEN', KEYS[1]) - maxLength " +
+            "  if excess > 0 then " +
+            "    for _, entry in ipairs(redis.call('XRANGE', KEYS[1], '-', '+', 'COUNT', excess)) do " +
+            "      redis.call('HDEL', KEYS[2], entry[2][2]) " +
+            "    end " +
+            "    redis.call('XTRIM', KEYS[1], 'MAXLEN', maxLength) " +
+            "  end " +
+            "end " +
+            "return entryId";
+    private static final RedisScript<String> SAVE_SCRIPT = new DefaultRedisScript<>(SAVE_SOURCE, String.class);
+
+    // KEYS[1] 为位置哈希，KEYS[2] 为消息所在的 Stream；ARGV 依次为消息ID、条目ID
+    // 位置在读取后可能已被删除，只有位置记录仍然一致时才删除
+    private static final RedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) ~= KEYS[2] .. ' ' .. ARGV[2] then return 0 end " +
+            "redis.call('XDEL', KEYS[2], ARGV[2]) " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    public RedisStreamMessageDao(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper,
+                                 ChatConfig chatConfig) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.maxLength = String.valueOf(chatConfig.getRedis().getStreamMaxLength());
+    }
+
+    @Override
+    public ChatMessage save(ChatMessage message) {
+        try {
+            String messageJson = objectMapper.writeValueAsString(message);
+            // 追加条目和记录位置在一个脚本中完成
+            redisTemplate.execute(SAVE_SCRIPT, List.of(getStreamKey(message), LOCATIONS_KEY),
+                    message.getId(), messageJson, maxLength);
+            return message;
+        } catch (Exception e) {
+            log.error("Error saving message", e);
+            return null;
+        }
+    }
+
+    /**
+     * 整批消息在一个管道中写入；管道中无法根据 NOSCRIPT 回退，所以直接发送 EVAL
+     */
+    @Override
+    public List<ChatMessage> saveAll(List<ChatMessage> messages) {
+        try {
+            List<byte[][]> keysAndArgs = new ArrayList<>(messages.size());
+            for (ChatMessage message : messages) {
+                keysAndArgs.add(new byte[][] {
+                        bytes(getStreamKey(message)), bytes(LOCATIONS_KEY),
+                        bytes(message.getId()), bytes(objectMapper.writeValueAsString(message)), bytes(maxLength)
+                });
+            }
+
+            byte[] script = bytes(SAVE_SOURCE);
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (byte[][] entry : keysAndArgs) {
+                    connection.scriptingCommands().eval(script, ReturnType.VALUE, 2, entry);
+                }
+                return null;
+            });
+            return messages;
+        } catch (Exception e) {
+            log.error("Error saving message batch", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public ChatMessage findById(String messageId) {
+        try {
+            String[] location = getLocation(messageId);
+            if (location == null) {
+                return null;
+            }
+            List<MapRecord<String, Object, Object>> records =
+                    redisTemplate.opsForStream().range(location[0], Range.just(location[1]));
+            if (records == null || records.isEmpty()) {
+                return null;
+            }
+            return readMessage(records.get(0));
+        } catch (Exception e) {
+            log.error("Error getting message by ID", e);
+            return null;
+        }
+    }
+
+    @Override
+    public List<ChatMessage> findByRoomId(String roomId) {
+        return findByRoomId(roomId, DEFAULT_PAGE_SIZE, 0);
+    }
+
+    // 辅助方法，用于分页获取房间消息
+    public List<ChatMessage> findByRoomId(String roomId, int limit, long before) {
+        try {
+            return findPage(ROOM_STREAM_KEY + roomId, limit, before);
+        } catch (Exception e) {
+            log.error("Error getting messages by room ID", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<ChatMessage> findBetweenUsers(String userId1, String userId2, int limit, long before) {
+        try {
+            return findPage(getPrivateStreamKey(userId1, userId2), limit, before);
+        } catch (Exception e) {
+            log.error("Error getting messages between users", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean delete(String messageId) {
+        try {
+            String[] location = getLocation(messageId);
+            if (location == null) {
+                return false;
+            }
+            // 脚本用到的 Stream 作为键声明，而不是在脚本中由位置记录得出
+            Long deleted = redisTemplate.execute(DELETE_SCRIPT, List.of(LOCATIONS_KEY, location[0]),
+                    messageId, location[1]);
+            return deleted != null && deleted > 0;
+        } catch (Exception e) {
+            log.error("Error deleting message", e);
+            return false;
+        }
+    }
+
+    /**
+     * 按条目ID倒序读取一页消息，正文随条目一起返回
+     * @param before 只返回该毫秒时间戳之前（含）写入的消息，0 表示从最新的开始
+     */
+    private List<ChatMessage> findPage(String streamKey, int limit, long before) {
+        Range<String> range = before > 0
+                ? Range.of(Range.Bound.unbounded(), Range.Bound.inclusive(String.valueOf(before)))
+                : Range.unbounded();
+        List<MapRecord<String, Object, Object>> records =
+                redisTemplate.opsForStream().reverseRange(streamKey, range, Limit.limit().count(limit));
+        if (records == null || records.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ChatMessage> messages = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            try {
+                messages.add(readMessage(record));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable message: {}", e.getMessage());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 消息所在的位置
+     * @return [Stream 键, 条目ID]，没有记录时返回null
+     */
+    private String[] getLocation(String messageId) {
+        Object location = redisTemplate.opsForHash().get(LOCATIONS_KEY, messageId);
+        return location == null ? null : location.toString().split(" ", 2);
+    }
+
+    private ChatMessage readMessage(MapRecord<String, Object, Object> record) throws IOException {
+        return objectMapper.readValue(record.getValue().get(BODY_FIELD).toString(), ChatMessage.class);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 消息所在的 Stream：房间消息按房间，私聊按用户对，其余按发送者
+     */
+    private String getStreamKey(ChatMessage message) {
+        if (message.getRoomId() != null && !message.getRoomId().isEmpty()) {
+            return ROOM_STREAM_KEY + message.getRoomId();
+        }
+        if (message.getReceiverId() != null && !message.getReceiverId().isEmpty()) {
+            return getPrivateStreamKey(message.getSenderId(), message.getReceiverId());
+        }
+        return USER_STREAM_KEY + message.getSenderId();
+    }
+
+    /**
+     * 获取私聊 Stream 的键，用户ID按字典序排序，两个方向的消息在同一个 Stream 中
+     */
+    private String getPrivateStreamKey(String userId1, String userId2) {
+        if (userId1.compareTo(userId2) < 0) {
+            return PRIVATE_STREAM_KEY + userId1 + ":" + userId2;
+        } else {
+            return PRIVATE_STREAM_KEY + userId2 + ":" + userId1;
+        }
+    }
+}
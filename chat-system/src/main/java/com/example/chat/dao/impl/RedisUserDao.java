@@ -2,17 +2,28 @@ package com.example.chat.dao.impl;
 
 import com.example.chat.dao.UserDao;
 import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
 import com.example.chat.util.JsonUtil;
 import com.example.chat.util.RedisUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
 import org.springframework.context.annotation.Primary;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * 基于 Redis 的用户存储
+ * 在线用户单独保存在 ONLINE_USERS_KEY 集合中，随用户信息的保存和更新一起维护，
+ * 查询在线用户时用 SSCAN 分页读取该集合，每页的用户信息用一次 MGET 取回。
+ */
 @Slf4j
 @Repository
 @Primary
@@ -22,6 +33,10 @@ public class RedisUserDao implements UserDao {
     private static final String USER_EMAIL_KEY_PREFIX = "chat:user:email:";
     private static final String USER_USERNAME_KEY_PREFIX = "chat:user:username:";
     private static final String ALL_USERS_KEY = "chat:users:all";
+    private static final String ONLINE_USERS_KEY = "chat:users:online";
+
+    // 获取全部在线用户时每次 SSCAN 的数量
+    private static final int ONLINE_SCAN_COUNT = 100;
     
     @Override
     public User save(User user) {
@@ -107,6 +122,13 @@ public class RedisUserDao implements UserDao {
                 return null;
             }
             
+            // 更新在线用户集合
+            if (user.isOnline()) {
+                jedis.sadd(ONLINE_USERS_KEY, user.getId());
+            } else {
+                jedis.srem(ONLINE_USERS_KEY, user.getId());
+            }
+            
             log.info("Successfully saved user: {}", user.getUsername());
             return user;
         } catch (Exception e) {
@@ -201,7 +223,15 @@ public class RedisUserDao implements UserDao {
                 return null;
             }
             
-            jedis.set(key, userJson);
+            // 用户信息和在线用户集合在同一个事务中更新
+            Transaction tx = jedis.multi();
+            tx.set(key, userJson);
+            if (user.isOnline()) {
+                tx.sadd(ONLINE_USERS_KEY, user.getId());
+            } else {
+                tx.srem(ONLINE_USERS_KEY, user.getId());
+            }
+            tx.exec();
             log.info("Successfully updated user: {}", user.getUsername());
             return user;
         } catch (Exception e) {
@@ -246,6 +276,7 @@ public class RedisUserDao implements UserDao {
             
             // 从所有用户集合中移除
             jedis.srem(ALL_USERS_KEY, userId);
+            jedis.srem(ONLINE_USERS_KEY, userId);
             
             log.info("Successfully deleted user: {}", user.getUsername());
         } catch (Exception e) {
@@ -261,20 +292,81 @@ public class RedisUserDao implements UserDao {
                 return new ArrayList<>();
             }
             
-            Set<String> userIds = jedis.smembers(ALL_USERS_KEY);
-            List<User> users = new ArrayList<>();
+            return findByIds(jedis, jedis.smembers(ALL_USERS_KEY));
+        } catch (Exception e) {
+            log.error("Error finding all users: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 分页扫描在线用户集合直到游标回到 0，SSCAN 可能重复返回同一成员，按ID去重
+     */
+    @Override
+    public List<User> findOnline() {
+        try (Jedis jedis = RedisUtil.getJedis()) {
+            if (jedis == null) {
+                log.error("Failed to get Redis connection");
+                return new ArrayList<>();
+            }
+            
+            Set<String> userIds = new LinkedHashSet<>();
+            String cursor = ScanParams.SCAN_POINTER_START;
+            ScanParams params = new ScanParams().count(ONLINE_SCAN_COUNT);
+            do {
+                ScanResult<String> page = jedis.sscan(ONLINE_USERS_KEY, cursor, params);
+                userIds.addAll(page.getResult());
+                cursor = page.getCursor();
+            } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+            
+            return findByIds(jedis, userIds);
+        } catch (Exception e) {
+            log.error("Error finding online users: {}", e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * 一次 SSCAN 加一次 MGET 读取一页在线用户，不同页之间可能有重复的用户
+     */
+    @Override
+    public UserPage findOnline(String cursor, int count) {
+        try (Jedis jedis = RedisUtil.getJedis()) {
+            if (jedis == null) {
+                log.error("Failed to get Redis connection");
+                return UserPage.builder().users(new ArrayList<>()).cursor(UserPage.END_CURSOR).build();
+            }
             
-            for (String userId : userIds) {
-                User user = findById(userId);
+            ScanResult<String> page = jedis.sscan(ONLINE_USERS_KEY,
+                    cursor != null ? cursor : ScanParams.SCAN_POINTER_START, new ScanParams().count(count));
+            return UserPage.builder()
+                    .users(findByIds(jedis, page.getResult()))
+                    .cursor(page.getCursor())
+                    .build();
+        } catch (Exception e) {
+            log.error("Error finding online users page: {}", e.getMessage(), e);
+            return UserPage.builder().users(new ArrayList<>()).cursor(UserPage.END_CURSOR).build();
+        }
+    }
+    
+    /**
+     * 用一次 MGET 取回多个用户，已删除的用户被跳过
+     */
+    private List<User> findByIds(Jedis jedis, Collection<String> userIds) {
+        List<User> users = new ArrayList<>(userIds.size());
+        if (userIds.isEmpty()) {
+            return users;
+        }
+        
+        String[] keys = userIds.stream().map(id -> USER_KEY_PREFIX + id).toArray(String[]::new);
+        for (String json : jedis.mget(keys)) {
+            if (json != null) {
+                User user = JsonUtil.fromJson(json, User.class);
                 if (user != null) {
                     users.add(user);
                 }
             }
-            
-            return users;
-        } catch (Exception e) {
-            log.error("Error finding all users: {}", e.getMessage(), e);
-            return new ArrayList<>();
         }
+        return users;
     }
 }
@@ -1,15 +1,23 @@
 package com.example.chat.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 import org.hibernate.annotations.GenericGenerator;
 
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Data
 @Builder
@@ -45,6 +53,12 @@ public class ChatMessage {
     @Builder.Default
     private Set<String> readBy = new HashSet<>();
     
+    // 客户端格式的 JSON 缓存，不持久化、不参与 equals/hashCode，也不出现在 builder 中
+    @JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient AtomicReference<SerializedString> clientJson = new AtomicReference<>();
+    
     public enum MessageType {
         TEXT,
         IMAGE,
@@ -75,6 +89,21 @@ public class ChatMessage {
     public boolean isRead(String userId) {
         return readBy != null && readBy.contains(userId);
     }
+    
+    /**
+     * 客户端格式的 JSON，首次调用时编码并缓存，实时推送和历史查询共用同一份 UTF-8 字节。
+     * 消息发出后视为不可变，已读状态不在客户端格式中，不影响缓存。
+     * @param encoder 缓存缺失时使用的编码函数
+     */
+    public SerializableString clientJson(Function<ChatMessage, String> encoder) {
+        SerializedString cached = clientJson.get();
+        if (cached == null) {
+            SerializedString encoded = new SerializedString(encoder.apply(this));
+            // 并发首次编码时只保留一份
+            cached = clientJson.compareAndSet(null, encoded) ? encoded : clientJson.get();
+        }
+        return cached;
+    }
 }
 @Converter
 class StringSetConverter implements AttributeConverter<Set<String>, String> {
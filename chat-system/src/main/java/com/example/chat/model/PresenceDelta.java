@@ -0,0 +1,19 @@
+package com.example.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 在线状态变更，version 为全局单调递增的在线状态版本号
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PresenceDelta {
+    private String userId;
+    private boolean online;
+    private long version;
+}
@@ -0,0 +1,25 @@
+package com.example.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 分片上传的状态，offset 为已写入的字节数，客户端断线后从 offset 继续上传
+ * 上传完成后 contentId 非空，同一对象也作为已存储内容的元数据
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    private String uploadId;
+    private String userId;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private long offset;
+    private long createdAt;
+    private String contentId;
+}
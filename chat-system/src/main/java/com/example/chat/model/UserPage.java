@@ -0,0 +1,22 @@
+package com.example.chat.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 按游标分页的用户列表，cursor 为下一页的游标，"0" 表示已到末尾
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage {
+    public static final String END_CURSOR = "0";
+
+    private List<User> users;
+    private String cursor;
+}
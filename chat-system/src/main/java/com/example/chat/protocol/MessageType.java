@@ -19,7 +19,9 @@ public enum MessageType {
     MESSAGE_HISTORY_RESPONSE,
     ERROR,
     SYSTEM,
-    NOTIFICATION;
+    NOTIFICATION,
+    // 类型码即序号，新类型只能追加在末尾
+    MESSAGE_PUSH;
     
     public byte getCode() {
         return (byte) ordinal();
@@ -0,0 +1,20 @@
+package com.example.chat.protocol.response;
+
+import com.example.chat.model.ChatMessage;
+import com.example.chat.protocol.ProtocolMessage;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * 服务端主动推送的房间或私聊消息，携带完整的消息字段
+ * 推送不是对某个请求的响应，请求ID不在客户端请求ID的取值范围内
+ */
+@Data
+@SuperBuilder
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class PushMessage extends ProtocolMessage {
+    private ChatMessage message;
+}
@@ -0,0 +1,64 @@
+package com.example.chat.service;
+
+import com.example.chat.model.UploadSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * 二进制内容存储
+ * 图片通过分片上传写入存储，消息中只保存内容地址，推送和历史记录不再携带图片数据
+ */
+public interface ContentStore {
+
+    /**
+     * 允许存储的内容类型，只接受浏览器按图片解码的位图格式，不接受 svg 等可执行脚本的类型
+     */
+    Set<String> IMAGE_TYPES = Set.of("image/png", "image/jpeg", "image/gif", "image/webp");
+
+    /**
+     * 创建上传
+     * @throws IllegalArgumentException 类型不支持或大小超出限制
+     */
+    UploadSession createUpload(String userId, String fileName, String contentType, long size) throws IOException;
+
+    /**
+     * 获取上传状态，用于断点续传
+     * @return 不存在或已过期时返回null
+     */
+    UploadSession getUpload(String uploadId);
+
+    /**
+     * 从 offset 处追加一个分片，写满声明的大小后上传自动完成
+     * 分片中途断开时已写入的部分保留，返回的状态中 offset 为实际写入的位置
+     * @throws IllegalArgumentException 上传不存在、不属于该用户、分片超出声明的大小，
+     *         或上传完成时文件头与声明的类型不符（此时上传被丢弃）
+     * @throws IllegalStateException offset 与已写入的字节数不一致，或上传已完成
+     */
+    UploadSession appendChunk(String uploadId, String userId, long offset, InputStream data) throws IOException;
+
+    /**
+     * 直接保存一段完整的内容，用于兼容仍以 base64 发送图片的客户端
+     * @return 内容ID
+     * @throws IllegalArgumentException 类型不支持、大小超出限制或文件头与类型不符
+     */
+    String store(String userId, String contentType, byte[] data) throws IOException;
+
+    /**
+     * 已存储内容的元数据
+     * @return 不存在时返回null
+     */
+    UploadSession getContent(String contentId);
+
+    /**
+     * 已存储内容的文件路径
+     */
+    Path getContentPath(String contentId);
+
+    /**
+     * 消息中引用内容使用的地址
+     */
+    String getContentUrl(String contentId);
+}
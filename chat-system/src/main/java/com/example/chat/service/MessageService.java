@@ -10,6 +10,12 @@ public interface MessageService {
      */
     void saveMessage(ChatMessage message);
     
+    /**
+     * 批量保存消息，作为一组写入存储
+     * @return 保存后的消息，顺序与参数一致
+     */
+    List<ChatMessage> saveMessages(List<ChatMessage> messages);
+    
     /**
      * 发送消息
      */
@@ -40,6 +46,15 @@ public interface MessageService {
      */
     List<ChatMessage> getRoomMessages(String roomId, int limit);
     
+    /**
+     * 分页获取聊天室的消息，按时间倒序，只读取一页
+     * @param beforeMessageId 上一页最后一条消息的ID，为空时从最新的消息开始
+     * @param startTime 大于0时只返回该时间之后（含）的消息
+     * @param endTime 大于0时只返回该时间之前（含）的消息
+     * @return 游标消息不存在或不属于该房间时返回null
+     */
+    List<ChatMessage> getRoomMessages(String roomId, String beforeMessageId, long startTime, long endTime, int limit);
+    
     /**
      * 获取两个用户之间的消息
      */
@@ -0,0 +1,39 @@
+package com.example.chat.service;
+
+import com.example.chat.model.PresenceDelta;
+
+import java.util.List;
+
+/**
+ * 在线状态服务
+ * 维护带版本号的在线状态，客户端可以获取快照，或者获取某个版本之后的增量
+ */
+public interface PresenceService {
+
+    /**
+     * 更新用户在线状态
+     * @return 状态发生变化时返回新的增量，未变化返回null
+     */
+    PresenceDelta setOnline(String userId, boolean online);
+
+    /**
+     * 用户当前是否在线
+     */
+    boolean isOnline(String userId);
+
+    /**
+     * 当前在线状态版本号
+     */
+    long getVersion();
+
+    /**
+     * 当前所有在线用户的状态快照
+     */
+    List<PresenceDelta> getSnapshot();
+
+    /**
+     * 获取指定版本之后的增量，同一用户只保留最新一条
+     * @return 版本过旧、增量已被淘汰时返回null，调用方应改用快照
+     */
+    List<PresenceDelta> getDeltasSince(long version);
+}
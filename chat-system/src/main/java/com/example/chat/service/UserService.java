@@ -1,6 +1,7 @@
 package com.example.chat.service;
 
 import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
 import java.util.List;
 
 public interface UserService {
@@ -25,6 +26,11 @@ public interface UserService {
      */
     List<User> getOnlineUsers();
     
+    /**
+     * 按游标分页获取在线用户，cursor 首页传 "0"
+     */
+    UserPage getOnlineUsers(String cursor, int count);
+    
     /**
      * 获取所有用户
      */
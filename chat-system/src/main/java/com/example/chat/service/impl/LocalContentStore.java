@@ -0,0 +1,325 @@
+package com.example.chat.service.impl;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.model.UploadSession;
+import com.example.chat.service.ContentStore;
+import com.example.chat.util.ChatMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 基于本地目录的内容存储
+ * 未完成的上传在 uploads 子目录中保存为 {id}.part 和 {id}.json，已写入的字节数就是 .part 文件的长度，
+ * 服务重启后仍可续传；完成后移动到 content 子目录。分片直接从请求流写入文件，不在内存中拼接。
+ */
+@Slf4j
+@Service
+public class LocalContentStore implements ContentStore {
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String META_SUFFIX = ".json";
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{32}");
+    private static final long CLEANUP_INTERVAL_MILLIS = 10 * 60 * 1000;
+    // 判断文件类型需要读取的文件头长度，webp 的标识在第 8~11 字节
+    private static final int SIGNATURE_LENGTH = 12;
+
+    private final ChatConfig.Upload config;
+    private final ObjectMapper objectMapper;
+    private final Path uploadDir;
+    private final Path contentDir;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private volatile long lastCleanup = System.currentTimeMillis();
+
+    @Autowired
+    public LocalContentStore(ChatConfig chatConfig, ObjectMapper objectMapper) {
+        this.config = chatConfig.getUpload();
+        this.objectMapper = objectMapper;
+        Path root = Paths.get(config.getDirectory());
+        this.uploadDir = root.resolve("uploads");
+        this.contentDir = root.resolve("content");
+        try {
+            Files.createDirectories(uploadDir);
+            Files.createDirectories(contentDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create upload directory " + root, e);
+        }
+    }
+
+    @Override
+    public UploadSession createUpload(String userId, String fileName, String contentType, long size)
+            throws IOException {
+        checkContent(contentType, size);
+        cleanupExpiredUploads();
+
+        UploadSession session = UploadSession.builder()
+                .uploadId(newId())
+                .userId(userId)
+                .fileName(fileName)
+                .contentType(contentType)
+                .size(size)
+                .createdAt(System.currentTimeMillis())
+                .build();
+        Files.createFile(partPath(session.getUploadId()));
+        objectMapper.writeValue(uploadDir.resolve(session.getUploadId() + META_SUFFIX).toFile(), session);
+        sessions.put(session.getUploadId(), session);
+        return session;
+    }
+
+    @Override
+    public UploadSession getUpload(String uploadId) {
+        if (!isValidId(uploadId)) {
+            return null;
+        }
+        UploadSession session = sessions.computeIfAbsent(uploadId, this::loadUpload);
+        if (session == null) {
+            // 已完成的上传不再保留在 uploads 中
+            return getContent(uploadId);
+        }
+        if (isExpired(session)) {
+            discard(uploadId);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public UploadSession appendChunk(String uploadId, String userId, long offset, InputStream data)
+            throws IOException {
+        UploadSession session = getUpload(uploadId);
+        if (session == null || !session.getUserId().equals(userId)) {
+            throw new IllegalArgumentException("Unknown upload: " + uploadId);
+        }
+
+        synchronized (session) {
+            if (session.getContentId() != null || offset != session.getOffset()) {
+                throw new IllegalStateException("Expected offset " + session.getOffset());
+            }
+            try (FileChannel channel = FileChannel.open(partPath(uploadId), StandardOpenOption.WRITE)) {
+                long written = copy(data, channel, offset, session.getSize() - offset);
+                session.setOffset(offset + written);
+            } catch (IOException e) {
+                // 中途断开时保留已写入的部分，客户端从新的 offset 续传
+                session.setOffset(Files.size(partPath(uploadId)));
+                throw e;
+            }
+            ChatMetrics.counter("upload.bytes").inc(session.getOffset() - offset);
+
+            if (session.getOffset() == session.getSize()) {
+                complete(session);
+            }
+            return session;
+        }
+    }
+
+    @Override
+    public String store(String userId, String contentType, byte[] data) throws IOException {
+        checkContent(contentType, data.length);
+        if (!hasSignature(contentType, data)) {
+            throw new IllegalArgumentException("Content does not match type: " + contentType);
+        }
+        String contentId = newId();
+        UploadSession content = UploadSession.builder()
+                .uploadId(contentId)
+                .userId(userId)
+                .contentType(contentType)
+                .size(data.length)
+                .offset(data.length)
+                .createdAt(System.currentTimeMillis())
+                .contentId(contentId)
+                .build();
+        Files.write(contentDir.resolve(contentId), data);
+        objectMapper.writeValue(contentDir.resolve(contentId + META_SUFFIX).toFile(), content);
+        return contentId;
+    }
+
+    @Override
+    public UploadSession getContent(String contentId) {
+        if (!isValidId(contentId)) {
+            return null;
+        }
+        Path meta = contentDir.resolve(contentId + META_SUFFIX);
+        if (!Files.exists(meta)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(meta.toFile(), UploadSession.class);
+        } catch (IOException e) {
+            log.error("Error reading content metadata: {}", contentId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public Path getContentPath(String contentId) {
+        if (!isValidId(contentId)) {
+            throw new IllegalArgumentException("Invalid content id: " + contentId);
+        }
+        return contentDir.resolve(contentId);
+    }
+
+    @Override
+    public String getContentUrl(String contentId) {
+        return config.getPublicBaseUrl() + "/api/content/" + contentId;
+    }
+
+    private void complete(UploadSession session) throws IOException {
+        String id = session.getUploadId();
+        if (!hasSignature(session.getContentType(), readHeader(partPath(id)))) {
+            discard(id);
+            throw new IllegalArgumentException("Content does not match type: " + session.getContentType());
+        }
+        Files.move(partPath(id), contentDir.resolve(id), StandardCopyOption.ATOMIC_MOVE);
+        session.setContentId(id);
+        objectMapper.writeValue(contentDir.resolve(id + META_SUFFIX).toFile(), session);
+        Files.deleteIfExists(uploadDir.resolve(id + META_SUFFIX));
+        sessions.remove(id);
+        log.info("Upload completed: {} ({} bytes)", id, session.getSize());
+    }
+
+    /**
+     * 把请求流写入文件的指定位置，超过剩余大小时拒绝整个分片
+     */
+    private long copy(InputStream in, FileChannel channel, long position, long remaining) throws IOException {
+        byte[] buffer = new byte[8192];
+        long written = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (written + read > remaining) {
+                channel.truncate(position);
+                throw new IllegalArgumentException("Chunk exceeds declared size");
+            }
+            ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+            while (src.hasRemaining()) {
+                channel.write(src, position + written + src.position());
+            }
+            written += read;
+        }
+        return written;
+    }
+
+    private UploadSession loadUpload(String uploadId) {
+        Path meta = uploadDir.resolve(uploadId + META_SUFFIX);
+        Path part = partPath(uploadId);
+        if (!Files.exists(meta) || !Files.exists(part)) {
+            return null;
+        }
+        try {
+            UploadSession session = objectMapper.readValue(meta.toFile(), UploadSession.class);
+            session.setOffset(Files.size(part));
+            return session;
+        } catch (IOException e) {
+            log.error("Error loading upload: {}", uploadId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 清理过期的未完成上传，最多每隔 CLEANUP_INTERVAL_MILLIS 执行一次
+     */
+    private void cleanupExpiredUploads() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanup < CLEANUP_INTERVAL_MILLIS) {
+            return;
+        }
+        lastCleanup = now;
+        try (DirectoryStream<Path> metas = Files.newDirectoryStream(uploadDir, "*" + META_SUFFIX)) {
+            for (Path meta : metas) {
+                String name = meta.getFileName().toString();
+                getUpload(name.substring(0, name.length() - META_SUFFIX.length()));
+            }
+        } catch (IOException e) {
+            log.warn("Error cleaning expired uploads", e);
+        }
+    }
+
+    private boolean isExpired(UploadSession session) {
+        return session.getContentId() == null
+                && System.currentTimeMillis() - session.getCreatedAt() > config.getExpireSeconds() * 1000;
+    }
+
+    private void discard(String uploadId) {
+        sessions.remove(uploadId);
+        try {
+            Files.deleteIfExists(partPath(uploadId));
+            Files.deleteIfExists(uploadDir.resolve(uploadId + META_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Error deleting expired upload: {}", uploadId, e);
+        }
+    }
+
+    private void checkContent(String contentType, long size) {
+        if (contentType == null || !IMAGE_TYPES.contains(contentType)) {
+            throw new IllegalArgumentException("Unsupported content type: " + contentType);
+        }
+        if (size <= 0 || size > config.getMaxSize()) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+    }
+
+    private static byte[] readHeader(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.readNBytes(SIGNATURE_LENGTH);
+        }
+    }
+
+    /**
+     * 按文件头校验内容确实是声明的图片格式，避免客户端用图片类型上传 html、svg 等内容
+     */
+    private static boolean hasSignature(String contentType, byte[] data) {
+        switch (contentType) {
+            case "image/png":
+                return startsWith(data, 0, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n');
+            case "image/jpeg":
+                return startsWith(data, 0, 0xFF, 0xD8, 0xFF);
+            case "image/gif":
+                return startsWith(data, 0, 'G', 'I', 'F', '8') && (startsWith(data, 4, '7', 'a')
+                        || startsWith(data, 4, '9', 'a'));
+            case "image/webp":
+                return startsWith(data, 0, 'R', 'I', 'F', 'F') && startsWith(data, 8, 'W', 'E', 'B', 'P');
+            default:
+                return false;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, int offset, int... signature) {
+        if (data.length < offset + signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((data[offset + i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Path partPath(String uploadId) {
+        return uploadDir.resolve(uploadId + PART_SUFFIX);
+    }
+
+    private static boolean isValidId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
+    private static String newId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+}
@@ -7,19 +7,30 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class MessageServiceImpl implements MessageService {
 
+    // 房间消息按时间排序，时间相同时按写入房间的顺序排序（批量发送的消息共用一个时间戳），分页时直接从游标位置开始读取
+    private static final Comparator<RoomEntry> ROOM_ORDER =
+            Comparator.comparingLong(RoomEntry::timestamp).thenComparingLong(RoomEntry::sequence);
+
     // 模拟消息存储
     private final Map<String, ChatMessage> messages = new ConcurrentHashMap<>();
-    private final Map<String, List<String>> roomMessages = new ConcurrentHashMap<>();
+    private final Map<String, RoomIndex> roomMessages = new ConcurrentHashMap<>();
+    // 房间消息在索引中的位置，用于定位游标和删除
+    private final Map<String, RoomEntry> roomEntries = new ConcurrentHashMap<>();
     private final Map<String, List<String>> userMessages = new ConcurrentHashMap<>();
     private final Map<String, List<String>> privateMessages = new ConcurrentHashMap<>();
 
@@ -51,8 +62,50 @@ public class MessageServiceImpl implements MessageService {
             privateMessages.computeIfAbsent(chatKey, k -> new ArrayList<>()).add(message.getId());
         } else if (message.getRoomId() != null) {
             // 群聊消息
-            roomMessages.computeIfAbsent(message.getRoomId(), k -> new ArrayList<>()).add(message.getId());
+            getRoomIndex(message.getRoomId()).add(message);
+        }
+    }
+
+    @Override
+    public List<ChatMessage> saveMessages(List<ChatMessage> batch) {
+        long now = System.currentTimeMillis();
+        Map<String, ChatMessage> byId = new LinkedHashMap<>();
+        for (ChatMessage message : batch) {
+            if (message.getId() == null) {
+                message.setId(UUID.randomUUID().toString());
+            }
+            if (message.getTimestamp() == 0) {
+                message.setTimestamp(now);
+            }
+            byId.put(message.getId(), message);
+        }
+
+        // 先整体写入消息，再按索引键分组追加，每个索引列表只更新一次
+        messages.putAll(byId);
+        Map<String, List<String>> userIndex = new HashMap<>();
+        Map<String, List<String>> privateIndex = new HashMap<>();
+        Map<String, List<ChatMessage>> roomIndex = new HashMap<>();
+        for (ChatMessage message : byId.values()) {
+            String senderId = message.getSenderId();
+            userIndex.computeIfAbsent(senderId, k -> new ArrayList<>()).add(message.getId());
+            if (message.isPrivate()) {
+                String receiverId = message.getReceiverId();
+                userIndex.computeIfAbsent(receiverId, k -> new ArrayList<>()).add(message.getId());
+                privateIndex.computeIfAbsent(getChatKey(senderId, receiverId), k -> new ArrayList<>())
+                        .add(message.getId());
+            } else if (message.getRoomId() != null) {
+                roomIndex.computeIfAbsent(message.getRoomId(), k -> new ArrayList<>()).add(message);
+            }
         }
+        userIndex.forEach((key, ids) -> userMessages.computeIfAbsent(key, k -> new ArrayList<>()).addAll(ids));
+        privateIndex.forEach((key, ids) -> privateMessages.computeIfAbsent(key, k -> new ArrayList<>()).addAll(ids));
+        // 同一批的消息按请求中的顺序取得房间序号
+        roomIndex.forEach((key, roomBatch) -> {
+            RoomIndex index = getRoomIndex(key);
+            roomBatch.forEach(index::add);
+        });
+
+        return batch;
     }
 
     @Override
@@ -89,14 +142,33 @@ public class MessageServiceImpl implements MessageService {
 
     @Override
     public List<ChatMessage> getRoomMessages(String roomId, int limit) {
-        List<String> messageIds = roomMessages.getOrDefault(roomId, new ArrayList<>());
+        RoomIndex index = roomMessages.get(roomId);
+        if (index == null) {
+            return new ArrayList<>();
+        }
+        return toMessages(index.entries, limit);
+    }
 
-        return messageIds.stream()
-                .map(messages::get)
-                .filter(msg -> msg != null)
-                .sorted(Comparator.comparingLong(ChatMessage::getTimestamp).reversed())
-                .limit(limit)
-                .collect(Collectors.toList());
+    @Override
+    public List<ChatMessage> getRoomMessages(String roomId, String beforeMessageId, long startTime, long endTime,
+                                             int limit) {
+        RoomIndex index = roomMessages.get(roomId);
+        NavigableSet<RoomEntry> range = index != null ? index.entries : new ConcurrentSkipListSet<>(ROOM_ORDER);
+        if (beforeMessageId != null) {
+            RoomEntry cursor = roomEntries.get(beforeMessageId);
+            if (cursor == null || !roomId.equals(cursor.message().getRoomId())) {
+                return null;
+            }
+            range = range.headSet(cursor, false);
+        }
+        if (endTime > 0) {
+            // 探针排在同一时间戳的所有消息之前
+            range = range.headSet(probe(endTime + 1), false);
+        }
+        if (startTime > 0) {
+            range = range.tailSet(probe(startTime), true);
+        }
+        return toMessages(range, limit);
     }
 
     @Override
@@ -142,10 +214,11 @@ public class MessageServiceImpl implements MessageService {
                 }
             }
 
-            if (message.getRoomId() != null) {
-                List<String> roomMsgs = roomMessages.get(message.getRoomId());
+            RoomEntry entry = roomEntries.remove(messageId);
+            if (entry != null) {
+                RoomIndex roomMsgs = roomMessages.get(message.getRoomId());
                 if (roomMsgs != null) {
-                    roomMsgs.remove(messageId);
+                    roomMsgs.entries.remove(entry);
                 }
             }
 
@@ -172,6 +245,48 @@ public class MessageServiceImpl implements MessageService {
                 .count();
     }
 
+    private RoomIndex getRoomIndex(String roomId) {
+        return roomMessages.computeIfAbsent(roomId, k -> new RoomIndex());
+    }
+
+    private static List<ChatMessage> toMessages(NavigableSet<RoomEntry> range, int limit) {
+        return range.descendingSet().stream()
+                .limit(limit)
+                .map(RoomEntry::message)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 按时间戳定位房间索引的边界
+     */
+    private static RoomEntry probe(long timestamp) {
+        return new RoomEntry(timestamp, Long.MIN_VALUE, null);
+    }
+
+    /**
+     * 房间索引中的一条消息，sequence 为消息写入该房间时取得的序号
+     */
+    private record RoomEntry(long timestamp, long sequence, ChatMessage message) {
+    }
+
+    /**
+     * 一个房间的消息索引和序号计数器
+     */
+    private final class RoomIndex {
+        private final AtomicLong sequence = new AtomicLong();
+        private final NavigableSet<RoomEntry> entries = new ConcurrentSkipListSet<>(ROOM_ORDER);
+
+        void add(ChatMessage message) {
+            RoomEntry entry = new RoomEntry(message.getTimestamp(), sequence.incrementAndGet(), message);
+            // 同一消息重复保存时替换原来的位置
+            RoomEntry previous = roomEntries.put(message.getId(), entry);
+            if (previous != null) {
+                entries.remove(previous);
+            }
+            entries.add(entry);
+        }
+    }
+
     /**
      * 获取私聊的唯一键
      */
@@ -0,0 +1,85 @@
+package com.example.chat.service.impl;
+
+import com.example.chat.model.PresenceDelta;
+import com.example.chat.service.PresenceService;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于内存的在线状态服务，保留最近的增量日志用于增量同步
+ */
+@Service
+public class PresenceServiceImpl implements PresenceService {
+
+    // 保留的增量条数，超出后最早的增量被淘汰
+    private static final int MAX_DELTA_LOG = 1024;
+
+    private final Map<String, PresenceDelta> onlineUsers = new ConcurrentHashMap<>();
+    private final ArrayDeque<PresenceDelta> deltaLog = new ArrayDeque<>();
+    private long version;
+
+    @Override
+    public synchronized PresenceDelta setOnline(String userId, boolean online) {
+        if (onlineUsers.containsKey(userId) == online) {
+            return null;
+        }
+
+        PresenceDelta delta = PresenceDelta.builder()
+                .userId(userId)
+                .online(online)
+                .version(++version)
+                .build();
+        if (online) {
+            onlineUsers.put(userId, delta);
+        } else {
+            onlineUsers.remove(userId);
+        }
+
+        deltaLog.addLast(delta);
+        if (deltaLog.size() > MAX_DELTA_LOG) {
+            deltaLog.removeFirst();
+        }
+        return delta;
+    }
+
+    @Override
+    public boolean isOnline(String userId) {
+        return onlineUsers.containsKey(userId);
+    }
+
+    @Override
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public List<PresenceDelta> getSnapshot() {
+        return new ArrayList<>(onlineUsers.values());
+    }
+
+    @Override
+    public synchronized List<PresenceDelta> getDeltasSince(long sinceVersion) {
+        if (sinceVersion >= version) {
+            return Collections.emptyList();
+        }
+        if (deltaLog.isEmpty() || deltaLog.peekFirst().getVersion() > sinceVersion + 1) {
+            return null;
+        }
+
+        Map<String, PresenceDelta> latest = new LinkedHashMap<>();
+        for (PresenceDelta delta : deltaLog) {
+            if (delta.getVersion() > sinceVersion) {
+                latest.remove(delta.getUserId());
+                latest.put(delta.getUserId(), delta);
+            }
+        }
+        return new ArrayList<>(latest.values());
+    }
+}
@@ -2,6 +2,7 @@ package com.example.chat.service.impl;
 
 import com.example.chat.dao.UserDao;
 import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
 import com.example.chat.service.UserService;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
@@ -14,7 +15,6 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
 import javax.crypto.SecretKey;
 import java.util.Base64;
 
@@ -49,9 +49,12 @@ public class UserServiceImpl implements UserService {
     
     @Override
     public List<User> getOnlineUsers() {
-        return userDao.findAll().stream()
-                .filter(User::isOnline)
-                .collect(Collectors.toList());
+        return userDao.findOnline();
+    }
+    
+    @Override
+    public UserPage getOnlineUsers(String cursor, int count) {
+        return userDao.findOnline(cursor, count);
     }
     
     @Override
@@ -1,8 +1,13 @@
 package com.example.chat.util;
 
+import com.example.chat.core.handler.WebSocketEncoding;
 import io.netty.channel.Channel;
 import io.netty.util.AttributeKey;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Channel工具类，用于管理Channel的属性
  */
@@ -10,6 +15,8 @@ public class ChannelUtil {
     
     private static final AttributeKey<String> USER_ID_KEY = AttributeKey.valueOf("userId");
     private static final AttributeKey<String> ROOM_ID_KEY = AttributeKey.valueOf("roomId");
+    private static final AttributeKey<Set<String>> ROOMS_KEY = AttributeKey.valueOf("rooms");
+    private static final AttributeKey<WebSocketEncoding> ENCODING_KEY = AttributeKey.valueOf("encoding");
     
     /**
      * 设置Channel关联的用户ID
@@ -39,11 +46,60 @@ public class ChannelUtil {
         return channel.attr(ROOM_ID_KEY).get();
     }
     
+    /**
+     * 记录Channel已加入的房间（反向索引，断开时只需清理这些房间）
+     */
+    public static void addRoom(Channel channel, String roomId) {
+        Set<String> rooms = channel.attr(ROOMS_KEY).get();
+        if (rooms == null) {
+            Set<String> created = ConcurrentHashMap.newKeySet();
+            rooms = channel.attr(ROOMS_KEY).setIfAbsent(created);
+            if (rooms == null) {
+                rooms = created;
+            }
+        }
+        rooms.add(roomId);
+    }
+    
+    /**
+     * 移除Channel的房间记录
+     */
+    public static void removeRoom(Channel channel, String roomId) {
+        Set<String> rooms = channel.attr(ROOMS_KEY).get();
+        if (rooms != null) {
+            rooms.remove(roomId);
+        }
+    }
+    
+    /**
+     * 获取Channel已加入的所有房间
+     */
+    public static Set<String> getRooms(Channel channel) {
+        Set<String> rooms = channel.attr(ROOMS_KEY).get();
+        return rooms != null ? rooms : Collections.emptySet();
+    }
+    
+    /**
+     * 设置WebSocket连接握手时协商的编码方式
+     */
+    public static void setEncoding(Channel channel, WebSocketEncoding encoding) {
+        channel.attr(ENCODING_KEY).set(encoding);
+    }
+    
+    /**
+     * 获取WebSocket连接的编码方式，未协商时为 TEXT
+     */
+    public static WebSocketEncoding getEncoding(Channel channel) {
+        WebSocketEncoding encoding = channel.attr(ENCODING_KEY).get();
+        return encoding != null ? encoding : WebSocketEncoding.TEXT;
+    }
+    
     /**
      * 清除Channel的所有属性
      */
     public static void clearAttributes(Channel channel) {
         channel.attr(USER_ID_KEY).set(null);
         channel.attr(ROOM_ID_KEY).set(null);
+        channel.attr(ROOMS_KEY).set(null);
     }
 }
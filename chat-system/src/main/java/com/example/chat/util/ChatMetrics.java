@@ -0,0 +1,75 @@
+package com.example.chat.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 运行时指标工具类，基于 Dropwizard Metrics
+ */
+public class ChatMetrics {
+
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    private ChatMetrics() {
+        // 私有构造函数，防止实例化
+    }
+
+    public static MetricRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    public static Counter counter(String name) {
+        return REGISTRY.counter(name);
+    }
+
+    public static Histogram histogram(String name) {
+        return REGISTRY.histogram(name);
+    }
+
+    /**
+     * 记录一次扇出：编码次数与接收者数量
+     * @param path 扇出路径，如 socketio、websocket
+     */
+    public static void recordFanout(String path, int encodes, int recipients) {
+        counter(path + ".fanout.count").inc();
+        counter(path + ".fanout.encodes").inc(encodes);
+        histogram(path + ".fanout.recipients").update(recipients);
+    }
+
+    /**
+     * 导出当前所有指标的简单快照
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Metric> entry : REGISTRY.getMetrics().entrySet()) {
+            Metric metric = entry.getValue();
+            if (metric instanceof Counter) {
+                result.put(entry.getKey(), ((Counter) metric).getCount());
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("count", histogram.getCount());
+                values.put("mean", histogram.getSnapshot().getMean());
+                values.put("max", histogram.getSnapshot().getMax());
+                result.put(entry.getKey(), values);
+            } else if (metric instanceof Gauge) {
+                result.put(entry.getKey(), ((Gauge<?>) metric).getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 每次扇出的平均编码次数，理想值为 1
+     */
+    public static double encodesPerFanout(String path) {
+        long fanouts = counter(path + ".fanout.count").getCount();
+        return fanouts == 0 ? 0 : (double) counter(path + ".fanout.encodes").getCount() / fanouts;
+    }
+}
@@ -1,19 +1,35 @@
 package com.example.chat.util;
 
 import com.example.chat.protocol.ProtocolMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Slf4j
 public class MessageBroadcaster {
     private static final ChannelGroup GLOBAL_GROUP = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     private static final Map<String, ChannelGroup> ROOM_GROUPS = new ConcurrentHashMap<>();
+    // 每个房间尚未执行完的分块写任务数
+    private static final Map<String, AtomicInteger> PENDING_CHUNKS = new ConcurrentHashMap<>();
+
+    // 成员数达到该值的房间按 EventLoop 分块并行写出
+    public static final int LARGE_ROOM_THRESHOLD = 1000;
+    private static final int MIN_CHUNK_SIZE = 64;
+    private static final int MAX_CHUNK_SIZE = 1024;
 
     public static void addChannel(Channel channel) {
         GLOBAL_GROUP.add(channel);
@@ -21,25 +37,38 @@ public class MessageBroadcaster {
 
     public static void removeChannel(Channel channel) {
         GLOBAL_GROUP.remove(channel);
-        String userId = ChannelUtil.getUserId(channel);
-        if (userId != null) {
-            ROOM_GROUPS.values().forEach(group -> group.remove(channel));
+        // 只清理该Channel实际所在的房间，而不是遍历所有房间
+        for (String roomId : ChannelUtil.getRooms(channel)) {
+            removeFromGroup(roomId, channel);
         }
     }
 
     public static void addToRoom(String roomId, Channel channel) {
-        ROOM_GROUPS.computeIfAbsent(roomId, 
-            k -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE)).add(channel);
+        ROOM_GROUPS.compute(roomId, (k, group) -> {
+            if (group == null) {
+                group = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+            }
+            group.add(channel);
+            return group;
+        });
+        ChannelUtil.addRoom(channel, roomId);
     }
 
     public static void removeFromRoom(String roomId, Channel channel) {
-        ChannelGroup group = ROOM_GROUPS.get(roomId);
-        if (group != null) {
+        removeFromGroup(roomId, channel);
+        ChannelUtil.removeRoom(channel, roomId);
+    }
+
+    private static void removeFromGroup(String roomId, Channel channel) {
+        // 在compute内完成移除和空组清理，避免与并发的addToRoom竞争
+        ROOM_GROUPS.computeIfPresent(roomId, (k, group) -> {
             group.remove(channel);
             if (group.isEmpty()) {
-                ROOM_GROUPS.remove(roomId);
+                PENDING_CHUNKS.remove(roomId);
+                return null;
             }
-        }
+            return group;
+        });
     }
 
     public static void broadcastToRoom(String roomId, ProtocolMessage ProtocolMessage) {
@@ -50,6 +79,141 @@ public class MessageBroadcaster {
         }
     }
 
+    /**
+     * 向房间写出已编码好的消息（如 TextWebSocketFrame 或二进制协议帧 ByteBuf）。
+     * 对 ByteBufHolder/ByteBuf 只做 retainedDuplicate，所有成员共享同一份缓冲区，不会重复编码。
+     * 成员按所在的 EventLoop 分组：当前线程所在 EventLoop 上的成员直接写出，
+     * 其他 EventLoop 每个只提交一个任务，而不是每个 Channel 一个任务。
+     * 大房间的每组成员再切成若干块分别提交，避免一次扇出长时间占用某个 EventLoop。
+     * @return 写出的 Channel 数量
+     */
+    public static int writeToRoom(String roomId, Object encoded) {
+        ChannelGroup group = ROOM_GROUPS.get(roomId);
+        if (group == null || group.isEmpty()) {
+            ReferenceCountUtil.release(encoded);
+            return 0;
+        }
+        // 同一房间的写出按提交顺序排队，EventLoop 的任务队列先进先出，每个接收者看到的消息顺序一致
+        synchronized (group) {
+            return writeByEventLoop(roomId, group, encoded);
+        }
+    }
+
+    private static int writeByEventLoop(String roomId, ChannelGroup group, Object encoded) {
+        Map<EventLoop, List<Channel>> byLoop = new HashMap<>();
+        int recipients = 0;
+        for (Channel channel : group) {
+            byLoop.computeIfAbsent(channel.eventLoop(), k -> new ArrayList<>()).add(channel);
+            recipients++;
+        }
+
+        boolean large = recipients >= LARGE_ROOM_THRESHOLD;
+        int chunkSize = large ? chunkSize(recipients, byLoop.size()) : Integer.MAX_VALUE;
+        AtomicInteger pending = PENDING_CHUNKS.computeIfAbsent(roomId, k -> new AtomicInteger());
+        // 还有未执行完的任务时不能直接写出，否则会越过排队中的旧消息
+        boolean inlineAllowed = pending.get() == 0;
+
+        for (Map.Entry<EventLoop, List<Channel>> entry : byLoop.entrySet()) {
+            EventLoop loop = entry.getKey();
+            List<Channel> channels = entry.getValue();
+            if (!large && inlineAllowed && loop.inEventLoop()) {
+                writeChannels(channels, encoded);
+                continue;
+            }
+            for (int from = 0; from < channels.size(); from += chunkSize) {
+                List<Channel> chunk = channels.subList(from, Math.min(from + chunkSize, channels.size()));
+                pending.incrementAndGet();
+                ReferenceCountUtil.retain(encoded);
+                loop.execute(() -> writeChunk(chunk, encoded, pending));
+            }
+        }
+        ReferenceCountUtil.release(encoded);
+        ChatMetrics.histogram("websocket.fanout.loopTasks").update(byLoop.size());
+        if (large) {
+            ChatMetrics.histogram("websocket.fanout.chunkSize").update(chunkSize);
+        }
+        return recipients;
+    }
+
+    private static void writeChunk(List<Channel> chunk, Object encoded, AtomicInteger pending) {
+        try {
+            writeChannels(chunk, encoded);
+        } finally {
+            ReferenceCountUtil.release(encoded);
+            pending.decrementAndGet();
+        }
+    }
+
+    private static void writeChannels(List<Channel> channels, Object encoded) {
+        for (Channel channel : channels) {
+            writeChannel(channel, encoded);
+        }
+    }
+
+    private static void writeChannel(Channel channel, Object encoded) {
+        if (channel.isActive()) {
+            Object message = encoded;
+            if (encoded instanceof ByteBufHolder) {
+                message = ((ByteBufHolder) encoded).retainedDuplicate();
+            } else if (encoded instanceof ByteBuf) {
+                message = ((ByteBuf) encoded).retainedDuplicate();
+            }
+            channel.writeAndFlush(message);
+        }
+    }
+
+    /**
+     * 按房间规模自适应分块：每个 EventLoop 上的成员大约分成 4 块，以便与其他连接的任务交错执行
+     */
+    public static int chunkSize(int roomSize, int workers) {
+        int perWorker = (roomSize + Math.max(workers, 1) - 1) / Math.max(workers, 1);
+        return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, perWorker / 4));
+    }
+
+    public static int getRoomSize(String roomId) {
+        ChannelGroup group = ROOM_GROUPS.get(roomId);
+        return group != null ? group.size() : 0;
+    }
+
+    /**
+     * 限速向所有连接广播已编码好的消息。
+     * 消息只编码一次，每一波按 EventLoop 分组、每个 EventLoop 提交一个任务；广播结束或取消后释放消息。
+     * @param perSecond 每秒投递的连接数
+     */
+    public static PacedBroadcast<Channel> broadcastToAllPaced(Object encoded, int perSecond) {
+        return broadcastToAllPaced(channel -> encoded, List.of(encoded), perSecond);
+    }
+
+    /**
+     * 限速广播，按连接从预先编码好的几种消息中选择一种写出（如按 WebSocket 连接的编码方式选择文本帧或二进制帧）
+     * @param encodings 所有候选消息，广播结束或取消后统一释放
+     */
+    public static PacedBroadcast<Channel> broadcastToAllPaced(Function<Channel, Object> encodedFor,
+                                                              List<?> encodings, int perSecond) {
+        List<Channel> channels = new ArrayList<>(GLOBAL_GROUP);
+        return new PacedBroadcast<>(channels, perSecond, wave -> writeWave(wave, encodedFor, encodings),
+                () -> encodings.forEach(ReferenceCountUtil::release)).start();
+    }
+
+    private static void writeWave(List<Channel> wave, Function<Channel, Object> encodedFor, List<?> encodings) {
+        Map<EventLoop, List<Channel>> byLoop = new HashMap<>();
+        for (Channel channel : wave) {
+            byLoop.computeIfAbsent(channel.eventLoop(), k -> new ArrayList<>()).add(channel);
+        }
+        for (Map.Entry<EventLoop, List<Channel>> entry : byLoop.entrySet()) {
+            encodings.forEach(ReferenceCountUtil::retain);
+            entry.getKey().execute(() -> {
+                try {
+                    for (Channel channel : entry.getValue()) {
+                        writeChannel(channel, encodedFor.apply(channel));
+                    }
+                } finally {
+                    encodings.forEach(ReferenceCountUtil::release);
+                }
+            });
+        }
+    }
+
     public static void broadcastToAll(ProtocolMessage ProtocolMessage) {
         GLOBAL_GROUP.writeAndFlush(ProtocolMessage);
         log.debug("Broadcasted ProtocolMessage to all users: {}", ProtocolMessage);
@@ -0,0 +1,128 @@
+package com.example.chat.util;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 限速分波广播
+ * 接收者按固定速率分成若干波依次投递，避免一次性写给所有连接造成 CPU 和直接内存峰值。
+ * 所有波次和取消操作都在同一个调度线程上执行，取消后不会再有新的波次开始。
+ *
+ * @param <T> 接收者类型
+ */
+@Slf4j
+public class PacedBroadcast<T> {
+
+    private static final long TICK_MILLIS = 100;
+
+    private final List<T> recipients;
+    private final int waveSize;
+    private final Consumer<List<T>> waveSender;
+    private final Runnable onFinish;
+    private final ScheduledExecutorService scheduler = GlobalEventExecutor.INSTANCE;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile int delivered;
+    private volatile boolean finished;
+    private volatile boolean cancelled;
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param recipients 接收者快照
+     * @param perSecond 每秒投递的接收者数量
+     * @param waveSender 投递一波接收者
+     * @param onFinish 广播结束（完成或取消）后执行一次，用于释放共享的编码结果
+     */
+    public PacedBroadcast(List<T> recipients, int perSecond, Consumer<List<T>> waveSender, Runnable onFinish) {
+        this.recipients = recipients;
+        this.waveSize = Math.max(1, (int) (perSecond * TICK_MILLIS / 1000));
+        this.waveSender = waveSender;
+        this.onFinish = onFinish;
+    }
+
+    public PacedBroadcast<T> start() {
+        scheduler.execute(() -> {
+            if (!finished) {
+                task = scheduler.scheduleAtFixedRate(this::tick, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * 取消广播，已经投递的波次不受影响
+     */
+    public void cancel() {
+        scheduler.execute(() -> {
+            if (!finished) {
+                cancelled = true;
+                finish();
+            }
+        });
+    }
+
+    public int getDelivered() {
+        return delivered;
+    }
+
+    public int getTotal() {
+        return recipients.size();
+    }
+
+    public boolean isDone() {
+        return finished;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    private void tick() {
+        if (finished) {
+            return;
+        }
+        int from = delivered;
+        int to = Math.min(from + waveSize, recipients.size());
+        if (from < to) {
+            try {
+                waveSender.accept(recipients.subList(from, to));
+            } catch (Exception e) {
+                log.error("Failed to deliver broadcast wave [{}, {})", from, to, e);
+            }
+            delivered = to;
+            ChatMetrics.counter("broadcast.paced.delivered").inc(to - from);
+        }
+        if (to >= recipients.size()) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        try {
+            onFinish.run();
+        } finally {
+            if (cancelled) {
+                completion.cancel(false);
+            } else {
+                completion.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.chat.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 变长整数与长度前缀字符串的读写工具
+ * varint 每字节低7位存数据、最高位表示后面还有字节（与 protobuf 相同）；
+ * 有符号数先做 zigzag 变换，使小的负数也只占少量字节。
+ */
+public class VarIntUtil {
+
+    private VarIntUtil() {
+        // 私有构造函数，防止实例化
+    }
+
+    public static void writeVarInt(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    public static int readVarInt(ByteBuf buf) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("Malformed varint");
+    }
+
+    public static void writeVarLong(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    public static long readVarLong(ByteBuf buf) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new CorruptedFrameException("Malformed varlong");
+    }
+
+    /**
+     * 无符号 varint 编码后占用的字节数
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    public static void writeSignedVarInt(ByteBuf buf, int value) {
+        writeVarInt(buf, (value << 1) ^ (value >> 31));
+    }
+
+    public static int readSignedVarInt(ByteBuf buf) {
+        int raw = readVarInt(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public static void writeSignedVarLong(ByteBuf buf, long value) {
+        writeVarLong(buf, (value << 1) ^ (value >> 63));
+    }
+
+    public static long readSignedVarLong(ByteBuf buf) {
+        long raw = readVarLong(buf);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * 写入长度前缀的UTF-8字符串，长度字段为 字节数+1，0 表示 null
+     */
+    public static void writeString(ByteBuf buf, String value) {
+        if (value == null) {
+            buf.writeByte(0);
+            return;
+        }
+        int length = ByteBufUtil.utf8Bytes(value);
+        writeVarInt(buf, length + 1);
+        ByteBufUtil.reserveAndWriteUtf8(buf, value, length);
+    }
+
+    public static String readString(ByteBuf buf) {
+        int length = readVarInt(buf) - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (length > buf.readableBytes()) {
+            throw new CorruptedFrameException("String length " + length + " exceeds remaining " + buf.readableBytes());
+        }
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+}
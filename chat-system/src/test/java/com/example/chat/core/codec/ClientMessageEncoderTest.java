@@ -0,0 +1,82 @@
+package com.example.chat.core.codec;
+
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.User;
+import com.example.chat.service.UserService;
+import com.example.chat.util.ChatMetrics;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ClientMessageEncoderTest {
+
+    private UserService userService;
+    private ClientMessageEncoder encoder;
+
+    @BeforeEach
+    public void setup() {
+        userService = mock(UserService.class);
+        User sender = new User();
+        sender.setId("u1");
+        sender.setUsername("alice");
+        when(userService.getUserById("u1")).thenReturn(sender);
+        encoder = new ClientMessageEncoder(userService, JsonUtil.getObjectMapper());
+    }
+
+    @Test
+    public void testEncodesOncePerMessage() {
+        ChatMessage message = message("m1", "hello");
+        long before = ChatMetrics.counter("message.clientjson.encodes").getCount();
+
+        SerializableString first = encoder.encode(message);
+        SerializableString second = encoder.encode(message);
+
+        assertSame(first, second);
+        assertEquals(before + 1, ChatMetrics.counter("message.clientjson.encodes").getCount());
+        verify(userService, times(1)).getUserById("u1");
+    }
+
+    @Test
+    public void testPageIsJsonArrayOfCachedPayloads() throws Exception {
+        ChatMessage m1 = message("m1", "hello");
+        ChatMessage m2 = message("m2", "world");
+        String cached = encoder.encode(m1).getValue();
+
+        JsonNode page = JsonUtil.getObjectMapper().readTree(encoder.encodePage(List.of(m1, m2)));
+        assertEquals(2, page.size());
+        assertEquals(cached, page.get(0).toString());
+        assertEquals("m2", page.get(1).get("_id").asText());
+        assertEquals("world", page.get(1).get("text").asText());
+        assertEquals("alice", page.get(1).get("sender").get("username").asText());
+
+        assertEquals("[]", new String(encoder.encodePage(List.of())));
+    }
+
+    @Test
+    public void testCacheDoesNotAffectEquality() {
+        ChatMessage encoded = message("m1", "hello");
+        encoder.encode(encoded);
+        ChatMessage fresh = message("m1", "hello");
+
+        assertEquals(fresh, encoded);
+        assertEquals(fresh.hashCode(), encoded.hashCode());
+    }
+
+    private ChatMessage message(String id, String content) {
+        return ChatMessage.builder()
+                .id(id)
+                .senderId("u1")
+                .receiverId("u2")
+                .content(content)
+                .type(ChatMessage.MessageType.TEXT)
+                .timestamp(1000L)
+                .build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.chat.core.handler;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BackpressureHandlerTest {
+
+    private EmbeddedChannel newChannel(OverflowPolicy policy) {
+        EmbeddedChannel channel = new EmbeddedChannel(new BackpressureHandler("test", 2, policy));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+        return channel;
+    }
+
+    private String readText(EmbeddedChannel channel) {
+        TextWebSocketFrame frame = channel.readOutbound();
+        String text = frame.text();
+        frame.release();
+        return text;
+    }
+
+    @Test
+    public void testDropOldestWhenQueueOverflows() {
+        EmbeddedChannel channel = newChannel(OverflowPolicy.DROP_OLDEST);
+        BackpressureHandler handler = channel.pipeline().get(BackpressureHandler.class);
+
+        // 超过高水位后 Channel 变为不可写
+        channel.write(new TextWebSocketFrame("01234567890123456789"));
+        assertFalse(channel.isWritable());
+
+        ChannelFuture dropped = channel.write(new TextWebSocketFrame("1"));
+        channel.write(new TextWebSocketFrame("2"));
+        channel.write(new TextWebSocketFrame("3"));
+        assertTrue(dropped.isDone());
+        assertFalse(dropped.isSuccess());
+        assertEquals(2, handler.getPendingCount());
+
+        // 写出后回到低水位，积压的消息按顺序发出
+        channel.flush();
+        channel.runPendingTasks();
+        assertEquals(0, handler.getPendingCount());
+        assertEquals("01234567890123456789", readText(channel));
+        assertEquals("2", readText(channel));
+        assertEquals("3", readText(channel));
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testDropNonCriticalKeepsChatMessages() {
+        EmbeddedChannel channel = newChannel(OverflowPolicy.DROP_NON_CRITICAL);
+
+        channel.write(new TextWebSocketFrame("01234567890123456789"));
+        channel.write(new TextWebSocketFrame("chat-1"));
+        channel.write(new NonCriticalTextFrame("presence"));
+        channel.write(new TextWebSocketFrame("chat-2"));
+
+        channel.flush();
+        channel.runPendingTasks();
+        assertEquals("01234567890123456789", readText(channel));
+        assertEquals("chat-1", readText(channel));
+        assertEquals("chat-2", readText(channel));
+        assertTrue(channel.isActive());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testDropNonCriticalDropsMarkedSocketIOEvents() {
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new BackpressureHandler("test", 2, OverflowPolicy.DROP_NON_CRITICAL),
+                new NonCriticalEventMarker("userStatus"));
+        channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(8, 16));
+
+        channel.write(new TextWebSocketFrame("01234567890123456789"));
+        channel.write(new TextWebSocketFrame("42[\"newMessage\",{}]"));
+        channel.write(new TextWebSocketFrame("42[\"userStatus\",{}]"));
+        channel.write(new TextWebSocketFrame("42[\"newMessage\",{}]"));
+
+        channel.flush();
+        channel.runPendingTasks();
+        assertEquals("01234567890123456789", readText(channel));
+        assertEquals("42[\"newMessage\",{}]", readText(channel));
+        assertEquals("42[\"newMessage\",{}]", readText(channel));
+        assertTrue(channel.isActive());
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testDisconnectWhenQueueOverflows() {
+        EmbeddedChannel channel = newChannel(OverflowPolicy.DISCONNECT);
+
+        channel.write(new TextWebSocketFrame("01234567890123456789"));
+        channel.write(new TextWebSocketFrame("1"));
+        channel.write(new TextWebSocketFrame("2"));
+        channel.write(new TextWebSocketFrame("3"));
+
+        assertFalse(channel.isActive());
+        channel.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.util.JsonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonFrameDispatcherTest {
+
+    private final List<Object> received = new ArrayList<>();
+    private final JsonFrameDispatcher<List<Object>> dispatcher =
+            new JsonFrameDispatcher<List<Object>>(JsonUtil.getObjectMapper())
+                    .on("message", WebSocketRequests.Chat.class, (sink, ctx, r) -> sink.add(r))
+                    .on("join", WebSocketRequests.Room.class, (sink, ctx, r) -> sink.add(r))
+                    .on("getUsers", WebSocketRequests.Empty.class, (sink, ctx, r) -> sink.add(r));
+
+    @Test
+    public void testBindsFieldsAfterType() throws Exception {
+        String type = dispatcher.dispatch(received, null,
+                "{\"type\":\"message\",\"userId\":\"u1\",\"roomId\":\"r1\",\"content\":\"hi\",\"clientSeq\":7}");
+        assertEquals("message", type);
+        assertEquals(new WebSocketRequests.Chat("u1", "r1", null, "hi"), received.get(0));
+    }
+
+    @Test
+    public void testTypeNotFirstFallsBackToTree() throws Exception {
+        assertEquals("join", dispatcher.dispatch(received, null, "{\"roomId\":\"r1\",\"type\":\"join\",\"userId\":\"u1\"}"));
+        assertEquals(new WebSocketRequests.Room("u1", "r1"), received.get(0));
+    }
+
+    @Test
+    public void testTypeOnlyAndUnknownType() throws Exception {
+        assertEquals("getUsers", dispatcher.dispatch(received, null, "{\"type\":\"getUsers\"}"));
+        assertEquals(new WebSocketRequests.Empty(), received.get(0));
+
+        assertNull(dispatcher.dispatch(received, null, "{\"type\":\"nope\",\"roomId\":\"r1\"}"));
+        assertNull(dispatcher.dispatch(received, null, "{\"roomId\":\"r1\"}"));
+        assertEquals(1, received.size());
+        assertThrows(Exception.class, () -> dispatcher.dispatch(received, null, "[1,2]"));
+    }
+}
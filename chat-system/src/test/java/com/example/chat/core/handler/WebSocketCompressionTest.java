@@ -0,0 +1,123 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.config.ChatConfig;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WebSocketCompressionTest {
+
+    @Test
+    public void testSmallFramesSkipCompression() throws Exception {
+        ChatConfig.Compression config = new ChatConfig.Compression();
+        config.setMinPayloadSize(64);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        WebSocketCompression.addLast(channel.pipeline(), config, "test");
+        FullHttpResponse handshake = handshake(channel, "permessage-deflate");
+        assertEquals("permessage-deflate", handshake.headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS));
+        handshake.release();
+
+        // 小帧原样发送
+        channel.writeOutbound(new TextWebSocketFrame("{\"type\":\"ack\"}"));
+        WebSocketFrame small = channel.readOutbound();
+        assertEquals(0, small.rsv());
+        assertEquals("{\"type\":\"ack\"}", small.content().toString(StandardCharsets.UTF_8));
+        small.release();
+
+        // 大帧压缩，解压后与原文一致
+        String payload = "{\"type\":\"message\",\"content\":\"" + "hello world ".repeat(100) + "\"}";
+        channel.writeOutbound(new TextWebSocketFrame(payload));
+        WebSocketFrame large = channel.readOutbound();
+        assertEquals(0x04, large.rsv() & 0x04);
+        assertTrue(large.content().readableBytes() < payload.length() / 4);
+        assertEquals(payload, inflate(ByteBufUtil.getBytes(large.content())));
+        large.release();
+
+        WebSocketCompression.Stats stats = WebSocketCompression.statsOf(channel);
+        assertEquals(1, stats.getCompressedFrames());
+        assertEquals(1, stats.getSkippedFrames());
+        assertEquals(payload.length() + 14, stats.getRawBytes());
+        assertTrue(stats.getRatio() < 0.5);
+        // 握手完成后扩展握手处理器被压缩编解码器替换
+        assertNull(channel.pipeline().get(WebSocketCompression.EXTENSION_NAME));
+        channel.finish();
+    }
+
+    @Test
+    public void testClientWithoutExtensionStaysUncompressed() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        WebSocketCompression.addLast(channel.pipeline(), new ChatConfig.Compression(), "test");
+        FullHttpResponse handshake = handshake(channel, null);
+        assertNull(handshake.headers().get(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS));
+        handshake.release();
+
+        String payload = "x".repeat(1024);
+        channel.writeOutbound(new TextWebSocketFrame(payload));
+        WebSocketFrame frame = channel.readOutbound();
+        assertEquals(0, frame.rsv());
+        assertEquals(payload.length(), frame.content().readableBytes());
+        frame.release();
+        assertEquals(1.0, WebSocketCompression.statsOf(channel).getRatio());
+        channel.finish();
+    }
+
+    @Test
+    public void testDisabledInstallsNothing() {
+        ChatConfig.Compression config = new ChatConfig.Compression();
+        config.setEnabled(false);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        WebSocketCompression.addLast(channel.pipeline(), config, "test");
+        assertNull(channel.pipeline().get(WebSocketCompression.EXTENSION_NAME));
+        assertNull(WebSocketCompression.statsOf(channel));
+        channel.finish();
+    }
+
+    private static FullHttpResponse handshake(EmbeddedChannel channel, String extensions) {
+        DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws");
+        request.headers()
+                .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE)
+                .set(HttpHeaderNames.UPGRADE, HttpHeaderValues.WEBSOCKET);
+        if (extensions != null) {
+            request.headers().set(HttpHeaderNames.SEC_WEBSOCKET_EXTENSIONS, extensions);
+        }
+        channel.writeInbound(request);
+        ((DefaultFullHttpRequest) channel.readInbound()).release();
+
+        DefaultFullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1,
+                HttpResponseStatus.SWITCHING_PROTOCOLS);
+        response.headers()
+                .set(HttpHeaderNames.CONNECTION, HttpHeaderValues.UPGRADE)
+                .set(HttpHeaderNames.UPGRADE, HttpHeaderValues.WEBSOCKET);
+        channel.writeOutbound(response);
+        return channel.readOutbound();
+    }
+
+    private static String inflate(byte[] compressed) throws Exception {
+        // permessage-deflate 去掉了每条消息末尾的 00 00 FF FF，解压前补回
+        byte[] input = new byte[compressed.length + 4];
+        System.arraycopy(compressed, 0, input, 0, compressed.length);
+        input[compressed.length + 2] = (byte) 0xFF;
+        input[compressed.length + 3] = (byte) 0xFF;
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(input);
+        byte[] out = new byte[64 * 1024];
+        int length = inflater.inflate(out);
+        inflater.end();
+        return new String(out, 0, length, StandardCharsets.UTF_8);
+    }
+}
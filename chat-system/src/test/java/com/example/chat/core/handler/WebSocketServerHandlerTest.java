@@ -0,0 +1,236 @@
+package com.example.chat.core.handler;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.core.codec.MessageCodec;
+import com.example.chat.core.codec.SerializerType;
+import com.example.chat.core.codec.WebSocketPushEncoder;
+import com.example.chat.core.server.SessionHub;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.User;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.request.LoginRequest;
+import com.example.chat.protocol.request.RoomRequest;
+import com.example.chat.protocol.response.ChatResponse;
+import com.example.chat.protocol.response.LoginResponse;
+import com.example.chat.protocol.response.PushMessage;
+import com.example.chat.protocol.response.RoomResponse;
+import com.example.chat.service.MessageService;
+import com.example.chat.service.RoomService;
+import com.example.chat.service.UserService;
+import com.example.chat.util.ChannelUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class WebSocketServerHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MessageCodec clientCodec = new MessageCodec(SerializerType.BINARY);
+    private UserService userService;
+    private RoomService roomService;
+    private MessageService messageService;
+    private SessionHub sessionHub;
+
+    @BeforeEach
+    public void setup() {
+        userService = mock(UserService.class);
+        roomService = mock(RoomService.class);
+        messageService = mock(MessageService.class);
+        sessionHub = new SessionHub(new ChatConfig());
+        when(userService.validateToken("alice-token")).thenReturn("alice");
+        when(userService.getUserById("alice")).thenReturn(User.builder().id("alice").username("alice").build());
+    }
+
+    @Test
+    public void testBinaryClientGetsBinaryResponses() throws Exception {
+        EmbeddedChannel channel = newChannel("chat.binary");
+        assertEquals(WebSocketEncoding.BINARY, ChannelUtil.getEncoding(channel));
+
+        // 登录请求的 password 字段传 token
+        LoginRequest login = new LoginRequest();
+        login.setPassword("alice-token");
+        LoginResponse loginResponse = (LoginResponse) exchange(channel, login);
+        assertEquals(MessageType.LOGIN_RESPONSE, loginResponse.getType());
+        assertEquals("alice", loginResponse.getUserId());
+        assertEquals(login.getRequestId(), loginResponse.getRequestId());
+
+        RoomRequest join = new RoomRequest(MessageType.ROOM_JOIN, "room1");
+        RoomResponse joinResponse = (RoomResponse) exchange(channel, join);
+        assertTrue(joinResponse.isSuccess());
+        assertEquals("room1", joinResponse.getRoomId());
+        verify(roomService).addUserToRoom("room1", "alice");
+
+        ChatRequest chat = new ChatRequest(null, "hello", "room1");
+        ChatResponse chatResponse = (ChatResponse) exchange(channel, chat);
+        assertTrue(chatResponse.isSuccess());
+        assertEquals(chat.getRequestId(), chatResponse.getRequestId());
+        verify(messageService).sendMessage(argThat(message ->
+                "alice".equals(message.getSenderId()) && "hello".equals(message.getContent())));
+
+        // 房间推送同样按二进制编码写出
+        BinaryWebSocketFrame pushFrame = channel.readOutbound();
+        assertNotNull(pushFrame);
+        PushMessage push = (PushMessage) clientCodec.decode(pushFrame.content());
+        pushFrame.release();
+        assertEquals(MessageType.MESSAGE_PUSH, push.getType());
+        assertEquals(chatResponse.getMessage(), push.getMessage().getId());
+        assertEquals("alice", push.getMessage().getSenderId());
+        assertEquals("hello", push.getMessage().getContent());
+        assertEquals("room1", push.getMessage().getRoomId());
+        assertEquals(ChatMessage.MessageType.TEXT, push.getMessage().getType());
+
+        // 没有房间的聊天请求无法投递，直接拒绝而不保存
+        ProtocolMessage error = exchange(channel, new ChatRequest(null, "lost", null));
+        assertEquals(MessageType.ERROR, error.getType());
+        assertEquals(400, error.getStatusCode());
+        verify(messageService, times(1)).sendMessage(argThat(message -> "alice".equals(message.getSenderId())));
+
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testBinaryRequestBeforeLoginIsRejected() throws Exception {
+        EmbeddedChannel channel = newChannel("chat.binary");
+        ProtocolMessage error = exchange(channel, new ChatRequest(null, "hi", "room1"));
+        assertEquals(MessageType.ERROR, error.getType());
+        assertEquals(401, error.getStatusCode());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testTextClientKeepsJson() throws Exception {
+        EmbeddedChannel channel = newChannel(null);
+        assertEquals(WebSocketEncoding.TEXT, ChannelUtil.getEncoding(channel));
+
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"auth\",\"token\":\"alice-token\"}"));
+        TextWebSocketFrame frame = channel.readOutbound();
+        Map<?, ?> response = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertEquals("auth", response.get("type"));
+        assertEquals("alice", response.get("userId"));
+
+        // 已认证的连接不能再换成其他身份
+        when(userService.validateToken("bob-token")).thenReturn("bob");
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"auth\",\"token\":\"bob-token\"}"));
+        frame = channel.readOutbound();
+        Map<?, ?> error = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertEquals("error", error.get("type"));
+        assertEquals(400, error.get("code"));
+        assertFalse(sessionHub.isOnline("bob"));
+        assertTrue(sessionHub.isOnline("alice"));
+
+        // 加入房间的确认类型与早期版本一致
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"join\",\"roomId\":\"lobby\"}"));
+        frame = channel.readOutbound();
+        Map<?, ?> joined = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertEquals("join", joined.get("type"));
+        assertEquals("lobby", joined.get("roomId"));
+
+        // 缺少接收方的消息仍然回复 Missing required fields
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"message\",\"content\":\"hi\"}"));
+        frame = channel.readOutbound();
+        Map<?, ?> missing = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertEquals("error", missing.get("type"));
+        assertEquals("Missing required fields", missing.get("message"));
+        verify(messageService, never()).sendMessage(argThat(message -> "alice".equals(message.getSenderId())));
+
+        // 房间推送保留旧的 userId/roomId/content 字段
+        channel.writeInbound(new TextWebSocketFrame(
+                "{\"type\":\"message\",\"roomId\":\"lobby\",\"content\":\"hi\"}"));
+        channel.runPendingTasks();
+        Map<String, Map<?, ?>> replies = new HashMap<>();
+        for (TextWebSocketFrame reply; (reply = channel.readOutbound()) != null; ) {
+            Map<?, ?> body = objectMapper.readValue(reply.text(), Map.class);
+            reply.release();
+            replies.put((String) body.get("type"), body);
+        }
+        Map<?, ?> pushed = replies.get("message");
+        assertNotNull(pushed);
+        assertEquals("alice", pushed.get("userId"));
+        assertEquals("lobby", pushed.get("roomId"));
+        assertEquals("hi", pushed.get("content"));
+        assertEquals(replies.get("messageAck").get("messageId"), pushed.get("id"));
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void testBatchSendPersistsOnceWithSingleAck() throws Exception {
+        EmbeddedChannel channel = newChannel(null);
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"auth\",\"token\":\"alice-token\"}"));
+        ((TextWebSocketFrame) channel.readOutbound()).release();
+
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"messages\",\"messages\":["
+                + "{\"clientId\":\"c1\",\"roomId\":\"room1\",\"content\":\"a\"},"
+                + "{\"clientId\":\"c2\",\"content\":\"b\"},"
+                + "{\"clientId\":\"c3\",\"receiverId\":\"bob\",\"content\":\"c\"}]}"));
+        TextWebSocketFrame frame = channel.readOutbound();
+        Map<?, ?> ack = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertNull(channel.readOutbound());
+
+        assertEquals("batchAck", ack.get("type"));
+        List<?> results = (List<?>) ack.get("results");
+        assertEquals(3, results.size());
+        Map<?, ?> first = (Map<?, ?>) results.get(0);
+        Map<?, ?> second = (Map<?, ?>) results.get(1);
+        assertEquals("c1", first.get("clientId"));
+        assertEquals(true, first.get("success"));
+        assertNotNull(first.get("messageId"));
+        assertEquals(false, second.get("success"));
+        assertEquals("Missing roomId or receiverId", second.get("error"));
+
+        verify(messageService, times(1)).saveMessages(argThat(batch -> batch.size() == 2
+                && batch.get(0).getId().equals(first.get("messageId"))
+                && "bob".equals(batch.get(1).getReceiverId())));
+        verify(messageService, never()).sendMessage(any());
+
+        // 超过上限的批次整体拒绝
+        channel.writeInbound(new TextWebSocketFrame("{\"type\":\"messages\",\"messages\":[{},{},{},{}]}"));
+        frame = channel.readOutbound();
+        Map<?, ?> rejected = objectMapper.readValue(frame.text(), Map.class);
+        frame.release();
+        assertEquals(false, rejected.get("success"));
+        assertNull(rejected.get("results"));
+        verifyNoMoreInteractions(messageService);
+        assertFalse(channel.finishAndReleaseAll());
+    }
+
+    private EmbeddedChannel newChannel(String subprotocol) {
+        WebSocketServerHandler handler = new WebSocketServerHandler(userService, roomService, messageService,
+                sessionHub, null, 3);
+        EmbeddedChannel channel = new EmbeddedChannel(WebSocketPushEncoder.INSTANCE, handler);
+        WebSocketServerProtocolHandler.HandshakeComplete handshake =
+                mock(WebSocketServerProtocolHandler.HandshakeComplete.class);
+        when(handshake.selectedSubprotocol()).thenReturn(subprotocol);
+        channel.pipeline().fireUserEventTriggered(handshake);
+        return channel;
+    }
+
+    private ProtocolMessage exchange(EmbeddedChannel channel, ProtocolMessage request) throws Exception {
+        channel.writeInbound(new BinaryWebSocketFrame(clientCodec.encode(ByteBufAllocator.DEFAULT, request)));
+        BinaryWebSocketFrame frame = channel.readOutbound();
+        assertNotNull(frame, "no response for " + request.getType());
+        try {
+            return clientCodec.decode(frame.content());
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.chat.core.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkedRoomFanoutTest {
+
+    @Test
+    public void testPerRecipientOrderAcrossMessages() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ChunkedRoomFanout<Integer> fanout = new ChunkedRoomFanout<>("test", executor, 4);
+        Map<Integer, List<Integer>> received = new ConcurrentHashMap<>();
+        List<Integer> members = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            members.add(i);
+            received.put(i, new CopyOnWriteArrayList<>());
+        }
+
+        for (int message = 0; message < 5; message++) {
+            int seq = message;
+            fanout.submit("room1", members, member -> received.get(member).add(seq));
+        }
+        fanout.submit("room1", members, member -> { }).get(10, TimeUnit.SECONDS);
+
+        for (List<Integer> messages : received.values()) {
+            assertEquals(List.of(0, 1, 2, 3, 4), messages);
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSmallRoomWaitsForQueuedChunks() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ChunkedRoomFanout<Integer> fanout = new ChunkedRoomFanout<>("test", executor, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> received = new CopyOnWriteArrayList<>();
+
+        // 房间空闲时小房间直接在当前线程投递
+        assertEquals(1, fanout.submitOrRun("room1", List.of(1), member -> received.add("inline")));
+        assertEquals(List.of("inline"), received);
+
+        fanout.submit("room1", List.of(1), member -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add("chunked");
+        });
+        // 仍有分块未投递完，小房间的消息排在后面而不是直接写出
+        assertEquals(1, fanout.submitOrRun("room1", List.of(1), member -> received.add("queued")));
+        assertEquals(List.of("inline"), received);
+
+        release.countDown();
+        fanout.submit("room1", List.of(1), member -> { }).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("inline", "chunked", "queued"), received);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.chat.core.server;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventLoopAffinityTest {
+
+    @Test
+    public void testRoomOwnerIsStable() {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(4);
+        try {
+            EventLoopAffinity affinity = new EventLoopAffinity("test", group);
+            assertSame(affinity.ownerOf("room1"), affinity.ownerOf("room1"));
+            assertNull(affinity.preferredLoop(List.of()));
+            assertSame(affinity.ownerOf("room1"), affinity.preferredLoop(List.of("room1")));
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test
+    public void testMigrateChannelToTargetLoop() throws Exception {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(2);
+        LocalAddress address = new LocalAddress("affinity-test");
+        Channel server = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInboundHandlerAdapter()).bind(address).sync().channel();
+        Channel client = new Bootstrap().group(group).channel(LocalChannel.class)
+                .handler(new ChannelInboundHandlerAdapter()).connect(address).sync().channel();
+        try {
+            EventLoopAffinity affinity = new EventLoopAffinity("test", group);
+            EventLoop target = group.next();
+            if (target == client.eventLoop()) {
+                target = group.next();
+            }
+            assertNotSame(target, client.eventLoop());
+
+            EventLoop expected = target;
+            CountDownLatch migrated = new CountDownLatch(1);
+            client.eventLoop().execute(() -> affinity.migrate(client, expected, () -> {
+                assertTrue(expected.inEventLoop());
+                migrated.countDown();
+            }));
+
+            assertTrue(migrated.await(5, TimeUnit.SECONDS));
+            assertSame(expected, client.eventLoop());
+            assertTrue(client.isActive());
+        } finally {
+            client.close().sync();
+            server.close().sync();
+            group.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.chat.core.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoomBatcherTest {
+
+    @Test
+    public void testFlushWhenWindowExpires() throws Exception {
+        List<List<String>> flushed = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        RoomBatcher<String> batcher = new RoomBatcher<>("test-batch", Collections.singleton("room1"), 20, 100,
+                (roomId, messages) -> {
+                    flushed.add(messages);
+                    latch.countDown();
+                });
+
+        assertTrue(batcher.offer("room1", "\"a\""));
+        assertTrue(batcher.offer("room1", "\"b\""));
+        assertFalse(batcher.offer("room2", "\"c\""));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, flushed.size());
+        assertEquals(List.of("\"a\"", "\"b\""), flushed.get(0));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void testFlushWhenBatchIsFull() throws Exception {
+        List<List<String>> flushed = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        RoomBatcher<String> batcher = new RoomBatcher<>("test-batch", Collections.singleton("room1"), 60000, 2,
+                (roomId, messages) -> {
+                    flushed.add(messages);
+                    latch.countDown();
+                });
+
+        for (int i = 0; i < 4; i++) {
+            batcher.offer("room1", String.valueOf(i));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("0", "1"), flushed.get(0));
+        assertEquals(List.of("2", "3"), flushed.get(1));
+        batcher.shutdown();
+    }
+}
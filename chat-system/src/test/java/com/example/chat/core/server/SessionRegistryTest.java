@@ -0,0 +1,62 @@
+package com.example.chat.core.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionRegistryTest {
+
+    @Test
+    public void testFirstAndLastSessionTransitions() {
+        SessionRegistry<String> registry = new SessionRegistry<>();
+
+        assertTrue(registry.add("user1", "s1"));
+        assertFalse(registry.add("user1", "s2"));
+        assertEquals(2, registry.sessionCount("user1"));
+
+        assertFalse(registry.remove("user1", "s1"));
+        assertTrue(registry.remove("user1", "s2"));
+        // 重复注销不会再次触发下线
+        assertFalse(registry.remove("user1", "s2"));
+        assertFalse(registry.isOnline("user1"));
+        assertTrue(registry.onlineUsers().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentSessionsProduceBalancedTransitions() throws Exception {
+        SessionRegistry<Integer> registry = new SessionRegistry<>();
+        AtomicInteger online = new AtomicInteger();
+        AtomicInteger offline = new AtomicInteger();
+        int threads = 8;
+        int rounds = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            int base = t * rounds;
+            executor.execute(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    if (registry.add("user1", base + i)) {
+                        online.incrementAndGet();
+                    }
+                    if (registry.remove("user1", base + i)) {
+                        offline.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertFalse(registry.isOnline("user1"));
+        assertTrue(online.get() > 0);
+        assertEquals(online.get(), offline.get());
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.chat.core.server;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.core.codec.MessageCodec;
+import com.example.chat.core.codec.MessageCodecV2;
+import com.example.chat.core.codec.VarIntFrameDecoder;
+import com.example.chat.core.codec.WebSocketPushEncoder;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.model.User;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.request.HeartbeatRequest;
+import com.example.chat.protocol.request.LoginRequest;
+import com.example.chat.protocol.request.MessageHistoryRequest;
+import com.example.chat.protocol.request.RoomRequest;
+import com.example.chat.protocol.response.*;
+import com.example.chat.service.JwtService;
+import com.example.chat.service.UserService;
+import com.example.chat.service.impl.MessageServiceImpl;
+import com.example.chat.service.impl.RoomServiceImpl;
+import com.example.chat.util.MessageBroadcaster;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class TcpChatServerTest {
+
+    private TcpChatServer server;
+    private SessionHub sessionHub;
+    private EventLoopGroup clientGroup;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        UserService userService = mock(UserService.class);
+        User alice = User.builder().id("alice").username("alice").build();
+        User bot = User.builder().id("bot").username("bot").build();
+        when(userService.login("alice@example.com", "secret")).thenReturn(alice);
+        when(userService.validateToken("bot-token")).thenReturn("bot");
+        when(userService.getUserById("alice")).thenReturn(alice);
+        when(userService.getUserById("bot")).thenReturn(bot);
+        JwtService jwtService = mock(JwtService.class);
+        when(jwtService.generateToken("alice")).thenReturn("alice-token");
+
+        ChatConfig config = new ChatConfig();
+        config.getTcp().setEnabled(true);
+        config.getTcp().setPort(0);
+
+        sessionHub = new SessionHub(config);
+        server = new TcpChatServer(userService, new RoomServiceImpl(), new MessageServiceImpl(), jwtService, config,
+                sessionHub);
+        server.start();
+        clientGroup = new NioEventLoopGroup(2);
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.stop();
+        sessionHub.stop();
+        clientGroup.shutdownGracefully();
+    }
+
+    @Test
+    public void testV1AndV2ClientsShareRooms() throws Exception {
+        BlockingQueue<ProtocolMessage> v1Inbox = new LinkedBlockingQueue<>();
+        BlockingQueue<ProtocolMessage> v2Inbox = new LinkedBlockingQueue<>();
+        Channel v1 = connect(v1Inbox, false);
+        Channel v2 = connect(v2Inbox, true);
+
+        // 心跳不需要登录
+        HeartbeatRequest heartbeat = HeartbeatRequest.builder().type(MessageType.HEARTBEAT_REQUEST).build();
+        v2.writeAndFlush(heartbeat).sync();
+        ProtocolMessage pong = next(v2Inbox, MessageType.HEARTBEAT_RESPONSE);
+        assertEquals(heartbeat.getRequestId(), pong.getRequestId());
+
+        // 未登录时拒绝业务请求
+        v2.writeAndFlush(new ChatRequest(null, "hi", "room1"));
+        ProtocolMessage denied = next(v2Inbox, MessageType.ERROR);
+        assertEquals(401, denied.getStatusCode());
+
+        // v1 按账号密码登录，v2 用 token 登录
+        LoginRequest aliceLogin = new LoginRequest();
+        aliceLogin.setUsername("alice@example.com");
+        aliceLogin.setPassword("secret");
+        v1.writeAndFlush(aliceLogin);
+        LoginResponse aliceSession = (LoginResponse) next(v1Inbox, MessageType.LOGIN_RESPONSE);
+        assertEquals("alice", aliceSession.getUserId());
+        assertEquals("alice-token", aliceSession.getToken());
+
+        // 已登录的连接不能再换成其他身份
+        LoginRequest relogin = new LoginRequest();
+        relogin.setPassword("bot-token");
+        v1.writeAndFlush(relogin);
+        assertEquals(400, next(v1Inbox, MessageType.ERROR).getStatusCode());
+        assertFalse(sessionHub.isOnline("bot"));
+        assertTrue(sessionHub.isOnline("alice"));
+
+        LoginRequest botLogin = new LoginRequest();
+        botLogin.setPassword("bot-token");
+        v2.writeAndFlush(botLogin);
+        assertEquals("bot", ((LoginResponse) next(v2Inbox, MessageType.LOGIN_RESPONSE)).getUserId());
+
+        // alice 建房，bot 加入
+        RoomRequest create = new RoomRequest(MessageType.ROOM_CREATE, null);
+        create.setRoomName("ops");
+        v1.writeAndFlush(create);
+        String roomId = ((RoomResponse) next(v1Inbox, MessageType.ROOM_RESPONSE)).getRoomId();
+        assertNotNull(roomId);
+
+        // 非成员不能向房间发言
+        ChatRequest intrude = new ChatRequest(null, "let me in", roomId);
+        v2.writeAndFlush(intrude);
+        ProtocolMessage forbidden = next(v2Inbox, MessageType.ERROR);
+        assertEquals(403, forbidden.getStatusCode());
+        assertEquals(intrude.getRequestId(), forbidden.getRequestId());
+
+        v2.writeAndFlush(new RoomRequest(MessageType.ROOM_JOIN, roomId));
+        assertTrue(((RoomResponse) next(v2Inbox, MessageType.ROOM_RESPONSE)).isSuccess());
+
+        // bot 发言，两种协议的成员都收到推送
+        ChatRequest say = new ChatRequest(null, "deploy finished", roomId);
+        v2.writeAndFlush(say);
+        ChatResponse ack = (ChatResponse) next(v2Inbox, MessageType.CHAT_RESPONSE);
+        assertTrue(ack.isSuccess());
+        assertEquals(say.getRequestId(), ack.getRequestId());
+
+        // 推送携带完整的消息字段，请求ID不占用客户端的请求ID
+        ChatMessage v1Push = ((PushMessage) next(v1Inbox, MessageType.MESSAGE_PUSH)).getMessage();
+        assertEquals(ack.getMessage(), v1Push.getId());
+        assertEquals("bot", v1Push.getSenderId());
+        assertEquals("deploy finished", v1Push.getContent());
+        assertEquals(ChatMessage.MessageType.TEXT, v1Push.getType());
+        assertTrue(v1Push.getTimestamp() > 0);
+        PushMessage v2Push = (PushMessage) next(v2Inbox, MessageType.MESSAGE_PUSH);
+        assertEquals(roomId, v2Push.getMessage().getRoomId());
+        assertEquals(ack.getMessage(), v2Push.getMessage().getId());
+        assertEquals("", v2Push.getRequestId());
+
+        // 其他传输层的房间成员和消息共用同一个房间分组，推送按各自的协议编码
+        EmbeddedChannel ws = new EmbeddedChannel(WebSocketPushEncoder.INSTANCE);
+        MessageBroadcaster.addToRoom(roomId, ws);
+        ChatMessage fromWeb = ChatMessage.builder().id("web-1").senderId("carol").content("from web")
+                .roomId(roomId).timestamp(System.currentTimeMillis()).type(ChatMessage.MessageType.TEXT).build();
+        sessionHub.sendMessageToRoom(roomId, fromWeb);
+        // TCP 成员的写出仍在排队时，WebSocket 成员的写出也提交到它的 EventLoop
+        ws.runPendingTasks();
+        TextWebSocketFrame frame = ws.readOutbound();
+        assertTrue(frame.text().contains("\"content\":\"from web\""));
+        frame.release();
+        assertEquals("carol", pushed(v1Inbox).getSenderId());
+        assertEquals("web-1", pushed(v2Inbox).getId());
+        MessageBroadcaster.removeChannel(ws);
+
+        // 私聊推送发给该用户在任一传输层上的会话
+        sessionHub.sendMessageToUser("alice", ChatMessage.builder().id("dm-1").senderId("carol")
+                .receiverId("alice").content("psst").type(ChatMessage.MessageType.TEXT).build());
+        ChatMessage direct = pushed(v1Inbox);
+        assertEquals("psst", direct.getContent());
+        assertEquals("alice", direct.getReceiverId());
+
+        // alice 拉取历史
+        MessageHistoryRequest history = new MessageHistoryRequest();
+        history.setRoomId(roomId);
+        history.setLimit(10);
+        v1.writeAndFlush(history);
+        MessageHistoryResponse page = (MessageHistoryResponse) next(v1Inbox, MessageType.MESSAGE_HISTORY_RESPONSE);
+        assertEquals(1, page.getMessages().size());
+        assertEquals(ack.getMessage(), page.getMessages().get(0).getId());
+        assertFalse(page.isHasMore());
+
+        // 未知的游标直接报错，不返回空页
+        MessageHistoryRequest stale = new MessageHistoryRequest();
+        stale.setRoomId(roomId);
+        stale.setLastMessageId("missing");
+        v1.writeAndFlush(stale);
+        ProtocolMessage badCursor = next(v1Inbox, MessageType.ERROR);
+        assertEquals(400, badCursor.getStatusCode());
+        assertEquals(stale.getRequestId(), badCursor.getRequestId());
+
+        v1.close().sync();
+        v2.close().sync();
+    }
+
+    private Channel connect(BlockingQueue<ProtocolMessage> inbox, boolean v2) throws Exception {
+        Bootstrap bootstrap = new Bootstrap()
+            .group(clientGroup)
+            .channel(NioSocketChannel.class)
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    if (v2) {
+                        ch.pipeline()
+                            .addLast(new VarIntFrameDecoder(1 << 20))
+                            .addLast(new MessageCodecV2());
+                    } else {
+                        ch.pipeline()
+                            .addLast(new LengthFieldBasedFrameDecoder(1 << 20, 45, 4, 0, 0))
+                            .addLast(new MessageCodec());
+                    }
+                    ch.pipeline().addLast(new SimpleChannelInboundHandler<ProtocolMessage>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ProtocolMessage msg) {
+                            inbox.add(msg);
+                        }
+                    });
+                }
+            });
+        Channel channel = bootstrap.connect("127.0.0.1", server.getPort()).sync().channel();
+        if (v2) {
+            MessageCodecV2.writePreamble(channel).sync();
+        }
+        return channel;
+    }
+
+    private static ChatMessage pushed(BlockingQueue<ProtocolMessage> inbox) throws Exception {
+        return ((PushMessage) next(inbox, MessageType.MESSAGE_PUSH)).getMessage();
+    }
+
+    private static ProtocolMessage next(BlockingQueue<ProtocolMessage> inbox, MessageType type) throws Exception {
+        while (true) {
+            ProtocolMessage msg = inbox.poll(5, TimeUnit.SECONDS);
+            assertNotNull(msg, "timed out waiting for " + type);
+            if (msg.getType() == type) {
+                return msg;
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.chat.dao;
+
+import com.example.chat.dao.impl.RedisMessageDao;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisMessageDaoTest {
+
+    private RedisTemplate<String, String> redisTemplate;
+    private RedisMessageDao messageDao;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        redisTemplate = mock(RedisTemplate.class);
+        // 与 Spring Boot 默认的 ObjectMapper 一致，忽略 isPrivate() 等派生属性
+        messageDao = new RedisMessageDao(redisTemplate, JsonUtil.getObjectMapper().copy()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveIsSingleScriptCall() {
+        ChatMessage message = ChatMessage.builder()
+                .id("m1")
+                .senderId("user2")
+                .receiverId("user1")
+                .content("hello")
+                .timestamp(1000L)
+                .type(ChatMessage.MessageType.TEXT)
+                .build();
+
+        assertSame(message, messageDao.save(message));
+
+        ArgumentCaptor<RedisScript<Long>> script = ArgumentCaptor.forClass(RedisScript.class);
+        verify(redisTemplate).execute(script.capture(),
+                eq(List.of("message:m1", "user:messages:user2", "user:messages:user1",
+                        "private:messages:user1:user2")),
+                contains("\"hello\""), eq("m1"), eq("1000"));
+        assertTrue(script.getValue().getScriptAsString().contains("ZADD"));
+        verify(redisTemplate, never()).opsForValue();
+        verify(redisTemplate, never()).opsForZSet();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRoomMessageKeys() {
+        ChatMessage message = ChatMessage.builder()
+                .id("m2")
+                .senderId("user1")
+                .roomId("room1")
+                .content("hi")
+                .timestamp(2000L)
+                .type(ChatMessage.MessageType.TEXT)
+                .build();
+
+        messageDao.save(message);
+
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("message:m2", "room:messages:room1", "user:messages:user1")),
+                anyString(), eq("m2"), eq("2000"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHistoryPageIsSingleMultiGet() throws Exception {
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+
+        when(zSet.reverseRange("room:messages:room1", 0, 2)).thenReturn(new LinkedHashSet<>(List.of("m3", "m2", "m1")));
+        when(values.multiGet(List.of("message:m3", "message:m2", "message:m1")))
+                .thenReturn(Arrays.asList(json("m3"), null, json("m1")));
+
+        List<ChatMessage> page = messageDao.findByRoomId("room1", 3, 0);
+
+        assertEquals(List.of("m3", "m1"), page.stream().map(ChatMessage::getId).toList());
+        verify(values, times(1)).multiGet(anyCollection());
+        verify(values, never()).get(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUserMessagesArePaginated() {
+        ZSetOperations<String, String> zSet = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSet);
+
+        assertTrue(messageDao.findByUserId("user1").isEmpty());
+        messageDao.findByUserId("user1", 20, 5000L);
+
+        verify(zSet).reverseRange("user:messages:user1", 0, 99);
+        verify(zSet).reverseRangeByScore("user:messages:user1", 0, 5000L, 0, 20);
+        verify(zSet, never()).reverseRange(anyString(), eq(0L), eq(-1L));
+    }
+
+    private String json(String id) throws Exception {
+        return JsonUtil.getObjectMapper().writeValueAsString(ChatMessage.builder()
+                .id(id)
+                .senderId("user1")
+                .roomId("room1")
+                .content("content " + id)
+                .type(ChatMessage.MessageType.TEXT)
+                .build());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.chat.dao;
+
+import com.example.chat.dao.impl.RedisRoomDao;
+import com.example.chat.model.Room;
+import com.example.chat.util.JsonUtil;
+import com.example.chat.util.RedisUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisRoomDaoTest {
+
+    private MockedStatic<RedisUtil> redisUtil;
+    private Jedis jedis;
+    private Transaction tx;
+    private Pipeline pipeline;
+    private final RedisRoomDao roomDao = new RedisRoomDao();
+
+    @BeforeEach
+    public void setup() {
+        jedis = mock(Jedis.class);
+        tx = mock(Transaction.class);
+        pipeline = mock(Pipeline.class);
+        when(jedis.multi()).thenReturn(tx);
+        when(jedis.pipelined()).thenReturn(pipeline);
+        redisUtil = mockStatic(RedisUtil.class);
+        redisUtil.when(RedisUtil::getJedis).thenReturn(jedis);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        redisUtil.close();
+    }
+
+    @Test
+    public void testMembershipChangeDoesNotRewriteRoom() {
+        roomDao.addUserToRoom("room1", "alice");
+        roomDao.removeUserFromRoom("room1", "bob");
+
+        redisUtil.verify(RedisUtil::getJedis, times(2));
+        verify(tx).sadd("chat:room:members:room1", "alice");
+        verify(tx).sadd("chat:user:rooms:alice", "room1");
+        verify(tx).srem("chat:room:members:room1", "bob");
+        verify(tx).srem("chat:user:rooms:bob", "room1");
+        verify(tx, times(2)).exec();
+        verify(tx, never()).set(anyString(), anyString());
+        verify(jedis, never()).get(anyString());
+        verify(jedis, never()).set(anyString(), anyString());
+    }
+
+    @Test
+    public void testFindAllIsOnePipeline() {
+        when(jedis.smembers("chat:rooms:all")).thenReturn(Set.of("room1"));
+        Response<String> json = response(JsonUtil.toJson(Room.builder().id("room1").name("Lobby").build()));
+        Response<Set<String>> members = response(Set.of("alice", "bob"));
+        when(pipeline.get("chat:room:room1")).thenReturn(json);
+        when(pipeline.smembers("chat:room:members:room1")).thenReturn(members);
+
+        List<Room> rooms = roomDao.findAll();
+
+        assertEquals(1, rooms.size());
+        assertEquals("Lobby", rooms.get(0).getName());
+        assertEquals(Set.of("alice", "bob"), rooms.get(0).getMembers());
+        redisUtil.verify(RedisUtil::getJedis, times(1));
+        verify(pipeline, times(1)).sync();
+        verify(jedis, never()).get(anyString());
+    }
+
+    @Test
+    public void testSaveStoresMembersOutsideJson() {
+        Room room = Room.builder().id("room1").name("Lobby").creatorId("alice").build();
+        room.addMember("alice");
+
+        roomDao.save(room);
+
+        verify(tx).set(eq("chat:room:room1"), argThat(json -> json.contains("\"members\":[]")));
+        verify(tx).sadd("chat:room:members:room1", "alice");
+        verify(tx).exec();
+        assertEquals(Set.of("alice"), room.getMembers());
+    }
+
+    @Test
+    public void testDeleteRoomIsSingleScript() {
+        roomDao.deleteRoom("room1");
+
+        verify(jedis).eval(anyString(),
+                eq(List.of("chat:room:room1", "chat:room:members:room1", "chat:rooms:all")),
+                eq(List.of("room1", "chat:user:rooms:")));
+        verify(jedis, never()).smembers(anyString());
+        verify(jedis, never()).srem(anyString(), any(String[].class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Response<T> response(T value) {
+        Response<T> response = mock(Response.class);
+        when(response.get()).thenReturn(value);
+        return response;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.chat.dao;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.dao.impl.RedisStreamMessageDao;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisStreamMessageDaoTest {
+
+    private final ObjectMapper objectMapper = JsonUtil.getObjectMapper().copy()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private RedisTemplate<String, String> redisTemplate;
+    private StreamOperations<String, Object, Object> streams;
+    private RedisStreamMessageDao messageDao;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        redisTemplate = mock(RedisTemplate.class);
+        streams = mock(StreamOperations.class);
+        when(redisTemplate.opsForStream()).thenReturn(streams);
+        ChatConfig chatConfig = new ChatConfig();
+        chatConfig.getRedis().setStreamMaxLength(500);
+        messageDao = new RedisStreamMessageDao(redisTemplate, objectMapper, chatConfig);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSaveAppendsToConversationStream() {
+        messageDao.save(message("m1", null, "user2", "user1"));
+        messageDao.save(message("m2", "room1", null, "user1"));
+
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("stream:private:user1:user2", "stream:message:locations")),
+                eq("m1"), contains("\"m1\""), eq("500"));
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("stream:room:room1", "stream:message:locations")),
+                eq("m2"), anyString(), eq("500"));
+        verify(redisTemplate, never()).opsForValue();
+        verify(redisTemplate, never()).opsForZSet();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHistoryPageReadsBodiesInline() throws Exception {
+        when(streams.reverseRange(eq("stream:room:room1"), any(Range.class), any(Limit.class)))
+                .thenReturn(List.of(record("stream:room:room1", "2000-0", "m2"),
+                        record("stream:room:room1", "1000-0", "m1")));
+
+        List<ChatMessage> page = messageDao.findByRoomId("room1", 2, 5000L);
+
+        assertEquals(List.of("m2", "m1"), page.stream().map(ChatMessage::getId).toList());
+        verify(streams).reverseRange(eq("stream:room:room1"),
+                eq(Range.of(Range.Bound.unbounded(), Range.Bound.inclusive("5000"))),
+                argThat(limit -> limit.getCount() == 2));
+        verify(redisTemplate, never()).opsForValue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFindByIdUsesLocation() throws Exception {
+        HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+        when(redisTemplate.opsForHash()).thenReturn(hashes);
+        when(hashes.get("stream:message:locations", "m1")).thenReturn("stream:room:room1 1000-0");
+        when(streams.range("stream:room:room1", Range.just("1000-0")))
+                .thenReturn(List.of(record("stream:room:room1", "1000-0", "m1")));
+
+        assertEquals("m1", messageDao.findById("m1").getId());
+        assertNull(messageDao.findById("missing"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeleteDeclaresStreamKey() {
+        HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+        when(redisTemplate.opsForHash()).thenReturn(hashes);
+        when(hashes.get("stream:message:locations", "m1")).thenReturn("stream:room:room1 1000-0");
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+
+        assertTrue(messageDao.delete("m1"));
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("stream:message:locations", "stream:room:room1")), eq("m1"), eq("1000-0"));
+
+        // 没有位置记录时不执行脚本
+        assertFalse(messageDao.delete("missing"));
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    private ChatMessage message(String id, String roomId, String receiverId, String senderId) {
+        return ChatMessage.builder()
+                .id(id)
+                .senderId(senderId)
+                .receiverId(receiverId)
+                .roomId(roomId)
+                .content("content " + id)
+                .timestamp(1000L)
+                .type(ChatMessage.MessageType.TEXT)
+                .build();
+    }
+
+    private MapRecord<String, Object, Object> record(String stream, String entryId, String messageId)
+            throws Exception {
+        Map<Object, Object> fields = Map.of("id", messageId,
+                "body", objectMapper.writeValueAsString(message(messageId, "room1", null, "user1")));
+        return StreamRecords.newRecord().in(stream).withId(entryId).ofMap(fields);
+    }
+}
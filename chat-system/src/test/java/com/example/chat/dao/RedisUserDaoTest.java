@@ -0,0 +1,93 @@
+package com.example.chat.dao;
+
+import com.example.chat.dao.impl.RedisUserDao;
+import com.example.chat.model.User;
+import com.example.chat.model.UserPage;
+import com.example.chat.util.JsonUtil;
+import com.example.chat.util.RedisUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisUserDaoTest {
+
+    private static final String ONLINE_KEY = "chat:users:online";
+
+    private MockedStatic<RedisUtil> redisUtil;
+    private Jedis jedis;
+    private final RedisUserDao userDao = new RedisUserDao();
+
+    @BeforeEach
+    public void setup() {
+        jedis = mock(Jedis.class);
+        redisUtil = mockStatic(RedisUtil.class);
+        redisUtil.when(RedisUtil::getJedis).thenReturn(jedis);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        redisUtil.close();
+    }
+
+    @Test
+    public void testFindOnlineScansOnlineSetOnly() {
+        when(jedis.sscan(eq(ONLINE_KEY), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("7", List.of("alice", "bob")));
+        // SSCAN 可能重复返回同一成员
+        when(jedis.sscan(eq(ONLINE_KEY), eq("7"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("0", List.of("bob", "carol")));
+        when(jedis.mget(any(String[].class))).thenReturn(Arrays.asList(
+                json("alice"), json("bob"), null));
+
+        List<User> users = userDao.findOnline();
+
+        assertEquals(List.of("alice", "bob"), users.stream().map(User::getId).toList());
+        verify(jedis).mget("chat:user:alice", "chat:user:bob", "chat:user:carol");
+        verify(jedis, never()).smembers(anyString());
+        verify(jedis, never()).get(anyString());
+        redisUtil.verify(RedisUtil::getJedis, times(1));
+    }
+
+    @Test
+    public void testFindOnlinePageReturnsCursor() {
+        when(jedis.sscan(eq(ONLINE_KEY), eq("0"), any(ScanParams.class)))
+                .thenReturn(new ScanResult<>("12", List.of("alice")));
+        when(jedis.mget(any(String[].class))).thenReturn(Arrays.asList(json("alice")));
+
+        UserPage page = userDao.findOnline("0", 1);
+
+        assertEquals("12", page.getCursor());
+        assertEquals("alice", page.getUsers().get(0).getId());
+        verify(jedis, times(1)).sscan(anyString(), anyString(), any(ScanParams.class));
+    }
+
+    @Test
+    public void testUpdateMaintainsOnlineSet() {
+        Transaction tx = mock(Transaction.class);
+        when(jedis.multi()).thenReturn(tx);
+
+        userDao.update(User.builder().id("alice").username("alice").online(true).build());
+        userDao.update(User.builder().id("alice").username("alice").online(false).build());
+
+        verify(tx).sadd(ONLINE_KEY, "alice");
+        verify(tx).srem(ONLINE_KEY, "alice");
+        verify(tx, times(2)).set(eq("chat:user:alice"), anyString());
+        verify(tx, times(2)).exec();
+    }
+
+    private String json(String userId) {
+        return JsonUtil.toJson(User.builder().id(userId).username(userId).online(true).build());
+    }
+}
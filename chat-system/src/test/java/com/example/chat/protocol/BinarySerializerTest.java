@@ -0,0 +1,168 @@
+package com.example.chat.protocol;
+
+import com.example.chat.core.codec.MessageCodec;
+import com.example.chat.core.codec.SerializerType;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.protocol.request.*;
+import com.example.chat.protocol.response.*;
+import com.example.chat.protocol.response.LoginResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinarySerializerTest {
+
+    private static final int MAX_FRAME_LENGTH = 65535;
+    private static final int LENGTH_FIELD_OFFSET = 45;
+
+    @Test
+    public void testRoundTripAllMessageTypes() {
+        for (ProtocolMessage original : sampleMessages()) {
+            ProtocolMessage decoded = roundTrip(new MessageCodec(SerializerType.BINARY), original);
+            assertEquals(original, decoded, "round trip failed for " + original.getType());
+        }
+    }
+
+    @Test
+    public void testNullFieldsAndEmptyStrings() {
+        ChatRequest original = ChatRequest.builder()
+            .type(MessageType.CHAT_REQUEST)
+            .sender("")
+            .content(null)
+            .roomId("房间-1")
+            .build();
+
+        ChatRequest decoded = (ChatRequest) roundTrip(new MessageCodec(SerializerType.BINARY), original);
+        assertEquals("", decoded.getSender());
+        assertNull(decoded.getContent());
+        assertEquals("房间-1", decoded.getRoomId());
+    }
+
+    @Test
+    public void testDecoderAcceptsBothSerializers() {
+        // 解码端以消息头中的序列化方式为准，JSON编码的连接也能收二进制帧
+        EmbeddedChannel binaryEncoder = new EmbeddedChannel(new MessageCodec(SerializerType.BINARY));
+        EmbeddedChannel jsonDecoder = new EmbeddedChannel(
+            new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, 4, 0, 0),
+            new MessageCodec()
+        );
+
+        ChatRequest original = new ChatRequest("user1", "hello", "room1");
+        assertTrue(binaryEncoder.writeOutbound(original));
+        ByteBuf encoded = binaryEncoder.readOutbound();
+        assertEquals(SerializerType.BINARY.getCode(), encoded.getByte(5));
+
+        assertTrue(jsonDecoder.writeInbound(encoded));
+        assertEquals(original, jsonDecoder.readInbound());
+
+        binaryEncoder.finish();
+        jsonDecoder.finish();
+    }
+
+    @Test
+    public void testBinaryBodyIsSmallerThanJson() {
+        for (ProtocolMessage message : sampleMessages()) {
+            int json = encodedSize(new MessageCodec(SerializerType.JSON), message);
+            int binary = encodedSize(new MessageCodec(SerializerType.BINARY), message);
+            assertTrue(binary < json, message.getType() + ": binary " + binary + " >= json " + json);
+        }
+    }
+
+    private static ProtocolMessage roundTrip(MessageCodec codec, ProtocolMessage original) {
+        EmbeddedChannel channel = new EmbeddedChannel(
+            new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, 4, 0, 0),
+            codec
+        );
+        assertTrue(channel.writeOutbound(original));
+        ByteBuf encoded = channel.readOutbound();
+        assertTrue(channel.writeInbound(encoded));
+        ProtocolMessage decoded = channel.readInbound();
+        channel.finish();
+        return decoded;
+    }
+
+    private static int encodedSize(MessageCodec codec, ProtocolMessage message) {
+        EmbeddedChannel channel = new EmbeddedChannel(codec);
+        assertTrue(channel.writeOutbound(message));
+        ByteBuf encoded = channel.readOutbound();
+        int size = encoded.readableBytes();
+        encoded.release();
+        channel.finish();
+        return size;
+    }
+
+    static List<ProtocolMessage> sampleMessages() {
+        List<ProtocolMessage> messages = new ArrayList<>();
+        messages.add(new ChatRequest("user1", "Hello, world!", "room1"));
+        messages.add(new ChatResponse(true, "sent"));
+
+        LoginRequest login = new LoginRequest();
+        login.setUsername("alice");
+        login.setPassword("secret");
+        login.setDeviceId("device-1");
+        messages.add(login);
+
+        messages.add(LoginResponse.builder().type(MessageType.LOGIN_RESPONSE)
+            .token("token-abc").userId("u-1").username("alice").build());
+        messages.add(LogoutRequest.builder().type(MessageType.LOGOUT_REQUEST).build());
+        messages.add(LogoutResponse.builder().type(MessageType.LOGOUT_RESPONSE)
+            .success(true).message("bye").build());
+
+        RoomRequest create = new RoomRequest(MessageType.ROOM_CREATE, "room1");
+        create.setRoomName("General");
+        create.setDescription("General chat");
+        create.setPrivate(true);
+        messages.add(create);
+        messages.add(new RoomRequest(MessageType.ROOM_JOIN, "room1"));
+
+        RoomResponse room = new RoomResponse();
+        room.setRoomId("room1");
+        room.setRoomName("General");
+        room.setSuccess(true);
+        room.setMessage("created");
+        messages.add(room);
+
+        messages.add(HeartbeatRequest.builder().type(MessageType.HEARTBEAT_REQUEST).build());
+        messages.add(HeartbeatResponse.builder().type(MessageType.HEARTBEAT_RESPONSE)
+            .serverTime(System.currentTimeMillis()).build());
+
+        MessageHistoryRequest history = new MessageHistoryRequest();
+        history.setRoomId("room1");
+        history.setStartTime(-1L);
+        history.setEndTime(System.currentTimeMillis());
+        history.setLimit(50);
+        history.setLastMessageId("m-9");
+        messages.add(history);
+
+        List<ChatMessage> chatMessages = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            chatMessages.add(ChatMessage.builder()
+                .id("m-" + i)
+                .senderId("u-1")
+                .roomId("room1")
+                .content("message " + i)
+                .timestamp(1700000000000L + i)
+                .type(ChatMessage.MessageType.TEXT)
+                .readBy(Set.of("u-1", "u-2"))
+                .build());
+        }
+        chatMessages.add(new ChatMessage());
+        messages.add(MessageHistoryResponse.builder().type(MessageType.MESSAGE_HISTORY_RESPONSE)
+            .roomId("room1").messages(chatMessages).hasMore(true).build());
+
+        messages.add(ErrorMessage.builder().type(MessageType.ERROR)
+            .errorCode("400").message("bad request").build());
+        messages.add(SystemMessage.builder().type(MessageType.SYSTEM)
+            .title("Maintenance").message("restart at 2am").level("WARN").timestamp(1700000000000L).build());
+        messages.add(NotificationMessage.builder().type(MessageType.NOTIFICATION)
+            .title("Mention").message("@alice").level("INFO").timestamp(1700000000000L).build());
+        return messages;
+    }
+}
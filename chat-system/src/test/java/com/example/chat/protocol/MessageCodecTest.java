@@ -60,6 +60,43 @@ public class MessageCodecTest {
         channel.finish();
     }
 
+    @Test
+    public void testJsonRoundTripAllMessageTypes() {
+        for (ProtocolMessage original : BinarySerializerTest.sampleMessages()) {
+            EmbeddedChannel channel = new EmbeddedChannel(
+                new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, 4, 0, 0),
+                new MessageCodec()
+            );
+            assertTrue(channel.writeOutbound(original));
+            ByteBuf encoded = channel.readOutbound();
+            assertTrue(channel.writeInbound(encoded));
+            assertEquals(original, channel.readInbound(), "round trip failed for " + original.getType());
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testJsonDecodeFromDirectBuffer() {
+        EmbeddedChannel encoder = new EmbeddedChannel(new MessageCodec());
+        ChatRequest original = new ChatRequest("user1", "你好", "room1");
+        assertTrue(encoder.writeOutbound(original));
+        ByteBuf encoded = encoder.readOutbound();
+
+        // 堆外内存走流式解析路径
+        ByteBuf direct = ByteBufAllocator.DEFAULT.directBuffer(encoded.readableBytes());
+        direct.writeBytes(encoded);
+        encoded.release();
+
+        EmbeddedChannel decoder = new EmbeddedChannel(
+            new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, LENGTH_FIELD_OFFSET, 4, 0, 0),
+            new MessageCodec()
+        );
+        assertTrue(decoder.writeInbound(direct));
+        assertEquals(original, decoder.readInbound());
+        encoder.finish();
+        decoder.finish();
+    }
+
     @Test
     public void testMagicNumber() {
         EmbeddedChannel channel = new EmbeddedChannel(
@@ -0,0 +1,117 @@
+package com.example.chat.protocol;
+
+import com.example.chat.core.codec.MessageCodec;
+import com.example.chat.core.codec.MessageCodecV2;
+import com.example.chat.core.codec.ProtocolNegotiator;
+import com.example.chat.core.codec.VarIntFrameDecoder;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.request.HeartbeatRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageCodecV2Test {
+
+    private static final int MAX_FRAME_LENGTH = 65535;
+
+    @Test
+    public void testRoundTripAllMessageTypes() {
+        EmbeddedChannel client = new EmbeddedChannel(new MessageCodecV2());
+        EmbeddedChannel server = new EmbeddedChannel(new ProtocolNegotiator(MAX_FRAME_LENGTH));
+        server.writeInbound(preamble());
+
+        for (ProtocolMessage original : BinarySerializerTest.sampleMessages()) {
+            assertTrue(client.writeOutbound(original));
+            ByteBuf encoded = client.readOutbound();
+            assertTrue(server.writeInbound(encoded));
+            assertEquals(original, server.readInbound(), "round trip failed for " + original.getType());
+        }
+        client.finish();
+        server.finish();
+    }
+
+    @Test
+    public void testHeartbeatIsOnlyAFewBytes() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MessageCodecV2());
+        assertTrue(channel.writeOutbound(HeartbeatRequest.builder().type(MessageType.HEARTBEAT_REQUEST).build()));
+        ByteBuf encoded = channel.readOutbound();
+        // 长度 + 类型 + 标志 + 状态码 + 请求ID
+        assertEquals(5, encoded.readableBytes());
+        encoded.release();
+        channel.finish();
+    }
+
+    @Test
+    public void testRequestIdsComeFromConnectionCounter() {
+        EmbeddedChannel channel = new EmbeddedChannel(new VarIntFrameDecoder(MAX_FRAME_LENGTH), new MessageCodecV2());
+        ChatRequest first = new ChatRequest("user1", "a", "room1");
+        ChatRequest second = new ChatRequest("user1", "b", "room1");
+        ChatRequest custom = new ChatRequest("user1", "c", "room1");
+        custom.setRequestId("6f1c2b7e-0c4a-4f7e-9b1a-000000000001");
+
+        assertTrue(channel.writeOutbound(first, second, custom));
+        assertEquals("1", first.getRequestId());
+        assertEquals("2", second.getRequestId());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(channel.writeInbound((ByteBuf) channel.readOutbound()));
+        }
+        assertEquals("1", ((ProtocolMessage) channel.readInbound()).getRequestId());
+        assertEquals("2", ((ProtocolMessage) channel.readInbound()).getRequestId());
+        // 非数字的请求ID按字符串原样传输
+        assertEquals(custom.getRequestId(), ((ProtocolMessage) channel.readInbound()).getRequestId());
+        channel.finish();
+    }
+
+    @Test
+    public void testNegotiatorKeepsV1Clients() {
+        EmbeddedChannel client = new EmbeddedChannel(new MessageCodec());
+        EmbeddedChannel server = new EmbeddedChannel(new ProtocolNegotiator(MAX_FRAME_LENGTH));
+
+        ChatRequest original = new ChatRequest("user1", "hello", "room1");
+        assertTrue(client.writeOutbound(original));
+        assertTrue(server.writeInbound((ByteBuf) client.readOutbound()));
+        assertEquals(original, server.readInbound());
+        assertTrue(server.pipeline().get(ProtocolNegotiator.FRAME_DECODER_NAME) instanceof LengthFieldBasedFrameDecoder);
+        assertNull(server.pipeline().get(ProtocolNegotiator.class));
+
+        client.finish();
+        server.finish();
+    }
+
+    @Test
+    public void testFragmentedV2Stream() {
+        EmbeddedChannel client = new EmbeddedChannel(new MessageCodecV2());
+        EmbeddedChannel server = new EmbeddedChannel(new ProtocolNegotiator(MAX_FRAME_LENGTH));
+
+        ChatRequest first = new ChatRequest("user1", "first", "room1");
+        ChatRequest second = new ChatRequest("user1", "second", "room1");
+        client.writeOutbound(first, second);
+
+        ByteBuf stream = Unpooled.buffer();
+        stream.writeBytes(preamble());
+        for (int i = 0; i < 2; i++) {
+            ByteBuf encoded = client.readOutbound();
+            stream.writeBytes(encoded);
+            encoded.release();
+        }
+        // 逐字节写入，前导和消息都可能被拆开
+        while (stream.isReadable()) {
+            server.writeInbound(stream.readRetainedSlice(1));
+        }
+        stream.release();
+
+        assertEquals(first, server.readInbound());
+        assertEquals(second, server.readInbound());
+        client.finish();
+        server.finish();
+    }
+
+    private static ByteBuf preamble() {
+        return Unpooled.buffer(5).writeInt(0xCAFEBABE).writeByte(2);
+    }
+}
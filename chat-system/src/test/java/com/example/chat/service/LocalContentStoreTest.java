@@ -0,0 +1,150 @@
+package com.example.chat.service;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.model.UploadSession;
+import com.example.chat.service.impl.LocalContentStore;
+import com.example.chat.util.JsonUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LocalContentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private ChatConfig chatConfig;
+    private ContentStore contentStore;
+    private byte[] image;
+
+    @BeforeEach
+    public void setup() {
+        chatConfig = new ChatConfig();
+        chatConfig.getUpload().setDirectory(directory.toString());
+        chatConfig.getUpload().setMaxSize(1024);
+        chatConfig.getUpload().setPublicBaseUrl("http://chat");
+        contentStore = new LocalContentStore(chatConfig, JsonUtil.getObjectMapper());
+        image = new byte[600];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) i;
+        }
+        System.arraycopy(PNG_SIGNATURE, 0, image, 0, PNG_SIGNATURE.length);
+    }
+
+    @Test
+    public void testResumeAfterBrokenChunk() throws Exception {
+        UploadSession session = contentStore.createUpload("alice", "a.png", "image/png", image.length);
+        String uploadId = session.getUploadId();
+
+        // 第一个分片传到 250 字节时连接断开
+        assertThrows(IOException.class, () ->
+                contentStore.appendChunk(uploadId, "alice", 0, brokenStream(Arrays.copyOfRange(image, 0, 250))));
+        assertEquals(250, contentStore.getUpload(uploadId).getOffset());
+
+        // offset 不一致的分片被拒绝
+        assertThrows(IllegalStateException.class, () ->
+                contentStore.appendChunk(uploadId, "alice", 0, new ByteArrayInputStream(image)));
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.appendChunk(uploadId, "bob", 250, new ByteArrayInputStream(image)));
+
+        // 服务重启后从磁盘恢复上传状态并续传
+        ContentStore restarted = new LocalContentStore(chatConfig, JsonUtil.getObjectMapper());
+        assertEquals(250, restarted.getUpload(uploadId).getOffset());
+        UploadSession done = restarted.appendChunk(uploadId, "alice", 250,
+                new ByteArrayInputStream(Arrays.copyOfRange(image, 250, image.length)));
+
+        assertEquals(uploadId, done.getContentId());
+        assertArrayEquals(image, Files.readAllBytes(restarted.getContentPath(uploadId)));
+        assertEquals("image/png", restarted.getContent(uploadId).getContentType());
+        assertEquals("http://chat/api/content/" + uploadId, restarted.getContentUrl(uploadId));
+        assertThrows(IllegalStateException.class, () ->
+                restarted.appendChunk(uploadId, "alice", image.length, new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    public void testRejectsOversizedAndUnsupportedContent() throws Exception {
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.createUpload("alice", "a.exe", "application/octet-stream", 10));
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.createUpload("alice", "a.png", "image/png", 2048));
+
+        // 分片超出声明的大小时整个分片不写入
+        UploadSession session = contentStore.createUpload("alice", "a.png", "image/png", 100);
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.appendChunk(session.getUploadId(), "alice", 0, new ByteArrayInputStream(image)));
+        assertEquals(0, contentStore.getUpload(session.getUploadId()).getOffset());
+
+        assertNull(contentStore.getUpload("../../etc/passwd"));
+        assertNull(contentStore.getContent("../content"));
+    }
+
+    @Test
+    public void testStoreInlineContent() throws Exception {
+        String contentId = contentStore.store("alice", "image/png", image);
+        UploadSession content = contentStore.getContent(contentId);
+        assertEquals("alice", content.getUserId());
+        assertEquals(image.length, content.getSize());
+        assertArrayEquals(image, Files.readAllBytes(contentStore.getContentPath(contentId)));
+    }
+
+    @Test
+    public void testRejectsContentNotMatchingImageType() throws Exception {
+        byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"><script>alert(1)</script></svg>"
+                .getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.createUpload("alice", "a.svg", "image/svg+xml", svg.length));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.store("alice", "image/svg+xml", svg));
+        // 声明为 png 但文件头不是 png
+        assertThrows(IllegalArgumentException.class, () -> contentStore.store("alice", "image/png", svg));
+        assertThrows(IllegalArgumentException.class, () -> contentStore.store("alice", "image/jpeg", image));
+
+        // 分片上传完成时校验文件头，不符时丢弃整个上传
+        UploadSession session = contentStore.createUpload("alice", "a.png", "image/png", svg.length);
+        assertThrows(IllegalArgumentException.class, () ->
+                contentStore.appendChunk(session.getUploadId(), "alice", 0, new ByteArrayInputStream(svg)));
+        assertNull(contentStore.getUpload(session.getUploadId()));
+        assertNull(contentStore.getContent(session.getUploadId()));
+
+        byte[] gif = Arrays.copyOf("GIF89a".getBytes(StandardCharsets.US_ASCII), 32);
+        assertEquals("image/gif", contentStore.getContent(contentStore.store("alice", "image/gif", gif))
+                .getContentType());
+    }
+
+    /**
+     * 读完给定字节后抛出异常，模拟上传中途断开
+     */
+    private InputStream brokenStream(byte[] data) {
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b == -1) {
+                    throw new IOException("Connection reset");
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = in.read(b, off, len);
+                if (read == -1) {
+                    throw new IOException("Connection reset");
+                }
+                return read;
+            }
+        };
+    }
+}
@@ -5,6 +5,7 @@ import com.example.chat.service.impl.MessageServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -51,6 +52,25 @@ public class MessageServiceTest {
         }
     }
 
+    @Test
+    public void testSaveMessagesIndexesWholeBatch() {
+        List<ChatMessage> batch = List.of(
+                ChatMessage.builder().senderId(senderId).receiverId(receiverId).content("batch 1")
+                        .type(ChatMessage.MessageType.TEXT).build(),
+                ChatMessage.builder().senderId(senderId).roomId(roomId).content("batch 2")
+                        .type(ChatMessage.MessageType.TEXT).build());
+        
+        List<ChatMessage> saved = messageService.saveMessages(batch);
+        
+        assertEquals(2, saved.size());
+        assertNotNull(saved.get(0).getId());
+        assertTrue(saved.get(0).getTimestamp() > 0);
+        assertEquals(6, messageService.getMessagesBetweenUsers(senderId, receiverId).size());
+        assertEquals(4, messageService.getRoomMessages(roomId).size());
+        assertEquals(10, messageService.getUserMessages(senderId).size());
+        assertSame(saved.get(1), messageService.getMessageById(saved.get(1).getId()));
+    }
+    
     @Test
     public void testGetUserMessages() {
         List<ChatMessage> messages = messageService.getUserMessages(senderId);
@@ -75,6 +95,42 @@ public class MessageServiceTest {
         assertEquals(2, limitedMessages.size());
     }
 
+    @Test
+    public void testGetRoomMessagesPagesFromCursor() {
+        List<ChatMessage> first = messageService.getRoomMessages(roomId, null, 0, 0, 2);
+        assertEquals(2, first.size());
+        assertTrue(first.get(0).getTimestamp() >= first.get(1).getTimestamp());
+
+        List<ChatMessage> second = messageService.getRoomMessages(roomId, first.get(1).getId(), 0, 0, 2);
+        assertEquals(1, second.size());
+        assertEquals("Room message 2", second.get(0).getContent());
+
+        // 时间范围只保留最新的一条
+        List<ChatMessage> recent = messageService.getRoomMessages(roomId, null, first.get(0).getTimestamp(), 0, 10);
+        assertEquals(List.of(first.get(0)), recent);
+
+        // 游标不存在或者属于其他房间
+        assertNull(messageService.getRoomMessages(roomId, "missing", 0, 0, 2));
+        String privateId = messageService.getMessagesBetweenUsers(senderId, receiverId).get(0).getId();
+        assertNull(messageService.getRoomMessages(roomId, privateId, 0, 0, 2));
+    }
+
+    @Test
+    public void testSameTimestampKeepsSaveOrder() {
+        // 批量发送的消息共用一个时间戳，ID 的大小顺序与发送顺序相反
+        List<ChatMessage> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(ChatMessage.builder().id("z" + (9 - i)).senderId(senderId).roomId("burst")
+                    .content("burst " + i).type(ChatMessage.MessageType.TEXT).build());
+        }
+        messageService.saveMessages(batch);
+        List<ChatMessage> newest = messageService.getRoomMessages("burst", null, 0, 0, 2);
+        assertEquals(List.of("burst 4", "burst 3"), newest.stream().map(ChatMessage::getContent).toList());
+        List<ChatMessage> older = messageService.getRoomMessages("burst", newest.get(1).getId(), 0, 0, 10);
+        assertEquals(List.of("burst 2", "burst 1", "burst 0"),
+                older.stream().map(ChatMessage::getContent).toList());
+    }
+
     @Test
     public void testGetMessagesBetweenUsers() {
         List<ChatMessage> messages = messageService.getMessagesBetweenUsers(senderId, receiverId);
@@ -0,0 +1,59 @@
+package com.example.chat.service;
+
+import com.example.chat.model.PresenceDelta;
+import com.example.chat.service.impl.PresenceServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PresenceServiceTest {
+
+    private PresenceService presenceService;
+
+    @BeforeEach
+    public void setup() {
+        presenceService = new PresenceServiceImpl();
+    }
+
+    @Test
+    public void testDeltaOnlyOnChange() {
+        PresenceDelta delta = presenceService.setOnline("user1", true);
+        assertNotNull(delta);
+        assertEquals(1, delta.getVersion());
+
+        // 状态未变化不产生增量
+        assertNull(presenceService.setOnline("user1", true));
+        assertEquals(1, presenceService.getVersion());
+        assertTrue(presenceService.isOnline("user1"));
+    }
+
+    @Test
+    public void testDeltasSinceVersion() {
+        presenceService.setOnline("user1", true);
+        presenceService.setOnline("user2", true);
+        presenceService.setOnline("user1", false);
+
+        List<PresenceDelta> deltas = presenceService.getDeltasSince(1);
+        assertEquals(2, deltas.size());
+        assertEquals("user2", deltas.get(0).getUserId());
+        assertEquals("user1", deltas.get(1).getUserId());
+        assertFalse(deltas.get(1).isOnline());
+        assertTrue(presenceService.getDeltasSince(3).isEmpty());
+
+        List<PresenceDelta> snapshot = presenceService.getSnapshot();
+        assertEquals(1, snapshot.size());
+        assertEquals("user2", snapshot.get(0).getUserId());
+    }
+
+    @Test
+    public void testEvictedVersionFallsBackToSnapshot() {
+        for (int i = 0; i < 2000; i++) {
+            presenceService.setOnline("user" + i, true);
+        }
+        assertNull(presenceService.getDeltasSince(0));
+        assertNotNull(presenceService.getDeltasSince(1990));
+    }
+}
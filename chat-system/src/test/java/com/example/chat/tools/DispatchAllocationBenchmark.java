@@ -0,0 +1,83 @@
+package com.example.chat.tools;
+
+import com.example.chat.core.handler.JsonFrameDispatcher;
+import com.example.chat.core.handler.WebSocketReplies;
+import com.example.chat.core.handler.WebSocketRequests;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * WebSocket 文本帧分发的单条消息分配量对比
+ * map：旧实现，readValue(text, Map.class) 后逐个取字段，确认响应用 HashMap 构建再转成 String；
+ * typed：JsonFrameDispatcher 流式读取 type 并绑定到请求记录，确认响应用预建 ObjectWriter 直接写入 ByteBuf。
+ * 通过 com.sun.management.ThreadMXBean 统计当前线程的分配字节数，直接运行 main 即可。
+ */
+public class DispatchAllocationBenchmark {
+    private static final int WARMUP_ROUNDS = 50_000;
+    private static final int MEASURE_ROUNDS = 200_000;
+    private static final String FRAME =
+        "{\"type\":\"message\",\"userId\":\"user-42\",\"roomId\":\"room-7\",\"content\":\"Hello, this is a typical chat message.\"}";
+
+    private static final ObjectMapper MAPPER = JsonUtil.getObjectMapper();
+    private static final ByteBufAllocator ALLOC = PooledByteBufAllocator.DEFAULT;
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        JsonFrameDispatcher<Object> dispatcher = new JsonFrameDispatcher<>(MAPPER)
+            .on("message", WebSocketRequests.Chat.class, (context, ctx, request) -> {
+                TextWebSocketFrame ack = WebSocketReplies.toFrame(ALLOC, WebSocketReplies.MessageAck.of(request.roomId()));
+                sink += ack.content().readableBytes() + request.content().length();
+                ack.release();
+            });
+
+        report("map", () -> mapDispatch(FRAME));
+        report("typed", () -> dispatcher.dispatch(null, null, FRAME));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mapDispatch(String text) throws Exception {
+        Map<String, Object> message = MAPPER.readValue(text, Map.class);
+        if (!"message".equals(message.get("type"))) {
+            return;
+        }
+        String roomId = (String) message.get("roomId");
+        String content = (String) message.get("content");
+        Map<String, Object> response = new HashMap<>();
+        response.put("type", "messageAck");
+        response.put("messageId", roomId);
+        response.put("success", true);
+        TextWebSocketFrame ack = new TextWebSocketFrame(MAPPER.writeValueAsString(response));
+        sink += ack.content().readableBytes() + content.length();
+        ack.release();
+    }
+
+    private static void report(String name, Task task) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-6s %8.1f bytes/op %8.1f ns/op%n",
+            name, (double) allocated / MEASURE_ROUNDS, (double) elapsed / MEASURE_ROUNDS);
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+}
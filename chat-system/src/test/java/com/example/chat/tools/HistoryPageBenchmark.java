@@ -0,0 +1,98 @@
+package com.example.chat.tools;
+
+import com.example.chat.dao.impl.RedisMessageDao;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Redis 历史消息分页读取的延迟对比
+ * n+1：旧实现，ZSET 取消息ID后逐条 GET，每页 1+N 次往返；
+ * mget：RedisMessageDao.findByRoomId，ZSET 取消息ID后一次 MGET，每页 2 次往返。
+ * 需要一个可用的 Redis，参数为 host 和 port，默认 localhost 6379；运行结束后删除写入的测试数据。
+ */
+public class HistoryPageBenchmark {
+    private static final int MESSAGE_COUNT = 500;
+    private static final int[] PAGE_SIZES = {10, 25, 50, 100, 200};
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURE_ROUNDS = 200;
+
+    private static final ObjectMapper MAPPER = JsonUtil.getObjectMapper().copy()
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        RedisMessageDao messageDao = new RedisMessageDao(redisTemplate, MAPPER);
+
+        String roomId = "bench-" + UUID.randomUUID();
+        String senderId = "bench-user-" + UUID.randomUUID();
+        List<ChatMessage> messages = new ArrayList<>(MESSAGE_COUNT);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            messages.add(ChatMessage.builder()
+                .id(UUID.randomUUID().toString())
+                .senderId(senderId)
+                .roomId(roomId)
+                .content("Hello, this is a typical chat message #" + i)
+                .timestamp(1_000_000L + i)
+                .type(ChatMessage.MessageType.TEXT)
+                .build());
+        }
+        messageDao.saveAll(messages);
+
+        try {
+            System.out.printf("%-6s %10s %10s%n", "page", "n+1 ms", "mget ms");
+            for (int pageSize : PAGE_SIZES) {
+                double perMessage = measure(() -> nPlusOne(redisTemplate, roomId, pageSize));
+                double batched = measure(() -> sink += messageDao.findByRoomId(roomId, pageSize, 0).size());
+                System.out.printf("%-6d %10.3f %10.3f%n", pageSize, perMessage, batched);
+            }
+        } finally {
+            List<String> keys = new ArrayList<>();
+            for (ChatMessage message : messages) {
+                keys.add("message:" + message.getId());
+            }
+            keys.add("room:messages:" + roomId);
+            keys.add("user:messages:" + senderId);
+            redisTemplate.delete(keys);
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void nPlusOne(StringRedisTemplate redisTemplate, String roomId, int pageSize) throws Exception {
+        Set<String> messageIds = redisTemplate.opsForZSet().reverseRange("room:messages:" + roomId, 0, pageSize - 1);
+        for (String messageId : messageIds) {
+            String messageJson = redisTemplate.opsForValue().get("message:" + messageId);
+            sink += MAPPER.readValue(messageJson, ChatMessage.class).getContent().length();
+        }
+    }
+
+    private static double measure(Task task) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            task.run();
+        }
+        return (System.nanoTime() - start) / 1e6 / MEASURE_ROUNDS;
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.chat.tools;
+
+import com.example.chat.config.ChatConfig;
+import com.example.chat.dao.impl.RedisMessageDao;
+import com.example.chat.dao.impl.RedisStreamMessageDao;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.util.JsonUtil;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * 两种 Redis 消息存储结构的内存和历史读取延迟对比
+ * zset：RedisMessageDao，每条消息一个字符串键加房间、用户两个 ZSET 索引；
+ * stream：RedisStreamMessageDao，每个房间一个 Stream，正文内联，另有消息位置哈希。
+ * 分别写入相同的房间消息，用 INFO memory 的 used_memory 差值估算每条消息的内存（包含索引和位置哈希），
+ * 其中索引部分（zset 的房间和用户 ZSET，stream 的位置哈希）用 MEMORY USAGE 单独列出，再测量各分页大小的读取延迟。
+ * 需要一个可用且没有其他写入的 Redis，参数为 host 和 port，默认 localhost 6379；运行结束后删除写入的测试数据。
+ */
+public class RedisMessageLayoutBenchmark {
+    private static final int ROOM_COUNT = 20;
+    private static final int MESSAGES_PER_ROOM = 1000;
+    private static final int[] PAGE_SIZES = {20, 50, 100};
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURE_ROUNDS = 200;
+
+    private static final ObjectMapper MAPPER = JsonUtil.getObjectMapper().copy()
+        .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+        try {
+            RedisMessageDao zsetDao = new RedisMessageDao(redisTemplate, MAPPER);
+            RedisStreamMessageDao streamDao = new RedisStreamMessageDao(redisTemplate, MAPPER, new ChatConfig());
+
+            System.out.printf("%-7s %12s %12s%s%n", "layout", "bytes/msg", "index/msg", pageHeader());
+            run("zset", redisTemplate, zsetDao::saveAll, zsetDao::delete,
+                roomId -> pageSize -> zsetDao.findByRoomId(roomId, pageSize, 0).size(),
+                roomId -> List.of("room:messages:" + roomId),
+                senderId -> List.of("user:messages:" + senderId));
+            run("stream", redisTemplate, streamDao::saveAll, streamDao::delete,
+                roomId -> pageSize -> streamDao.findByRoomId(roomId, pageSize, 0).size(),
+                roomId -> List.of("stream:room:" + roomId),
+                senderId -> List.of("stream:message:locations"));
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void run(String name, StringRedisTemplate redisTemplate, Saver saver, Deleter deleter,
+                            Function<String, IntFunction<Integer>> reader,
+                            Function<String, List<String>> roomKeys,
+                            Function<String, List<String>> indexKeys) throws Exception {
+        String senderId = "bench-user-" + UUID.randomUUID();
+        List<String> roomIds = new ArrayList<>();
+        List<ChatMessage> all = new ArrayList<>();
+
+        long before = usedMemory(redisTemplate);
+        for (int r = 0; r < ROOM_COUNT; r++) {
+            String roomId = "bench-" + UUID.randomUUID();
+            roomIds.add(roomId);
+            List<ChatMessage> messages = new ArrayList<>(MESSAGES_PER_ROOM);
+            for (int i = 0; i < MESSAGES_PER_ROOM; i++) {
+                messages.add(ChatMessage.builder()
+                    .id(UUID.randomUUID().toString())
+                    .senderId(senderId)
+                    .roomId(roomId)
+                    .content("Hello, this is a typical chat message #" + i)
+                    .timestamp(System.currentTimeMillis())
+                    .type(ChatMessage.MessageType.TEXT)
+                    .build());
+            }
+            saver.saveAll(messages);
+            all.addAll(messages);
+        }
+        double bytesPerMessage = (double) (usedMemory(redisTemplate) - before) / all.size();
+        // 索引键的内存：zset 布局的房间 ZSET 单独计算，stream 布局的位置哈希是所有消息共用的一个键
+        List<String> index = new ArrayList<>(indexKeys.apply(senderId));
+        if (name.equals("zset")) {
+            roomIds.forEach(roomId -> index.addAll(roomKeys.apply(roomId)));
+        }
+        long indexBytes = 0;
+        for (String key : index) {
+            indexBytes += memoryUsage(redisTemplate, key);
+        }
+        double indexPerMessage = (double) indexBytes / all.size();
+
+        StringBuilder latencies = new StringBuilder();
+        IntFunction<Integer> page = reader.apply(roomIds.get(0));
+        for (int pageSize : PAGE_SIZES) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                sink += page.apply(pageSize);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURE_ROUNDS; i++) {
+                sink += page.apply(pageSize);
+            }
+            latencies.append(String.format(" %12.3f", (System.nanoTime() - start) / 1e6 / MEASURE_ROUNDS));
+        }
+        System.out.printf("%-7s %12.1f %12.1f%s%n", name, bytesPerMessage, indexPerMessage, latencies);
+
+        // 删除测试数据
+        for (ChatMessage message : all) {
+            deleter.delete(message.getId());
+        }
+        List<String> keys = new ArrayList<>();
+        for (String roomId : roomIds) {
+            keys.addAll(roomKeys.apply(roomId));
+        }
+        keys.add("user:messages:" + senderId);
+        redisTemplate.delete(keys);
+    }
+
+    private static String pageHeader() {
+        StringBuilder header = new StringBuilder();
+        for (int pageSize : PAGE_SIZES) {
+            header.append(String.format(" %12s", "page" + pageSize + " ms"));
+        }
+        return header.toString();
+    }
+
+    private static long usedMemory(StringRedisTemplate redisTemplate) {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection ->
+            connection.serverCommands().info("memory"));
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    private static long memoryUsage(StringRedisTemplate redisTemplate, String key) {
+        Long bytes = redisTemplate.execute((RedisCallback<Long>) connection -> (Long) connection.execute("MEMORY",
+            "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8),
+            "SAMPLES".getBytes(StandardCharsets.UTF_8), "0".getBytes(StandardCharsets.UTF_8)));
+        return bytes == null ? 0 : bytes;
+    }
+
+    @FunctionalInterface
+    private interface Saver {
+        void saveAll(List<ChatMessage> messages);
+    }
+
+    @FunctionalInterface
+    private interface Deleter {
+        void delete(String messageId);
+    }
+}
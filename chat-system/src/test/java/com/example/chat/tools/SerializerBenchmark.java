@@ -0,0 +1,94 @@
+package com.example.chat.tools;
+
+import com.example.chat.core.codec.BinarySerializer;
+import com.example.chat.core.codec.JsonSerializer;
+import com.example.chat.core.codec.Serializer;
+import com.example.chat.model.ChatMessage;
+import com.example.chat.protocol.MessageType;
+import com.example.chat.protocol.ProtocolMessage;
+import com.example.chat.protocol.request.ChatRequest;
+import com.example.chat.protocol.response.MessageHistoryResponse;
+import com.example.chat.protocol.response.SystemMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON 与二进制正文序列化的对比
+ * 先预热再计时，输出每条消息正文的字节数以及编码+解码的平均耗时（不含消息头和管道开销）。
+ * 直接运行 main 即可，不依赖服务端。
+ */
+public class SerializerBenchmark {
+    private static final int WARMUP_ROUNDS = 20_000;
+    private static final int MEASURE_ROUNDS = 100_000;
+
+    public static void main(String[] args) {
+        List<ProtocolMessage> samples = new ArrayList<>();
+        samples.add(new ChatRequest("user1", "Hello, this is a typical chat message.", "room1"));
+        samples.add(SystemMessage.builder()
+            .type(MessageType.SYSTEM)
+            .title("Maintenance")
+            .message("Server restarts at 02:00")
+            .level("WARN")
+            .timestamp(System.currentTimeMillis())
+            .build());
+        samples.add(historyResponse());
+
+        Serializer[] serializers = {new JsonSerializer(), new BinarySerializer()};
+        for (ProtocolMessage sample : samples) {
+            for (Serializer serializer : serializers) {
+                try {
+                    run(serializer, sample, WARMUP_ROUNDS);
+                    long start = System.nanoTime();
+                    int size = run(serializer, sample, MEASURE_ROUNDS);
+                    long elapsed = System.nanoTime() - start;
+                    System.out.printf("%-26s %-7s %6d bytes %8.1f ns/op%n",
+                        sample.getType(), serializer.getType(), size, (double) elapsed / MEASURE_ROUNDS);
+                } catch (Exception e) {
+                    System.out.printf("%-26s %-7s failed: %s%n", sample.getType(), serializer.getType(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 编码并解码 rounds 次，返回单条消息正文的字节数
+     */
+    private static int run(Serializer serializer, ProtocolMessage message, int rounds) throws Exception {
+        ByteBuf buf = Unpooled.buffer(64 * 1024);
+        int size = 0;
+        for (int i = 0; i < rounds; i++) {
+            buf.clear();
+            serializer.serialize(message, buf);
+            size = buf.readableBytes();
+            if (serializer.deserialize(message.getType(), buf) == null) {
+                throw new IllegalStateException("decode returned null");
+            }
+        }
+        return size;
+    }
+
+    private static ProtocolMessage historyResponse() {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ChatMessage message = ChatMessage.builder()
+                .id("6f1c2b7e-0c4a-4f7e-9b1a-" + String.format("%012d", i))
+                .senderId("user" + (i % 5))
+                .roomId("room1")
+                .content("history message number " + i)
+                .timestamp(1700000000000L + i * 1000L)
+                .type(ChatMessage.MessageType.TEXT)
+                .build();
+            message.markAsRead("user1");
+            messages.add(message);
+        }
+        return MessageHistoryResponse.builder()
+            .type(MessageType.MESSAGE_HISTORY_RESPONSE)
+            .roomId("room1")
+            .messages(messages)
+            .hasMore(true)
+            .build();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.chat.util;
+
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageBroadcasterTest {
+
+    private EmbeddedChannel newChannel() {
+        // EmbeddedChannel默认共用同一个ID，ChannelGroup按ID去重
+        return new EmbeddedChannel(DefaultChannelId.newInstance());
+    }
+
+    @Test
+    public void testWriteToRoomSharesEncodedFrame() {
+        EmbeddedChannel first = newChannel();
+        EmbeddedChannel second = newChannel();
+        MessageBroadcaster.addToRoom("broadcast-room", first);
+        MessageBroadcaster.addToRoom("broadcast-room", second);
+
+        int recipients = MessageBroadcaster.writeToRoom("broadcast-room", new TextWebSocketFrame("{\"type\":\"message\"}"));
+        assertEquals(2, recipients);
+
+        TextWebSocketFrame received1 = first.readOutbound();
+        TextWebSocketFrame received2 = second.readOutbound();
+        assertEquals("{\"type\":\"message\"}", received1.text());
+        assertEquals("{\"type\":\"message\"}", received2.text());
+        received1.release();
+        received2.release();
+
+        first.finishAndReleaseAll();
+        second.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testRemoveChannelOnlyTouchesJoinedRooms() {
+        EmbeddedChannel channel = newChannel();
+        EmbeddedChannel other = newChannel();
+        MessageBroadcaster.addToRoom("cleanup-room-1", channel);
+        MessageBroadcaster.addToRoom("cleanup-room-2", channel);
+        MessageBroadcaster.addToRoom("cleanup-room-2", other);
+        assertEquals(2, ChannelUtil.getRooms(channel).size());
+
+        MessageBroadcaster.removeChannel(channel);
+
+        assertEquals(0, MessageBroadcaster.getRoomSize("cleanup-room-1"));
+        assertEquals(1, MessageBroadcaster.getRoomSize("cleanup-room-2"));
+
+        MessageBroadcaster.removeFromRoom("cleanup-room-2", other);
+        assertEquals(0, MessageBroadcaster.getRoomSize("cleanup-room-2"));
+        assertTrue(ChannelUtil.getRooms(other).isEmpty());
+
+        channel.finishAndReleaseAll();
+        other.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testLargeRoomWritesOnOwningEventLoops() {
+        List<EmbeddedChannel> channels = new ArrayList<>();
+        for (int i = 0; i < MessageBroadcaster.LARGE_ROOM_THRESHOLD; i++) {
+            EmbeddedChannel channel = newChannel();
+            channels.add(channel);
+            MessageBroadcaster.addToRoom("large-room", channel);
+        }
+
+        TextWebSocketFrame first = new TextWebSocketFrame("first");
+        TextWebSocketFrame second = new TextWebSocketFrame("second");
+        assertEquals(channels.size(), MessageBroadcaster.writeToRoom("large-room", first));
+        assertEquals(channels.size(), MessageBroadcaster.writeToRoom("large-room", second));
+
+        // 写任务提交到各自的EventLoop，执行前不会写出
+        assertNull(channels.get(0).readOutbound());
+
+        for (EmbeddedChannel channel : channels) {
+            channel.runPendingTasks();
+            TextWebSocketFrame received1 = channel.readOutbound();
+            TextWebSocketFrame received2 = channel.readOutbound();
+            assertEquals("first", received1.text());
+            assertEquals("second", received2.text());
+            received1.release();
+            received2.release();
+        }
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+
+        for (EmbeddedChannel channel : channels) {
+            MessageBroadcaster.removeFromRoom("large-room", channel);
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void testChunkSizeAdaptsToRoomSize() {
+        assertEquals(64, MessageBroadcaster.chunkSize(100, 4));
+        assertEquals(625, MessageBroadcaster.chunkSize(10000, 4));
+        assertEquals(1024, MessageBroadcaster.chunkSize(50000, 4));
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.chat.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PacedBroadcastTest {
+
+    private List<Integer> recipients(int count) {
+        List<Integer> recipients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            recipients.add(i);
+        }
+        return recipients;
+    }
+
+    @Test
+    public void testDeliversInWaves() throws Exception {
+        List<Integer> waveSizes = new CopyOnWriteArrayList<>();
+        AtomicInteger finished = new AtomicInteger();
+        // 每秒100个，每波10个
+        PacedBroadcast<Integer> broadcast = new PacedBroadcast<>(recipients(25), 100,
+                wave -> waveSizes.add(wave.size()), finished::incrementAndGet).start();
+
+        broadcast.completion().get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(10, 10, 5), waveSizes);
+        assertEquals(25, broadcast.getDelivered());
+        assertTrue(broadcast.isDone());
+        assertEquals(1, finished.get());
+    }
+
+    @Test
+    public void testCancelStopsFurtherWaves() throws Exception {
+        CountDownLatch firstWave = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+        PacedBroadcast<Integer> broadcast = new PacedBroadcast<>(recipients(1000), 10,
+                wave -> firstWave.countDown(), finished::incrementAndGet).start();
+
+        assertTrue(firstWave.await(5, TimeUnit.SECONDS));
+        broadcast.cancel();
+        assertThrows(CancellationException.class, () -> broadcast.completion().get(5, TimeUnit.SECONDS));
+        assertTrue(broadcast.isCancelled());
+        assertTrue(broadcast.getDelivered() < 1000);
+        assertEquals(1, finished.get());
+    }
+}
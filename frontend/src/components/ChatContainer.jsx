@@ -1,6 +1,7 @@
 import { useChatStore } from "../store/useChatStore";
 import { useEffect, useRef, useMemo } from "react";
 import wsClient from "../lib/websocket";
+import { uploadImage } from "../lib/upload";
 import { toast } from "react-hot-toast";
 
 import ChatHeader from "./ChatHeader";
@@ -106,11 +107,26 @@ const ChatContainer = () => {
             return;
         }
 
+        // 图片先分片上传，消息中只携带内容引用
+        let imageId = null;
+        if (image) {
+            try {
+                const uploaded = await uploadImage(image);
+                imageId = uploaded.contentId;
+                image = uploaded.url;
+            } catch (error) {
+                console.error('Failed to upload image:', error);
+                toast.error('图片上传失败');
+                return;
+            }
+        }
+
         const message = {
             type: 'message',
             roomId: null,
             content: text,
             image: image,
+            imageId: imageId,
             senderId: authUser.id,
             receiverId: selectedUser.id,
             timestamp: Date.now()
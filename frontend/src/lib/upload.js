@@ -0,0 +1,44 @@
+import axiosInstance from "./axios";
+
+const MAX_RETRIES = 3;
+
+// 分片上传图片，断线后从服务端记录的 offset 续传，返回 { contentId, url }
+export async function uploadImage(dataUrl, fileName = "image") {
+    const blob = await (await fetch(dataUrl)).blob();
+
+    const { data: upload } = await axiosInstance.post("/api/uploads", {
+        fileName,
+        contentType: blob.type,
+        size: blob.size,
+    });
+
+    let offset = upload.offset;
+    let retries = 0;
+    let result = upload;
+    while (offset < blob.size) {
+        const chunk = blob.slice(offset, offset + upload.chunkSize);
+        try {
+            const response = await axiosInstance.patch(`/api/uploads/${upload.uploadId}`, chunk, {
+                headers: {
+                    "Content-Type": "application/octet-stream",
+                    "Upload-Offset": offset,
+                },
+                timeout: 60000,
+            });
+            result = response.data;
+            offset = result.offset;
+            retries = 0;
+        } catch (error) {
+            if (++retries > MAX_RETRIES) {
+                throw error;
+            }
+            // 409 的响应里直接带有服务端 offset，其他错误先查询再续传
+            const status = error.response?.status === 409
+                ? error.response.data
+                : (await axiosInstance.get(`/api/uploads/${upload.uploadId}`)).data;
+            offset = status.offset;
+            result = status;
+        }
+    }
+    return { contentId: result.contentId, url: result.url };
+}
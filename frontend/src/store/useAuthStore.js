@@ -409,10 +409,16 @@ export const useAuthStore = create((set, get) => ({
         set(state => {
             const userExists = state.onlineUsers.some(user => user.id === userId);
             
-            if (!userExists && globalSocket?.connected) {
-                console.log('User not in list, requesting full update...');
-                globalSocket.emit('getOnlineUsers');
-                return state;
+            // 在线列表只包含在线用户，新上线的用户直接加入列表
+            if (!userExists) {
+                return {
+                    ...state,
+                    onlineUsers: [...state.onlineUsers, {
+                        id: userId,
+                        online: isOnline === true,
+                        lastUpdate: lastUpdate || Date.now()
+                    }]
+                };
             }
 
             const updatedUsers = state.onlineUsers.map(user => 